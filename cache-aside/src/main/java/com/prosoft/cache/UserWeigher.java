@@ -0,0 +1,63 @@
+package com.prosoft.cache;
+
+import com.prosoft.model.PackedUser;
+import com.prosoft.model.User;
+
+/**
+ * Оценка памяти, удерживаемой парой Long -> User (64-битная JVM, compressed oops, compact strings):
+ * ключ Long, объект User, его Long id (если это не тот же объект, что и ключ) и строки name/email
+ * вместе с их массивами байт. Это оценка по раскладке объектов, а не замер - ее достаточно,
+ * чтобы планировать емкость кэша в байтах, а не в штуках.
+ *
+ * Упакованный пользователь (PackedUser) весит объект и его byte[] вместо двух строк. Строки общих словарей
+ * UserCodec в вес записей не входят: их число ограничено размером словаря, а не числом записей.
+ */
+public class UserWeigher implements Weigher<Long, User> {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    // Long: заголовок + long
+    static final long LONG_BYTES = align(OBJECT_HEADER + 8);
+    // User: заголовок + ссылки id, name, email
+    private static final long USER_BYTES = align(OBJECT_HEADER + 3 * REFERENCE);
+    // PackedUser: поля User + ссылки на byte[] и кодек
+    private static final long PACKED_USER_BYTES = align(OBJECT_HEADER + 5 * REFERENCE);
+    // String: заголовок + ссылка на byte[] + hash + coder + hashIsZero
+    private static final long STRING_BYTES = align(OBJECT_HEADER + REFERENCE + 4 + 1 + 1);
+
+    @Override
+    public long weigh(Long key, User user) {
+        long bytes = LONG_BYTES;
+        if (user instanceof PackedUser packed) {
+            bytes += PACKED_USER_BYTES + align(ARRAY_HEADER + packed.packedSize());
+        } else {
+            bytes += USER_BYTES + stringBytes(user.getName()) + stringBytes(user.getEmail());
+        }
+        // Сравнение ссылок намеренно: отдельный объект Long для id занимает свою память
+        if (user.getId() != null && user.getId() != key) {
+            bytes += LONG_BYTES;
+        }
+        return bytes;
+    }
+
+    static long stringBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // Латиница хранится по байту на символ (LATIN1), кириллица и прочее - по два (UTF16)
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING_BYTES + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,96 @@
+package com.prosoft.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheNamespace;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.MemoryBudget;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.model.UserCodec;
+import com.prosoft.partition.HashRing;
+import com.prosoft.partition.PartitionClient;
+import com.prosoft.partition.PartitionNode;
+import com.prosoft.partition.Partitioning;
+import com.prosoft.store.CircuitBreaker;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public HotKeyTracker hotKeyTracker(CacheProperties properties) {
+        CacheProperties.HotKeys hotKeys = properties.getHotKeys();
+        return new HotKeyTracker(hotKeys.getSketchWidth(), hotKeys.getTopK(), hotKeys.getSampleRate(),
+                hotKeys.getDecayInterval().toMillis());
+    }
+
+    @Bean
+    public StripedKeyLocks keyLocks(CacheProperties properties) {
+        return new StripedKeyLocks(properties.getLocks().getStripes());
+    }
+
+    @Bean
+    public MemoryBudget memoryBudget(CacheProperties properties) {
+        return new MemoryBudget(properties.getMemory().getBudget().toBytes());
+    }
+
+    @Bean
+    public CacheRegistry cacheRegistry(MemoryBudget memoryBudget, CacheProperties properties) {
+        Map<String, CacheNamespace> namespaces = new LinkedHashMap<>();
+        properties.getMemory().getNamespaces().forEach((name, namespace) -> namespaces.put(name,
+                new CacheNamespace(namespace.getQuota().toBytes(), namespace.isBorrow(), namespace.getTtl())));
+        return new CacheRegistry(memoryBudget, namespaces);
+    }
+
+    @Bean
+    public UserResponseEncoder userResponseEncoder(ObjectMapper objectMapper, CacheProperties properties) {
+        CacheProperties.EncodedResponses encoded = properties.getEncodedResponses();
+        return new UserResponseEncoder(objectMapper, encoded.isEnabled(), encoded.isGzip(), encoded.getGzipMinSize().toBytes());
+    }
+
+    @Bean
+    public UserCodec userCodec(CacheProperties properties) {
+        CacheProperties.CompactValues compact = properties.getCompactValues();
+        return new UserCodec(compact.isEnabled(), compact.getDictionarySize(), compact.getAdmitAfter());
+    }
+
+    @Bean
+    public Partitioning partitioning(CacheProperties properties) {
+        CacheProperties.Partition partition = properties.getPartition();
+        if (!partition.isEnabled()) {
+            return Partitioning.disabled();
+        }
+        List<PartitionNode> nodes = partition.getNodes().stream().map(PartitionNode::parse).toList();
+        PartitionNode self = nodes.stream()
+                .filter(node -> node.id().equals(partition.getNodeId()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Узел " + partition.getNodeId() + " отсутствует в app.cache.partition.nodes"));
+        return new Partitioning(true, self, new HashRing(nodes, partition.getVirtualNodes()),
+                new PartitionClient(partition.getPoolSize(), partition.getTimeout()));
+    }
+
+    @Bean
+    public AccessTraceRecorder accessTraceRecorder(CacheProperties properties) {
+        CacheProperties.Trace trace = properties.getTrace();
+        return trace.isEnabled()
+                ? AccessTraceRecorder.toFile(Path.of(trace.getPath()), trace.getQueueCapacity())
+                : AccessTraceRecorder.disabled();
+    }
+
+    @Bean
+    public StaleWhileRevalidate staleWhileRevalidate(CacheProperties properties) {
+        CacheProperties.Stale stale = properties.getStale();
+        CircuitBreaker breaker = new CircuitBreaker("user-store", stale.getFailureThreshold(),
+                stale.getOpenDuration(), stale.getSlowCallThreshold());
+        return new StaleWhileRevalidate(stale.getSoftTtl(), stale.getHardTtl(), breaker);
+    }
+}
@@ -0,0 +1,23 @@
+package com.prosoft.config;
+
+import com.prosoft.model.UserCodec;
+import com.prosoft.store.ChangeLog;
+import com.prosoft.store.UserStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class StoreConfig {
+
+    @Bean
+    public UserStore userStore(@Value("${app.database.change-log-capacity:65536}") int changeLogCapacity,
+                               @Value("${app.database.read-latency:0ms}") Duration readLatency,
+                               UserCodec userCodec) {
+        UserStore store = new UserStore(new ChangeLog(changeLogCapacity), userCodec);
+        store.setReadFaults(readLatency, false);
+        return store;
+    }
+}
@@ -0,0 +1,52 @@
+package com.prosoft.model;
+
+/**
+ * Пользователь в упакованном виде (app.cache.compact-values): name и email лежат в одном массиве байт,
+ * строки создаются только при обращении к геттерам и не запоминаются. Формат - в {@link UserCodec}.
+ *
+ * Значение неизменяемо - сеттеры бросают UnsupportedOperationException. Кэш и UserStore и так
+ * заменяют записи целиком, а изменять можно копию, которую отдает UserStore.get.
+ */
+public final class PackedUser extends User {
+
+    private final byte[] packed;
+    private final UserCodec codec;
+
+    PackedUser(Long id, byte[] packed, UserCodec codec) {
+        super(id, null, null);
+        this.packed = packed;
+        this.codec = codec;
+    }
+
+    @Override
+    public String getName() {
+        return codec.decodeName(packed);
+    }
+
+    @Override
+    public String getEmail() {
+        return codec.decodeEmail(packed);
+    }
+
+    /**
+     * Размер упакованных полей в байтах (без заголовка массива)
+     */
+    public int packedSize() {
+        return packed.length;
+    }
+
+    @Override
+    public void setId(Long id) {
+        throw new UnsupportedOperationException("Упакованный пользователь неизменяем");
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Упакованный пользователь неизменяем");
+    }
+
+    @Override
+    public void setEmail(String email) {
+        throw new UnsupportedOperationException("Упакованный пользователь неизменяем");
+    }
+}
@@ -0,0 +1,92 @@
+package com.prosoft.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Словарь повторяющихся строк (домены email, частые имена): строка хранится один раз,
+ * упакованные значения ссылаются на нее номером. Словарь только растет и ограничен capacity,
+ * поэтому его память не зависит от числа записей.
+ *
+ * Строка попадает в словарь с admitAfter-й встречи - уникальные значения ("User 4517")
+ * остаются в упакованных значениях целиком и не занимают место в словаре.
+ */
+public class StringDictionary {
+
+    private final int capacity;
+    private final int admitAfter;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> values;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Сколько раз встречались строки, которых еще нет в словаре
+    private final Map<String, Integer> candidates = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public StringDictionary(int capacity, int admitAfter) {
+        this.capacity = capacity;
+        this.admitAfter = Math.max(1, admitAfter);
+        this.values = new AtomicReferenceArray<>(Math.max(0, capacity));
+    }
+
+    /**
+     * Номер строки в словаре или -1, если строку нужно хранить в значении целиком
+     */
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            hits.incrementAndGet();
+            return code;
+        }
+        misses.incrementAndGet();
+        if (size.get() >= capacity) {
+            return -1;
+        }
+        if (candidates.merge(value, 1, Integer::sum) < admitAfter) {
+            // Кандидатов не держим больше нескольких словарей: редкие строки забываются целиком
+            if (candidates.size() > 4 * capacity) {
+                candidates.clear();
+            }
+            return -1;
+        }
+        return admit(value);
+    }
+
+    public String valueOf(int code) {
+        return values.get(code);
+    }
+
+    private synchronized int admit(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size.get();
+        if (code >= capacity) {
+            return -1;
+        }
+        // Строка публикуется в массиве раньше номера: кто получил номер, тот прочитает и строку
+        values.set(code, value);
+        codes.put(value, code);
+        size.set(code + 1);
+        candidates.remove(value);
+        return code;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size.get());
+        stats.put("capacity", capacity);
+        stats.put("admitAfter", admitAfter);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+}
@@ -0,0 +1,219 @@
+package com.prosoft.model;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Компактное представление пользователей в кэше и в UserStore (app.cache.compact-values).
+ *
+ * Вместо двух объектов String со своими массивами байт пользователь хранит один byte[]. Имя делится
+ * по первому пробелу, email - по последнему '@', и обе части каждой строки пишутся подряд. Первое слово
+ * и остаток имени, а также домен email кодируются номером в общем словаре (частые имена, фамилии и домены
+ * хранятся один раз на JVM), локальная часть email - всегда целиком. Каждая часть начинается
+ * с varint-заголовка (значение << 2 | тег):
+ * <ul>
+ *     <li>0 - null: вся строка равна null (первая часть) или в строке нет разделителя (вторая часть);</li>
+ *     <li>1 - номер строки в словаре;</li>
+ *     <li>2 - длина и символы Latin-1, по байту на символ;</li>
+ *     <li>3 - длина и байты UTF-8 (кириллица и прочее).</li>
+ * </ul>
+ * Если строка равна null, вторая часть не пишется. Выключенный кодек возвращает пользователей как есть.
+ */
+public class UserCodec {
+
+    private static final int NULL = 0;
+    private static final int DICTIONARY = 1;
+    private static final int LATIN1 = 2;
+    private static final int UTF8 = 3;
+
+    private final boolean enabled;
+    private final StringDictionary names;
+    private final StringDictionary domains;
+
+    public UserCodec(boolean enabled, int dictionarySize, int admitAfter) {
+        this.enabled = enabled;
+        this.names = new StringDictionary(dictionarySize, admitAfter);
+        this.domains = new StringDictionary(dictionarySize, admitAfter);
+    }
+
+    public static UserCodec disabled() {
+        return new UserCodec(false, 0, 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Упакованная копия пользователя; при выключенном кодеке - сам пользователь
+     */
+    public User pack(User user) {
+        if (!enabled || user == null || user instanceof PackedUser) {
+            return user;
+        }
+        Output out = new Output();
+        String name = user.getName();
+        writeParts(out, name, name == null ? -1 : name.indexOf(' '), names, names);
+        String email = user.getEmail();
+        writeParts(out, email, email == null ? -1 : email.lastIndexOf('@'), null, domains);
+        return new PackedUser(user.getId(), out.toByteArray(), this);
+    }
+
+    String decodeName(byte[] packed) {
+        return readParts(new Input(packed), ' ', names, names);
+    }
+
+    String decodeEmail(byte[] packed) {
+        Input in = new Input(packed);
+        skipParts(in);
+        return readParts(in, '@', null, domains);
+    }
+
+    // Части строки до и после разделителя; отсутствие разделителя - null во второй части
+    private static void writeParts(Output out, String value, int split, StringDictionary head, StringDictionary tail) {
+        if (value == null) {
+            writeString(out, null, head);
+        } else if (split < 0) {
+            writeString(out, value, head);
+            writeString(out, null, tail);
+        } else {
+            writeString(out, value.substring(0, split), head);
+            writeString(out, value.substring(split + 1), tail);
+        }
+    }
+
+    private static String readParts(Input in, char separator, StringDictionary head, StringDictionary tail) {
+        String first = readString(in, head);
+        if (first == null) {
+            return null;
+        }
+        String second = readString(in, tail);
+        return second == null ? first : first + separator + second;
+    }
+
+    private static void skipParts(Input in) {
+        if (skipString(in)) {
+            skipString(in);
+        }
+    }
+
+    private static void writeString(Output out, String value, StringDictionary dictionary) {
+        if (value == null) {
+            out.writeVarint(NULL);
+            return;
+        }
+        int code = dictionary == null ? -1 : dictionary.codeOf(value);
+        if (code >= 0) {
+            out.writeVarint(code << 2 | DICTIONARY);
+        } else if (isLatin1(value)) {
+            out.writeVarint(value.length() << 2 | LATIN1);
+            out.writeBytes(value.getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(utf8.length << 2 | UTF8);
+            out.writeBytes(utf8);
+        }
+    }
+
+    private static String readString(Input in, StringDictionary dictionary) {
+        int header = in.readVarint();
+        int length = header >>> 2;
+        return switch (header & 3) {
+            case NULL -> null;
+            case DICTIONARY -> dictionary.valueOf(length);
+            case LATIN1 -> in.readString(length, StandardCharsets.ISO_8859_1);
+            default -> in.readString(length, StandardCharsets.UTF_8);
+        };
+    }
+
+    // false, если пропущенная часть - null
+    private static boolean skipString(Input in) {
+        int header = in.readVarint();
+        if ((header & 3) >= LATIN1) {
+            in.position += header >>> 2;
+        }
+        return (header & 3) != NULL;
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("names", names.stats());
+        stats.put("domains", domains.stats());
+        return stats;
+    }
+
+    private static final class Output {
+
+        private byte[] buffer = new byte[32];
+        private int position;
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString(int length, Charset charset) {
+            String value = new String(bytes, position, length, charset);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.prosoft.partition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Кольцо консистентного хеширования с виртуальными узлами.
+ *
+ * Каждый узел занимает virtualNodes точек на кольце, ключ принадлежит первой точке по часовой стрелке.
+ * Добавление или удаление узла перемещает только ключи соседних с его точками дуг - в среднем 1/N ключей,
+ * а виртуальные узлы выравнивают доли узлов. Кольцо неизменяемо: смена состава - новое кольцо.
+ */
+public class HashRing {
+
+    private final NavigableMap<Long, PartitionNode> ring = new TreeMap<>();
+    private final List<PartitionNode> nodes;
+    private final int virtualNodes;
+
+    public HashRing(Collection<PartitionNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("В кольце должен быть хотя бы один узел");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.virtualNodes = virtualNodes;
+        for (PartitionNode node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Точка зависит только от id узла - кольцо одинаково на всех узлах при любом порядке в конфигурации
+                PartitionNode previous = ring.put(pointHash(node.id() + "#" + i), node);
+                if (previous != null && !previous.id().equals(node.id())) {
+                    throw new IllegalStateException("Коллизия точек кольца: " + previous.id() + " и " + node.id());
+                }
+            }
+        }
+    }
+
+    public PartitionNode ownerOf(long key) {
+        Map.Entry<Long, PartitionNode> entry = ring.ceilingEntry(keyHash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<PartitionNode> nodes() {
+        return nodes;
+    }
+
+    public HashRing withNode(PartitionNode node) {
+        List<PartitionNode> changed = new ArrayList<>(nodes);
+        changed.add(node);
+        return new HashRing(changed, virtualNodes);
+    }
+
+    public HashRing withoutNode(String nodeId) {
+        List<PartitionNode> changed = new ArrayList<>(nodes);
+        changed.removeIf(node -> node.id().equals(nodeId));
+        return new HashRing(changed, virtualNodes);
+    }
+
+    /**
+     * Доля ключей 1..sampleKeys, которые принадлежат каждому узлу
+     */
+    public Map<String, Double> ownershipShares(int sampleKeys) {
+        Map<String, Double> shares = new LinkedHashMap<>();
+        nodes.forEach(node -> shares.put(node.id(), 0.0));
+        for (long key = 1; key <= sampleKeys; key++) {
+            shares.merge(ownerOf(key).id(), 1.0 / sampleKeys, Double::sum);
+        }
+        return shares;
+    }
+
+    /**
+     * Доля ключей 1..sampleKeys, у которых в другом кольце другой владелец
+     */
+    public double movedShare(HashRing other, int sampleKeys) {
+        int moved = 0;
+        for (long key = 1; key <= sampleKeys; key++) {
+            if (!ownerOf(key).id().equals(other.ownerOf(key).id())) {
+                moved++;
+            }
+        }
+        return (double) moved / sampleKeys;
+    }
+
+    // Финализатор MurmurHash3 - последовательные id равномерно раскладываются по кольцу
+    private static long keyHash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // FNV-1a по байтам имени точки, затем тот же финализатор
+    private static long pointHash(String point) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : point.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return keyHash(hash);
+    }
+}
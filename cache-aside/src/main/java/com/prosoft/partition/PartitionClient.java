@@ -0,0 +1,124 @@
+package com.prosoft.partition;
+
+import com.prosoft.model.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Клиент бинарного протокола: пул долгоживущих соединений к каждому узлу.
+ * Соединение, на котором случилась ошибка, закрывается, а не возвращается в пул.
+ */
+public class PartitionClient implements AutoCloseable {
+
+    private final Map<String, BlockingQueue<Connection>> idle = new ConcurrentHashMap<>();
+    private final int poolSize;
+    private final int timeoutMs;
+
+    /**
+     * @param poolSize сколько простаивающих соединений держать на узел (больше - закрываются после запроса)
+     * @param timeout  таймаут подключения и ответа
+     */
+    public PartitionClient(int poolSize, Duration timeout) {
+        this.poolSize = poolSize;
+        this.timeoutMs = (int) timeout.toMillis();
+    }
+
+    public User get(PartitionNode node, long id) throws IOException {
+        return call(node, id, out -> {
+            out.writeByte(PartitionProtocol.OP_GET);
+            out.writeLong(id);
+        });
+    }
+
+    public User update(PartitionNode node, long id, String name, String email) throws IOException {
+        return call(node, id, out -> {
+            out.writeByte(PartitionProtocol.OP_UPDATE);
+            out.writeLong(id);
+            PartitionProtocol.writeString(out, name);
+            PartitionProtocol.writeString(out, email);
+        });
+    }
+
+    private User call(PartitionNode node, long id, RequestWriter request) throws IOException {
+        Connection connection = borrow(node);
+        boolean reusable = false;
+        try {
+            request.write(connection.out);
+            connection.out.flush();
+            User user = PartitionProtocol.readUser(connection.in, id);
+            reusable = true;
+            return user;
+        } finally {
+            if (!reusable || !pool(node).offer(connection)) {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection borrow(PartitionNode node) throws IOException {
+        Connection connection = pool(node).poll();
+        if (connection != null) {
+            return connection;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(node.host(), node.port()), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            socket.setTcpNoDelay(true);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private BlockingQueue<Connection> pool(PartitionNode node) {
+        return idle.computeIfAbsent(node.id(), id -> new ArrayBlockingQueue<>(poolSize));
+    }
+
+    @Override
+    public void close() {
+        idle.values().forEach(pool -> {
+            Connection connection;
+            while ((connection = pool.poll()) != null) {
+                connection.close();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // соединение и так выбрасываем
+            }
+        }
+    }
+}
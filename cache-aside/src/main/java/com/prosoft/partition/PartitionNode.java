@@ -0,0 +1,25 @@
+package com.prosoft.partition;
+
+/**
+ * Узел кластера: идентификатор и адрес бинарного протокола партиций
+ */
+public record PartitionNode(String id, String host, int port) {
+
+    /**
+     * Разбор записи из конфигурации вида node-1@localhost:9080
+     */
+    public static PartitionNode parse(String spec) {
+        int at = spec.indexOf('@');
+        int colon = spec.lastIndexOf(':');
+        if (at <= 0 || colon < at) {
+            throw new IllegalArgumentException("Ожидался узел вида id@host:port, получено: " + spec);
+        }
+        return new PartitionNode(spec.substring(0, at), spec.substring(at + 1, colon),
+                Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return id + "@" + host + ":" + port;
+    }
+}
@@ -0,0 +1,86 @@
+package com.prosoft.partition;
+
+import com.prosoft.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Бинарный протокол между узлами: запрос - один кадр, ответ - один кадр, соединения долгоживущие.
+ *
+ * Запрос:  [op: byte][id: long] (+ для UPDATE [name: STR][email: STR])
+ * Ответ:   [status: byte] (+ для FOUND [name: STR][email: STR], для ERROR [message: UTF])
+ * STR - строка, которая может быть null: [есть: byte 0/1] (+ [UTF], если есть)
+ *
+ * Ответ собирается в буфере целиком и только потом пишется в сокет: ошибка посреди кадра
+ * не оставляет в соединении половину ответа.
+ *
+ * Кадр из нескольких десятков байт вместо HTTP + JSON: на пересылку удаленного ключа
+ * уходит один round-trip по loopback без разбора заголовков.
+ */
+final class PartitionProtocol {
+
+    static final byte OP_GET = 1;
+    static final byte OP_UPDATE = 2;
+
+    static final byte STATUS_NOT_FOUND = 0;
+    static final byte STATUS_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+
+    private PartitionProtocol() {
+    }
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Кадр ответа с пользователем (null - NOT_FOUND)
+     */
+    static byte[] userFrame(User user) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(frame);
+        if (user == null) {
+            out.writeByte(STATUS_NOT_FOUND);
+        } else {
+            out.writeByte(STATUS_FOUND);
+            writeString(out, user.getName());
+            writeString(out, user.getEmail());
+        }
+        return frame.toByteArray();
+    }
+
+    static byte[] errorFrame(String message) {
+        String text = String.valueOf(message);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(frame);
+        try {
+            out.writeByte(STATUS_ERROR);
+            out.writeUTF(text.length() > MAX_ERROR_LENGTH ? text.substring(0, MAX_ERROR_LENGTH) : text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // запись в массив не бросает IOException
+        }
+        return frame.toByteArray();
+    }
+
+    static User readUser(DataInputStream in, long id) throws IOException {
+        byte status = in.readByte();
+        return switch (status) {
+            case STATUS_NOT_FOUND -> null;
+            case STATUS_FOUND -> new User(id, readString(in), readString(in));
+            case STATUS_ERROR -> throw new IOException("Ошибка на узле-владельце: " + in.readUTF());
+            default -> throw new IOException("Неизвестный статус ответа: " + status);
+        };
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
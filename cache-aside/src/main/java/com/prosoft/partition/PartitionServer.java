@@ -0,0 +1,121 @@
+package com.prosoft.partition;
+
+import com.prosoft.model.User;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Сервер бинарного протокола: отвечает другим узлам по ключам, которыми владеет этот узел.
+ * Каждое соединение обслуживает свой виртуальный поток - блокирующий ввод-вывод без пула потоков.
+ */
+@Slf4j
+public class PartitionServer implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Updater {
+        User update(long id, String name, String email);
+    }
+
+    private final ServerSocket serverSocket;
+    private final LongFunction<User> reader;
+    private final Updater updater;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean closed;
+
+    public PartitionServer(int port, LongFunction<User> reader, Updater updater) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.reader = reader;
+        this.updater = updater;
+    }
+
+    public void start() {
+        executor.submit(this::acceptLoop);
+        log.info("Партиции: сервер бинарного протокола слушает порт {}", serverSocket.getLocalPort());
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Партиции: ошибка приема соединения", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // клиент закрыл соединение
+                }
+                if (op != PartitionProtocol.OP_GET && op != PartitionProtocol.OP_UPDATE) {
+                    // Длина кадра неизвестна - дальше поток не разобрать, соединение закрывается
+                    throw new IOException("Неизвестная операция: " + op);
+                }
+                long id = in.readLong();
+                String name = null;
+                String email = null;
+                if (op == PartitionProtocol.OP_UPDATE) {
+                    name = PartitionProtocol.readString(in);
+                    email = PartitionProtocol.readString(in);
+                }
+                requests.increment();
+                out.write(respond(op, id, name, email));
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Партиции: соединение {} разорвано: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        }
+    }
+
+    // Кадр ответа целиком: ошибка обработки превращается в кадр ERROR, а не в половину кадра FOUND
+    private byte[] respond(byte op, long id, String name, String email) {
+        try {
+            User user = op == PartitionProtocol.OP_GET ? reader.apply(id) : updater.update(id, name, email);
+            return PartitionProtocol.userFrame(user);
+        } catch (Exception e) {
+            log.warn("Партиции: ошибка обработки запроса {} для id {}: {}", op, id, e.toString());
+            return PartitionProtocol.errorFrame(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,122 @@
+package com.prosoft.partition;
+
+import com.prosoft.model.User;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Партиционированный режим кэша: кольцо узлов, свой узел, клиент и сервер бинарного протокола.
+ * Каждый id принадлежит ровно одному узлу - только он держит его в кэше, поэтому суммарная
+ * емкость кластера растет с числом узлов, а "горячие" пользователи не дублируются.
+ * В выключенном режиме кольцо состоит из одного своего узла и все ключи локальны.
+ */
+public class Partitioning implements AutoCloseable {
+
+    private final boolean enabled;
+    private final PartitionNode self;
+    private final HashRing ring;
+    private final PartitionClient client;
+    private PartitionServer server;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardFailures = new LongAdder();
+
+    public Partitioning(boolean enabled, PartitionNode self, HashRing ring, PartitionClient client) {
+        if (!ring.nodes().contains(self)) {
+            throw new IllegalArgumentException("Узел " + self + " не входит в кольцо " + ring.nodes());
+        }
+        this.enabled = enabled;
+        this.self = self;
+        this.ring = ring;
+        this.client = client;
+    }
+
+    public static Partitioning disabled() {
+        PartitionNode self = new PartitionNode("local", "localhost", 0);
+        return new Partitioning(false, self, new HashRing(List.of(self), 1), null);
+    }
+
+    /**
+     * Запуск сервера протокола: reader и updater выполняют операцию над своими (локальными) ключами
+     */
+    public void start(LongFunction<User> reader, PartitionServer.Updater updater) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        server = new PartitionServer(self.port(), reader, updater);
+        server.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public PartitionNode ownerOf(long id) {
+        return enabled ? ring.ownerOf(id) : self;
+    }
+
+    public boolean isLocal(PartitionNode node) {
+        return node.equals(self);
+    }
+
+    public User forwardGet(PartitionNode owner, long id) throws IOException {
+        return forward(() -> client.get(owner, id));
+    }
+
+    public User forwardUpdate(PartitionNode owner, long id, String name, String email) throws IOException {
+        return forward(() -> client.update(owner, id, name, email));
+    }
+
+    private User forward(RemoteCall call) throws IOException {
+        forwarded.increment();
+        try {
+            return call.execute();
+        } catch (IOException e) {
+            forwardFailures.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Состав кольца, доли ключей по узлам и сколько ключей переехало бы при добавлении
+     * или удалении одного узла (оценка по ключам 1..sampleKeys)
+     */
+    public Map<String, Object> stats(int sampleKeys) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("self", self.toString());
+        stats.put("nodes", ring.nodes().stream().map(PartitionNode::toString).toList());
+        stats.put("ownershipShares", ring.ownershipShares(sampleKeys));
+        if (enabled) {
+            PartitionNode probe = new PartitionNode("probe-node", "localhost", 0);
+            stats.put("movedShareIfNodeAdded", ring.movedShare(ring.withNode(probe), sampleKeys));
+            if (ring.nodes().size() > 1) {
+                stats.put("movedShareIfSelfRemoved", ring.movedShare(ring.withoutNode(self.id()), sampleKeys));
+            }
+        }
+        stats.put("forwarded", forwarded.sum());
+        stats.put("forwardFailures", forwardFailures.sum());
+        stats.put("servedForOtherNodes", server == null ? 0 : server.requests());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RemoteCall {
+        User execute() throws IOException;
+    }
+}
@@ -0,0 +1,14 @@
+package com.prosoft.service;
+
+/**
+ * Поиск по email недоступен при партиционировании: у каждого узла своя БД, а изменения строки
+ * (и ее email в индексе) получает только узел-владелец id. Ответ зависел бы от того, на какой узел
+ * попал запрос, поэтому он отклоняется.
+ */
+public class EmailLookupUnsupportedException extends RuntimeException {
+
+    public EmailLookupUnsupportedException() {
+        super("Поиск по email не поддерживается при app.cache.partition.enabled=true: "
+                + "индекс email -> id есть только в БД узла-владельца пользователя");
+    }
+}
@@ -0,0 +1,19 @@
+package com.prosoft.service;
+
+import lombok.Getter;
+
+/**
+ * Чтение или запись не выполнены: узел-владелец ключа недоступен.
+ * Писать в свою копию БД нельзя - владелец не узнает об изменении и продолжит отдавать старую версию.
+ * Читать из нее тоже нельзя: обновления владельца в нее не попадают, и она может сколько угодно отставать.
+ */
+@Getter
+public class PartitionUnavailableException extends RuntimeException {
+
+    private final String owner;
+
+    public PartitionUnavailableException(Long id, String owner, Throwable cause) {
+        super("Узел-владелец " + owner + " пользователя " + id + " недоступен: " + cause.getMessage(), cause);
+        this.owner = owner;
+    }
+}
@@ -1,32 +1,120 @@
 package com.prosoft.service;
 
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheEvents;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.EmailKeyWeigher;
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.cache.UserWeigher;
+import com.prosoft.cache.WeightedCache;
+import com.prosoft.config.CacheProperties;
 import com.prosoft.model.User;
+import com.prosoft.model.UserCodec;
+import com.prosoft.partition.PartitionNode;
+import com.prosoft.partition.Partitioning;
+import com.prosoft.store.ChangeEvent;
+import com.prosoft.store.ChangeFeedSubscriber;
+import com.prosoft.store.UserStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class UserService {
 
-    // Имитация базы данных
-    private final Map<Long, User> database = new HashMap<>();
+    // Имитация базы данных с журналом изменений (CDC)
+    private final UserStore database;
 
-    // Имитация кэша
-    private final Map<Long, User> cache = new ConcurrentHashMap<>();
+    // Имитация кэша, емкость в байтах (общий бюджет памяти JVM)
+    private final WeightedCache<Long, User> cache;
+
+    // Вторичный индекс email -> id: поиск по email идет дальше по обычному пути чтения по id
+    private final WeightedCache<String, Long> emailCache;
+
+    // Частота обращений по ключам - для поиска "горячих" пользователей
+    private final HotKeyTracker hotKeyTracker;
+
+    // Блокировки по ключу: запись в БД и загрузка промаха не пересекаются для одного id
+    private final StripedKeyLocks keyLocks;
+
+    // Общий для кэшей JVM бюджет памяти (показывается в /cache/stats)
+    private final CacheRegistry cacheRegistry;
+
+    // Готовые JSON-ответы хранятся рядом с записями кэша (app.cache.encoded-responses)
+    private final UserResponseEncoder responseEncoder;
+
+    // Упакованное хранение пользователей в кэше (app.cache.compact-values)
+    private final UserCodec userCodec;
+
+    // Подписка кэша на журнал изменений БД
+    private final CacheProperties cacheProperties;
+    private ChangeFeedSubscriber changeFeed;
+
+    // Трасса обращений для офлайн-моделирования политик вытеснения (app.cache.trace)
+    private final AccessTraceRecorder traceRecorder;
+
+    // Устаревшие записи отдаются сразу с фоновой перезагрузкой, чтения БД - через автомат защиты (app.cache.stale)
+    private final StaleWhileRevalidate staleness;
+
+    // Ключи распределены между узлами: этот узел кэширует только свою долю (app.cache.partition)
+    private final Partitioning partitioning;
+
+    // Дополнительные тестовые пользователи (нужны нагрузочному стенду loadtest)
+    @Value("${app.database.seed-users:0}")
+    private int seedUsers;
+
+    public UserService(HotKeyTracker hotKeyTracker, StripedKeyLocks keyLocks,
+                       UserStore database, CacheProperties cacheProperties,
+                       CacheRegistry cacheRegistry, UserResponseEncoder responseEncoder,
+                       Partitioning partitioning, AccessTraceRecorder traceRecorder, StaleWhileRevalidate staleness,
+                       UserCodec userCodec) {
+        this.hotKeyTracker = hotKeyTracker;
+        this.keyLocks = keyLocks;
+        this.database = database;
+        this.cacheProperties = cacheProperties;
+        this.cacheRegistry = cacheRegistry;
+        this.responseEncoder = responseEncoder;
+        this.partitioning = partitioning;
+        this.traceRecorder = traceRecorder;
+        this.staleness = staleness;
+        this.userCodec = userCodec;
+        // Вытеснение по весу не трогает "горячие" ключи
+        this.cache = cacheRegistry.create("users", new UserWeigher(), (id, user) -> hotKeyTracker.isHot(id));
+        this.emailCache = cacheRegistry.create("users-by-email", new EmailKeyWeigher(), (email, id) -> false);
+    }
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
         // Добавим тестовые данные
         database.put(1L, new User(1L, "Alice", "alice@example.com"));
         database.put(2L, new User(2L, "Bob", "bob@example.com"));
         database.put(3L, new User(3L, "Charlie", "charlie@example.com"));
+        for (long id = 4; id <= seedUsers; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com"));
+        }
 
         log.info("База данных инициализирована с {} пользователями", database.size());
+
+        // Кэш пока пуст - подписываемся с текущего конца журнала
+        changeFeed = new ChangeFeedSubscriber("user-cache", database.changeLog(), database.changeLog().tail(),
+                cacheProperties.getCdc().getBatchSize(), this::applyChanges, cache::clear);
+        changeFeed.start(cacheProperties.getCdc().getPollInterval());
+
+        // Другие узлы обращаются к нам за ключами, которыми владеет этот узел
+        partitioning.start(this::getLocalUser, this::updateLocalUser);
     }
 
     /**
@@ -34,17 +122,162 @@ public class UserService {
      */
     public User getUserById(Long id) {
         log.info("Запрос пользователя с ID: {}", id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
 
-        // ШАГ 1: Проверяем кэш
-        User cachedUser = cache.get(id);
-        if (cachedUser != null) {
+        PartitionNode owner = partitioning.ownerOf(id);
+        if (!partitioning.isLocal(owner)) {
+            return getRemoteUser(owner, id);
+        }
+        return getLocalUser(id);
+    }
+
+    /**
+     * Ключ принадлежит другому узлу: читаем через его кэш, у себя не кэшируем -
+     * иначе "горячие" пользователи дублировались бы на всех узлах, а инвалидация
+     * (журнал изменений владельца) до нашей копии не дойдет.
+     * Если владелец недоступен - 503, как и для записи: своя копия БД не получает его обновлений
+     * и может отстать сколько угодно, ограничить ее устаревание жестким сроком нечем.
+     */
+    private User getRemoteUser(PartitionNode owner, Long id) {
+        try {
+            log.info("Пользователь {} принадлежит узлу {}, запрашиваем у владельца", id, owner.id());
+            return partitioning.forwardGet(owner, id);
+        } catch (IOException e) {
+            throw new PartitionUnavailableException(id, owner.id(), e);
+        }
+    }
+
+    private User getLocalUser(long id) {
+        hotKeyTracker.record(id);
+
+        // ШАГ 1: Проверяем кэш. Устаревшая запись отдается сразу, а обновляется в фоне;
+        // запись старше жесткого срока не отдается - загружаем заново
+        WeightedCache.Timed<User> cached = cache.getTimed(id);
+        if (cached != null && staleness.serve(id, cached.ageNanos(), () -> refreshEntry(id))) {
             log.info("CACHE HIT: Пользователь найден в кэше!");
-            return cachedUser;
+            return cached.value();
+        }
+
+        // ШАГИ 2-3 под read-блокировкой ключа: иначе конкурентное обновление могло бы
+        // инвалидировать кэш между нашим чтением из БД и записью устаревшего значения в кэш
+        return keyLocks.withReadLock(id, () -> loadIntoCache(id));
+    }
+
+    /**
+     * Поиск по email: индекс email -> id в кэше, дальше - обычный путь чтения по id с его кэшем,
+     * поэтому попадание стоит столько же, сколько попадание по id. Запись индекса - только подсказка:
+     * найденный пользователь сверяется с email, а несовпавшая запись удаляется и ищется по индексу БД.
+     * При партиционировании не поддерживается: индекс email актуален только в БД владельца id.
+     */
+    public User getUserByEmail(String email) {
+        log.info("Запрос пользователя с email: {}", email);
+        if (partitioning.isEnabled()) {
+            throw new EmailLookupUnsupportedException();
+        }
+        String key = UserStore.normalizeEmail(email);
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        Long cachedId = emailCache.get(key);
+        if (cachedId != null) {
+            User user = getUserById(cachedId);
+            if (user != null && key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+                log.info("CACHE HIT: email найден в индексе кэша (ID {})", cachedId);
+                return user;
+            }
+            emailCache.remove(key);
+        }
+
+        log.info("CACHE MISS: email не найден в индексе кэша, ищем по индексу БД...");
+        Long id = staleness.load(() -> database.findIdByEmail(key));
+        User user = id == null ? null : getUserById(id);
+        if (user == null || !key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+            log.warn("Пользователь с email {} не найден", email);
+            return null;
+        }
+        emailCache.put(key, id);
+        return user;
+    }
+
+    // Запись индекса email -> id уходит вместе с прежней версией пользователя, если email сменился
+    private void evictEmail(User previous, User current) {
+        String email = previous == null ? null : UserStore.normalizeEmail(previous.getEmail());
+        if (email != null && (current == null || !email.equals(UserStore.normalizeEmail(current.getEmail())))) {
+            emailCache.remove(email);
+        }
+    }
+
+    public boolean isEncodedResponsesEnabled() {
+        return cacheProperties.getEncodedResponses().isEnabled();
+    }
+
+    /**
+     * Ответ GET /api/users/{id} готовыми байтами: JSON строится один раз на версию записи кэша
+     * и сбрасывается вместе с ней (обновление, инвалидация, вытеснение)
+     */
+    public EncodedResponse getEncodedUserById(Long id) {
+        User user = getUserById(id);
+        return user == null ? null : responseFor(id, user);
+    }
+
+    /**
+     * ETag ответа с пользователем - считается один раз на версию записи кэша
+     */
+    public String getEtag(Long id, User user) {
+        return responseFor(id, user).etag();
+    }
+
+    /**
+     * Условный GET только по метаданным кэша, без обращения к БД и без сериализации.
+     * Возвращает ETag, если копия клиента актуальна, и null, если нужен обычный путь
+     * (пользователя нет в кэше, ETag для его версии еще не построен или версия клиента устарела).
+     */
+    public String getUnchangedEtag(Long id, String ifNoneMatch, boolean acceptsGzip) {
+        // Устаревшую запись проверяет обычный путь - он же запустит ее перезагрузку
+        long age = cache.ageNanos(id);
+        if (age < 0 || staleness.freshness(age) != StaleWhileRevalidate.Freshness.FRESH) {
+            return null;
         }
+        EncodedResponse cached = cache.cachedAttachment(id);
+        if (cached == null) {
+            return null;
+        }
+        String etag = cached.etag(acceptsGzip && cached.gzip() != null);
+        if (!EntityTags.matches(ifNoneMatch, etag)) {
+            return null;
+        }
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+        log.info("Версия пользователя {} у клиента актуальна (ETag {}), БД не читаем", id, etag);
+        return etag;
+    }
+
+    // Готовый ответ из кэша; если запись успели заменить, вытеснить или инвалидировать - кодируем user без сохранения
+    private EncodedResponse responseFor(Long id, User user) {
+        EncodedResponse encoded = cache.attachment(id, user, responseEncoder::encode, EncodedResponse::weight);
+        return encoded != null ? encoded : responseEncoder.encode(user);
+    }
+
+    // Чтение пользователя из БД через автомат защиты; длительность видна в JFR (событие Cache Load).
+    // При app.cache.compact-values строка приходит упакованной и кладется в кэш без перепаковки
+    private User loadUser(Long id) {
+        CacheEvents.LoadEvent event = CacheEvents.beginLoad("users", id);
+        User user = staleness.load(() -> database.getPacked(id));
+        CacheEvents.endLoad(event, user != null);
+        return user;
+    }
 
+    // Удаление записи из кэша с причиной reason (событие Cache Invalidation в JFR)
+    private User invalidate(Long id, String reason) {
+        CacheEvents.invalidation("users", id, reason);
+        return cache.remove(id);
+    }
+
+    private User loadIntoCache(Long id) {
         // ШАГ 2: Кэш-промах - загружаем из базы данных
         log.info("CACHE MISS: Пользователь не найден в кэше, загружаем из базы...");
-        User userFromDatabase = database.get(id);
+        User userFromDatabase = loadUser(id);
 
         if (userFromDatabase == null) {
             log.warn("Пользователь не найден в базе данных! ID: {}", id);
@@ -59,32 +292,128 @@ public class UserService {
         return userFromDatabase;
     }
 
+    /**
+     * Фоновая перезагрузка устаревшей записи - под той же read-блокировкой ключа, что и загрузка промаха
+     */
+    private void refreshEntry(Long id) {
+        keyLocks.withReadLock(id, () -> {
+            User fresh = loadUser(id);
+            if (fresh == null) {
+                invalidate(id, "refresh");
+            } else {
+                cache.put(id, fresh);
+            }
+            log.debug("Устаревшая запись пользователя {} перезагружена", id);
+            return fresh;
+        });
+    }
+
     public User updateUser(Long id, String name, String email) {
         log.info("Обновляем пользователя {}", id);
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, id);
 
-        User user = database.get(id);
-        if (user != null) {
-            user.setName(name);
-            user.setEmail(email);
-            database.put(id, user);
-
-            log.info("Удаляем пользователя из кэша (инвалидация)");
-            cache.remove(id);
-        } else {
-            log.warn("Попытка обновления несуществующего пользователя ID: {}", id);
+        PartitionNode owner = partitioning.ownerOf(id);
+        if (!partitioning.isLocal(owner)) {
+            try {
+                log.info("Пользователь {} принадлежит узлу {}, обновление выполнит владелец", id, owner.id());
+                return partitioning.forwardUpdate(owner, id, name, email);
+            } catch (IOException e) {
+                throw new PartitionUnavailableException(id, owner.id(), e);
+            }
         }
+        return updateLocalUser(id, name, email);
+    }
 
-        return user;
+    private User updateLocalUser(long id, String name, String email) {
+        hotKeyTracker.record(id);
+
+        // Чтение-изменение-запись строки - атомарно относительно других операций с этим id
+        return keyLocks.withWriteLock(id, () -> {
+            User user = database.get(id);
+            if (user != null) {
+                user.setName(name);
+                user.setEmail(email);
+                database.put(id, user);
+
+                // Инвалидацию кэша выполнит подписчик журнала изменений БД (applyChanges)
+                log.info("Пользователь обновлен в БД, кэш будет инвалидирован через журнал изменений");
+            } else {
+                log.warn("Попытка обновления несуществующего пользователя ID: {}", id);
+            }
+
+            return user;
+        });
+    }
+
+    /**
+     * Обработка пачки событий журнала изменений БД: измененные пользователи удаляются из кэша,
+     * следующее чтение загрузит актуальную версию. Инвалидацию делает подписчик, а не метод записи.
+     */
+    private void applyChanges(List<ChangeEvent> batch) {
+        batch.stream()
+                .map(ChangeEvent::id)
+                .distinct()
+                .forEach(id -> evictEmail(invalidate(id, "cdc"), null));
+        log.debug("CDC: обработано {} событий, последний offset {}", batch.size(), batch.get(batch.size() - 1).offset());
+    }
+
+    public Map<String, Object> getChangeFeedStats() {
+        log.info("Возвращаем состояние подписки кэша на журнал изменений");
+        return changeFeed.stats();
+    }
+
+    public List<HotKeyTracker.HotKey> getHotKeys(int limit) {
+        log.info("Возвращаем top-{} горячих ключей", limit);
+        return hotKeyTracker.hotKeys(limit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeFeed.close();
     }
 
     public void clearCache() {
         log.info("Очищаем весь кэш! Было записей: {}", cache.size());
+        CacheEvents.invalidation("users", "*", "clear");
         cache.clear();
+        emailCache.clear();
         log.info("Кэш успешно очищен");
     }
 
     public Map<Long, User> getCache() {
         log.info("Возвращаем содержимое кэша клиенту. Размер кэша: {}", cache.size());
-        return new HashMap<>(cache);
+        return cache.snapshot();
+    }
+
+    /**
+     * Слабый ETag содержимого кэша: меняется при любой вставке, замене, удалении или вытеснении
+     */
+    public String getCacheEtag() {
+        return EntityTags.weak("cache", cache.modificationCount());
+    }
+
+    public Map<String, Object> getPartitionStats(int sampleKeys) {
+        log.info("Возвращаем состояние партиционирования (оценка по {} ключам)", sampleKeys);
+        return partitioning.stats(sampleKeys);
+    }
+
+    public Map<String, Object> getCacheStats() {
+        log.info("Возвращаем статистику кэша: {} записей, {} байт", cache.size(), cache.weightedSize());
+        Map<String, Object> stats = cache.stats();
+        stats.put("memoryBudget", cacheRegistry.stats());
+        stats.put("stale", staleness.stats());
+        stats.put("trace", traceRecorder.stats());
+        stats.put("emailIndex", emailCache.stats());
+        stats.put("compactValues", userCodec.stats());
+        return stats;
+    }
+
+    /**
+     * Имитация медленной или недоступной БД: задержка и отказ чтения по id
+     */
+    public Map<String, Object> setDatabaseFaults(Duration readLatency, boolean readFailing) {
+        log.warn("Имитация проблем БД: задержка чтения {} мс, отказ чтения: {}", readLatency.toMillis(), readFailing);
+        database.setReadFaults(readLatency, readFailing);
+        return database.readFaults();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.prosoft.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Подписчик журнала изменений: в фоне читает события пачками и отдает их обработчику кэша.
+ * Offset фиксируется только после успешной обработки пачки - при ошибке чтение
+ * продолжится с того же места. Если подписчик отстал дальше хранимого окна журнала,
+ * вызывается resync (например, полная очистка кэша) и чтение продолжается с конца журнала.
+ */
+@Slf4j
+public class ChangeFeedSubscriber implements AutoCloseable {
+
+    private final String name;
+    private final ChangeLog changeLog;
+    private final int batchSize;
+    private final Consumer<List<ChangeEvent>> applier;
+    private final Runnable resync;
+
+    private final AtomicLong committedOffset;
+    private final LongAdder appliedEvents = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final ScheduledExecutorService executor;
+
+    public ChangeFeedSubscriber(String name, ChangeLog changeLog, long startOffset, int batchSize,
+                                Consumer<List<ChangeEvent>> applier, Runnable resync) {
+        this.name = name;
+        this.changeLog = changeLog;
+        this.batchSize = batchSize;
+        this.applier = applier;
+        this.resync = resync;
+        this.committedOffset = new AtomicLong(startOffset);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cdc-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(Duration pollInterval) {
+        long intervalMs = Math.max(1, pollInterval.toMillis());
+        executor.scheduleWithFixedDelay(this::poll, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("CDC: подписчик {} читает журнал изменений с offset {}", name, committedOffset.get());
+    }
+
+    private void poll() {
+        try {
+            long offset = committedOffset.get();
+            if (offset < changeLog.oldestOffset()) {
+                long resumeAt = changeLog.tail();
+                log.warn("CDC: подписчик {} отстал (offset {} < {}), пересинхронизация", name, offset, changeLog.oldestOffset());
+                resync.run();
+                committedOffset.set(resumeAt);
+                resyncs.increment();
+                return;
+            }
+
+            List<ChangeEvent> batch;
+            while (!(batch = changeLog.read(offset, batchSize)).isEmpty()) {
+                applier.accept(batch);
+                offset = batch.get(batch.size() - 1).offset() + 1;
+                committedOffset.set(offset);
+                appliedEvents.add(batch.size());
+            }
+        } catch (Exception e) {
+            log.error("CDC: ошибка обработки журнала подписчиком {}, повтор с offset {}", name, committedOffset.get(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long committed = committedOffset.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("committedOffset", committed);
+        stats.put("headOffset", changeLog.tail());
+        stats.put("lag", changeLog.tail() - committed);
+        stats.put("appliedEvents", appliedEvents.sum());
+        stats.put("resyncs", resyncs.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
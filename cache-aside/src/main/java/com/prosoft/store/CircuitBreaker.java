@@ -0,0 +1,135 @@
+package com.prosoft.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Автомат защиты БД (circuit breaker).
+ *
+ * - CLOSED - обращения проходят; failureThreshold ошибок подряд (или слишком медленных ответов) размыкают автомат
+ * - OPEN - обращения отклоняются сразу, БД получает время восстановиться; через openDuration - HALF_OPEN
+ * - HALF_OPEN - проходит одно пробное обращение: успех замыкает автомат, ошибка снова размыкает
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long slowCallNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private volatile long openedAt;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    /**
+     * @param slowCall ответ дольше этого считается ошибкой, 0 - не учитывать длительность
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Duration slowCall) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+        this.slowCallNanos = slowCall.toNanos();
+    }
+
+    /**
+     * Можно ли обратиться к БД прямо сейчас. В HALF_OPEN разрешение получает только один вызывающий
+     * и он обязан сообщить результат через onSuccess или onFailure.
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                return false;
+            }
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        if (probeInFlight.compareAndSet(false, true)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Пропустит ли автомат обращение - без захвата пробного вызова (для решения, запускать ли фоновую перезагрузку)
+     */
+    public boolean isCallPermitted() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> !probeInFlight.get();
+        };
+    }
+
+    public void onSuccess(long elapsedNanos) {
+        if (slowCallNanos > 0 && elapsedNanos > slowCallNanos) {
+            slowCalls.increment();
+            onFailure();
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+            probeInFlight.set(false);
+            log.info("Автомат защиты {} замкнут: БД снова отвечает", name);
+        }
+    }
+
+    public void onFailure() {
+        failures.increment();
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(current);
+        } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(current);
+        }
+    }
+
+    private void open(State from) {
+        openedAt = System.nanoTime();
+        if (state.compareAndSet(from, State.OPEN)) {
+            opened.increment();
+            consecutiveFailures.set(0);
+            probeInFlight.set(false);
+            log.warn("Автомат защиты {} разомкнут ({} -> OPEN): обращения к БД отклоняются {} мс",
+                    name, from, openNanos / 1_000_000);
+        }
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.get());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("failures", failures.sum());
+        stats.put("slowCalls", slowCalls.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("opened", opened.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,177 @@
+package com.prosoft.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.cache.UserWeigher;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Замер упакованных значений (app.cache.compact-values) против обычного User: память на запись, вес по
+ * UserWeigher, стоимость геттеров и попадания с сериализацией Jackson. Цифры в README модуля получены им.
+ *
+ * Запуск: ./gradlew :cache-aside:compactValuesBenchmark [-Pusers=1000000]
+ *
+ * Это не JMH: прогрев и медиана по раундам в одном процессе. Для сравнения двух вариантов на одной машине
+ * этого достаточно, абсолютные наносекунды зависят от железа и JIT.
+ */
+public class CompactValuesBenchmark {
+
+    private static final int NAMES = 300;
+    private static final int SURNAMES = 800;
+    private static final int DOMAINS = 40;
+    private static final int SMALL = 10_000;
+    private static final int ROUNDS = 7;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final UserWeigher weigher = new UserWeigher();
+    private long blackhole;
+
+    public static void main(String[] args) {
+        int users = Integer.getInteger("users", 1_000_000);
+        new CompactValuesBenchmark().run(users);
+    }
+
+    private void run(int users) {
+        System.out.printf("Пользователей: %d, JDK %s, ядер: %d%n%n", users, Runtime.version(),
+                Runtime.getRuntime().availableProcessors());
+
+        Result plain = measure(users, UnaryOperator.identity());
+        UserCodec codec = new UserCodec(true, 4096, 2);
+        Result packed = measure(users, codec::pack);
+
+        System.out.println("| | Обычный `User` | `PackedUser` |");
+        System.out.println("|---|---|---|");
+        System.out.printf("| Куча на запись (замер) | %d B | %d B |%n", plain.heapPerEntry, packed.heapPerEntry);
+        System.out.printf("| Вес записи по `UserWeigher` (без накладных расходов кэша) | %d B | %d B |%n",
+                plain.weightPerEntry, packed.weightPerEntry);
+        System.out.printf("| `getName()` + `getEmail()` на %s записей | %d ns | %d ns |%n", count(SMALL),
+                plain.accessNanos, packed.accessNanos);
+        System.out.printf("| Попадание с сериализацией, %s / %s записей | %d / %d ns | %d / %d ns |%n",
+                count(SMALL), count(users), plain.smallHitNanos, plain.largeHitNanos,
+                packed.smallHitNanos, packed.largeHitNanos);
+        System.out.println();
+        System.out.println("Словари: " + codec.stats());
+        System.out.println("blackhole: " + blackhole);
+    }
+
+    private Result measure(int users, UnaryOperator<User> encode) {
+        long before = usedHeap();
+        Map<Long, User> large = fill(users, encode);
+        long heapPerEntry = (usedHeap() - before) / users;
+
+        long weight = 0;
+        for (Map.Entry<Long, User> entry : large.entrySet()) {
+            weight += weigher.weigh(entry.getKey(), entry.getValue());
+        }
+
+        Map<Long, User> small = fill(SMALL, encode);
+        Result result = new Result(heapPerEntry, weight / users, accessNanos(small), hitNanos(small), hitNanos(large));
+        large.clear();
+        return result;
+    }
+
+    private static Map<Long, User> fill(int users, UnaryOperator<User> encode) {
+        Random random = new Random(42);
+        Map<Long, User> map = new ConcurrentHashMap<>();
+        for (long id = 1; id <= users; id++) {
+            String name = "Name" + token(random.nextInt(NAMES));
+            String surname = "Surname" + token(random.nextInt(SURNAMES));
+            String email = name.toLowerCase() + "." + surname.toLowerCase() + (id % 10)
+                    + "@mail" + random.nextInt(DOMAINS) + ".example.com";
+            // Ключ и id - один объект Long, как в кэше после UserStore
+            Long key = id;
+            map.put(key, encode.apply(new User(key, name + " " + surname, email)));
+        }
+        return map;
+    }
+
+    private static String count(int users) {
+        return users % 1_000_000 == 0 ? users / 1_000_000 + " млн" : users / 1000 + " тыс.";
+    }
+
+    private static String token(int index) {
+        return Integer.toString(index * 7919 + 46_656, 36);
+    }
+
+    /**
+     * Среднее время getName() + getEmail() на запись
+     */
+    private long accessNanos(Map<Long, User> map) {
+        User[] values = map.values().toArray(new User[0]);
+        return median(() -> {
+            long sum = 0;
+            for (int repeat = 0; repeat < 20; repeat++) {
+                for (User user : values) {
+                    sum += user.getName().length() + user.getEmail().length();
+                }
+            }
+            blackhole += sum;
+            return 20L * values.length;
+        });
+    }
+
+    /**
+     * Среднее время попадания: чтение из map по случайному ключу и сериализация в JSON
+     */
+    private long hitNanos(Map<Long, User> map) {
+        Random random = new Random(7);
+        long[] keys = new long[200_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 1 + random.nextInt(map.size());
+        }
+        return median(() -> {
+            long sum = 0;
+            try {
+                for (long key : keys) {
+                    sum += mapper.writeValueAsBytes(map.get(key)).length;
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            blackhole += sum;
+            return keys.length;
+        });
+    }
+
+    /**
+     * Медиана наносекунд на операцию по раундам; первые раунды - прогрев
+     */
+    private static long median(Round round) {
+        for (int i = 0; i < 3; i++) {
+            round.run();
+        }
+        long[] perOp = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long started = System.nanoTime();
+            long ops = round.run();
+            perOp[i] = (System.nanoTime() - started) / ops;
+        }
+        Arrays.sort(perOp);
+        return perOp[ROUNDS / 2];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Round {
+        long run();
+    }
+
+    private record Result(long heapPerEntry, long weightPerEntry, long accessNanos, long smallHitNanos,
+                          long largeHitNanos) {
+    }
+}
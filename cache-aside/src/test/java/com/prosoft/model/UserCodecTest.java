@@ -0,0 +1,117 @@
+package com.prosoft.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserCodecTest {
+
+    @Test
+    @DisplayName("Упаковка и распаковка возвращают те же name и email")
+    void roundTrip() {
+        UserCodec codec = new UserCodec(true, 4096, 2);
+        String[][] samples = {
+                {"Alice", "alice@example.com"},
+                {"Alice Smith", "alice.smith@example.com"},
+                {"Anna Maria Smith", "a@b@example.com"},
+                {"Анна Петрова", "анна@пример.рф"},
+                {"José Müller", "jose.muller@beispiel.de"},
+                {"Emoji 🙂", "emoji@example.com"},
+                {"", ""},
+                {" ", "@"},
+                {"Trailing ", "no-at-sign"},
+                {null, "only-email@example.com"},
+                {"Only Name", null},
+                {null, null},
+                {"L" + "o".repeat(300) + "ng Name", "l".repeat(200) + "@" + "d".repeat(100) + ".example.com"},
+        };
+        // Повторы: части строк попадают в словарь, и часть значений кодируется номерами
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < samples.length; i++) {
+                assertRoundTrip(codec, new User((long) i, samples[i][0], samples[i][1]));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Значения, упакованные до попадания строки в словарь, распаковываются и после")
+    void valuesPackedBeforeAdmissionStayReadable() {
+        UserCodec codec = new UserCodec(true, 4096, 3);
+        User first = codec.pack(new User(1L, "Bob Brown", "bob@example.com"));
+
+        for (long id = 2; id <= 10; id++) {
+            assertRoundTrip(codec, new User(id, "Bob Brown", "bob" + id + "@example.com"));
+        }
+
+        assertEquals("Bob Brown", first.getName());
+        assertEquals("bob@example.com", first.getEmail());
+        assertTrue(dictionarySize(codec, "domains") > 0, "домен должен попасть в словарь");
+        assertTrue(dictionarySize(codec, "names") > 0, "имя должно попасть в словарь");
+    }
+
+    @Test
+    @DisplayName("Заполненный словарь не мешает упаковке - строки хранятся целиком")
+    void fullDictionaryFallsBackToInlineStrings() {
+        UserCodec codec = new UserCodec(true, 1, 1);
+        for (long id = 1; id <= 20; id++) {
+            assertRoundTrip(codec, new User(id, "Name" + id + " Surname" + id, "user" + id + "@mail" + id + ".example.com"));
+        }
+        assertEquals(1, dictionarySize(codec, "domains"));
+    }
+
+    @Test
+    @DisplayName("Словарь сжимает повторяющиеся части")
+    void dictionaryShrinksPackedValue() {
+        UserCodec codec = new UserCodec(true, 4096, 1);
+        PackedUser first = (PackedUser) codec.pack(new User(1L, "Alexander Konstantinopolsky", "alexander@subdomain.example.com"));
+        PackedUser second = (PackedUser) codec.pack(new User(2L, "Alexander Konstantinopolsky", "alexander@subdomain.example.com"));
+
+        // Повторы имени, фамилии и домена - по номеру в словаре, локальная часть email всегда целиком
+        assertTrue(second.packedSize() <= "alexander".length() + 4, "размер " + second.packedSize());
+        assertEquals(first.packedSize(), second.packedSize());
+    }
+
+    @Test
+    @DisplayName("Выключенный кодек и повторная упаковка возвращают тот же объект")
+    void packReturnsSameInstanceWhenNothingToDo() {
+        User user = new User(1L, "Alice", "alice@example.com");
+        assertSame(user, UserCodec.disabled().pack(user));
+
+        UserCodec codec = new UserCodec(true, 16, 1);
+        User packed = codec.pack(user);
+        assertInstanceOf(PackedUser.class, packed);
+        assertSame(packed, codec.pack(packed));
+        assertNull(codec.pack(null));
+    }
+
+    @Test
+    @DisplayName("Упакованный пользователь неизменяем")
+    void packedUserIsImmutable() {
+        User packed = new UserCodec(true, 16, 1).pack(new User(1L, "Alice", "alice@example.com"));
+
+        assertThrows(UnsupportedOperationException.class, () -> packed.setId(2L));
+        assertThrows(UnsupportedOperationException.class, () -> packed.setName("Bob"));
+        assertThrows(UnsupportedOperationException.class, () -> packed.setEmail("bob@example.com"));
+    }
+
+    private static void assertRoundTrip(UserCodec codec, User user) {
+        User packed = codec.pack(user);
+        assertInstanceOf(PackedUser.class, packed);
+        assertEquals(user.getId(), packed.getId());
+        assertEquals(user.getName(), packed.getName());
+        assertEquals(user.getEmail(), packed.getEmail());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int dictionarySize(UserCodec codec, String dictionary) {
+        return (int) ((Map<String, Object>) codec.stats().get(dictionary)).get("size");
+    }
+}
@@ -0,0 +1,99 @@
+package com.prosoft.partition;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashRingTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int SAMPLE_KEYS = 100_000;
+
+    @Test
+    @DisplayName("Добавление узла перемещает около 1/N ключей, и все они уходят новому узлу")
+    void addingNodeMovesOnlyKeysOfNewNode() {
+        for (int size = 2; size <= 8; size++) {
+            HashRing ring = new HashRing(nodes(size), VIRTUAL_NODES);
+            PartitionNode added = node(size + 1);
+            HashRing grown = ring.withNode(added);
+
+            for (long key = 1; key <= SAMPLE_KEYS; key++) {
+                String before = ring.ownerOf(key).id();
+                String after = grown.ownerOf(key).id();
+                assertTrue(before.equals(after) || after.equals(added.id()),
+                        "ключ " + key + " переехал с " + before + " на старый узел " + after);
+            }
+
+            // Разброс долей при 128 виртуальных узлах - до ~30% от идеальной 1/N
+            double expected = 1.0 / (size + 1);
+            double moved = ring.movedShare(grown, SAMPLE_KEYS);
+            assertEquals(expected, moved, expected * 0.3, "перемещено ключей при " + size + " -> " + (size + 1));
+            assertEquals(grown.ownershipShares(SAMPLE_KEYS).get(added.id()), moved, 1e-9);
+        }
+    }
+
+    @Test
+    @DisplayName("Удаление узла перемещает только его ключи")
+    void removingNodeMovesOnlyItsKeys() {
+        HashRing ring = new HashRing(nodes(5), VIRTUAL_NODES);
+        HashRing shrunk = ring.withoutNode("node-3");
+
+        for (long key = 1; key <= SAMPLE_KEYS; key++) {
+            String before = ring.ownerOf(key).id();
+            String after = shrunk.ownerOf(key).id();
+            if (before.equals("node-3")) {
+                assertNotEquals("node-3", after);
+            } else {
+                assertEquals(before, after, "ключ " + key + " переехал без причины");
+            }
+        }
+        assertEquals(ring.ownershipShares(SAMPLE_KEYS).get("node-3"), ring.movedShare(shrunk, SAMPLE_KEYS), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Виртуальные узлы выравнивают доли узлов")
+    void sharesAreBalanced() {
+        int size = 4;
+        Map<String, Double> shares = new HashRing(nodes(size), VIRTUAL_NODES).ownershipShares(SAMPLE_KEYS);
+
+        assertEquals(size, shares.size());
+        assertEquals(1.0, shares.values().stream().mapToDouble(Double::doubleValue).sum(), 1e-6);
+        shares.forEach((id, share) -> assertEquals(1.0 / size, share, 0.3 / size, "доля узла " + id));
+    }
+
+    @Test
+    @DisplayName("Кольцо не зависит от порядка узлов в конфигурации")
+    void ringIgnoresNodeOrder() {
+        List<PartitionNode> nodes = nodes(4);
+        HashRing ring = new HashRing(nodes, VIRTUAL_NODES);
+        HashRing reversed = new HashRing(nodes.reversed(), VIRTUAL_NODES);
+
+        assertEquals(0.0, ring.movedShare(reversed, SAMPLE_KEYS));
+    }
+
+    @Test
+    @DisplayName("Кольцо без узлов не создается")
+    void emptyRingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of(), VIRTUAL_NODES));
+    }
+
+    private static List<PartitionNode> nodes(int count) {
+        List<PartitionNode> nodes = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            nodes.add(node(i));
+        }
+        return nodes;
+    }
+
+    private static PartitionNode node(int index) {
+        return PartitionNode.parse("node-" + index + "@localhost:" + (9080 + index));
+    }
+}
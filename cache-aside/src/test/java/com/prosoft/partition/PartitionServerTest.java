@@ -0,0 +1,80 @@
+package com.prosoft.partition;
+
+import com.prosoft.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PartitionServerTest {
+
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private PartitionServer server;
+    private PartitionClient client;
+    private PartitionNode node;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new PartitionServer(0, id -> {
+            if (id < 0) {
+                throw new IllegalStateException("сбой чтения " + id);
+            }
+            return users.get(id);
+        }, (id, name, email) -> {
+            users.computeIfPresent(id, (key, user) -> new User(key, name, email));
+            return users.get(id);
+        });
+        server.start();
+        // Один простаивающий сокет на узел: все запросы теста идут по одному соединению, пока оно живо
+        client = new PartitionClient(1, Duration.ofSeconds(5));
+        node = new PartitionNode("node-1", "localhost", server.port());
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Пользователь с null name и email проходит туда и обратно")
+    void nullFieldsRoundTrip() throws IOException {
+        users.put(1L, new User(1L, null, null));
+        users.put(2L, new User(2L, "Bob", null));
+
+        assertUser(1L, null, null, client.get(node, 1L));
+        assertUser(2L, "Bob", null, client.get(node, 2L));
+        assertNull(client.get(node, 3L));
+
+        assertUser(2L, null, "bob@example.com", client.update(node, 2L, null, "bob@example.com"));
+        assertUser(2L, null, "bob@example.com", client.get(node, 2L));
+    }
+
+    @Test
+    @DisplayName("Ошибка на узле - один кадр ERROR, следующие ответы разбираются верно")
+    void errorDoesNotDesyncConnection() throws IOException {
+        users.put(1L, new User(1L, "Alice", "alice@example.com"));
+
+        assertUser(1L, "Alice", "alice@example.com", client.get(node, 1L));
+        IOException error = assertThrows(IOException.class, () -> client.get(node, -1L));
+        assertEquals("Ошибка на узле-владельце: сбой чтения -1", error.getMessage());
+        for (int i = 0; i < 3; i++) {
+            assertUser(1L, "Alice", "alice@example.com", client.get(node, 1L));
+        }
+    }
+
+    private static void assertUser(long id, String name, String email, User user) {
+        assertEquals(id, user.getId());
+        assertEquals(name, user.getName());
+        assertEquals(email, user.getEmail());
+    }
+}
@@ -0,0 +1,147 @@
+package com.prosoft.store;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final Duration LONG_OPEN = Duration.ofMinutes(1);
+    private static final long FAST_CALL = 1_000;
+
+    @Test
+    @DisplayName("CLOSED -> OPEN после failureThreshold ошибок подряд")
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, LONG_OPEN, Duration.ZERO);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    @DisplayName("Успешный ответ сбрасывает счетчик ошибок подряд")
+    void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, LONG_OPEN, Duration.ZERO);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(FAST_CALL);
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(2, breaker.stats().get("consecutiveFailures"));
+    }
+
+    @Test
+    @DisplayName("Медленный ответ считается ошибкой")
+    void slowCallCountsAsFailure() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, LONG_OPEN, Duration.ofMillis(10));
+
+        breaker.onSuccess(Duration.ofMillis(5).toNanos());
+        breaker.onSuccess(Duration.ofMillis(50).toNanos());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onSuccess(Duration.ofMillis(50).toNanos());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2L, breaker.stats().get("slowCalls"));
+    }
+
+    @Test
+    @DisplayName("OPEN отклоняет обращения, пока не прошел openDuration")
+    void openRejectsCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, LONG_OPEN, Duration.ZERO);
+        breaker.onFailure();
+
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1L, breaker.stats().get("rejected"));
+    }
+
+    @Test
+    @DisplayName("OPEN -> HALF_OPEN по истечении openDuration: проходит одно пробное обращение")
+    void halfOpenAllowsSingleProbe() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO, Duration.ZERO);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.isCallPermitted());
+        // Проверка без захвата пробного обращения состояние не меняет
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    @DisplayName("HALF_OPEN -> CLOSED после успешного пробного обращения")
+    void successfulProbeCloses() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO, Duration.ZERO);
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onSuccess(FAST_CALL);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("HALF_OPEN -> OPEN после неудачного пробного обращения")
+    void failedProbeReopens() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 5, Duration.ofMillis(50), Duration.ZERO);
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure();
+        }
+        assertFalse(breaker.tryAcquire());
+
+        sleep(Duration.ofMillis(60));
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        // Одной ошибки пробы достаточно, порог failureThreshold здесь не действует
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2L, breaker.stats().get("opened"));
+
+        sleep(Duration.ofMillis(60));
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    @DisplayName("Медленная проба снова размыкает автомат")
+    void slowProbeReopens() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO, Duration.ofMillis(10));
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onSuccess(Duration.ofMillis(50).toNanos());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.prosoft.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Запуск одного из модулей-примеров отдельным процессом на свободном (эфемерном) порту.
+ * Все пять приложений лежат в одном пакете com.prosoft, поэтому в один classpath их не сложить -
+ * стенд поднимает собранный bootJar модуля через java -jar.
+ */
+public class AppProcess implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(90);
+
+    private final String name;
+    private final Process process;
+    private final String baseUrl;
+
+    private AppProcess(String name, Process process, int port) {
+        this.name = name;
+        this.process = process;
+        this.baseUrl = "http://localhost:" + port;
+    }
+
+    public static AppProcess start(String module, LoadTestOptions options) throws IOException, InterruptedException {
+        return start(module, module, options, List.of());
+    }
+
+    /**
+     * Запуск экземпляра модуля под своим именем (имя лога) с дополнительными аргументами приложения -
+     * например, нескольких узлов одного модуля
+     */
+    public static AppProcess start(String module, String name, LoadTestOptions options, List<String> extraArgs)
+            throws IOException, InterruptedException {
+        Path jar = findBootJar(options.rootDir().resolve(module));
+        int port = freePort();
+
+        Files.createDirectories(options.reportDir());
+        Path logFile = options.reportDir().resolve(name + ".log");
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(options.jvmArgs());
+        command.addAll(List.of("-jar", jar.toString(),
+                "--server.port=" + port,
+                "--app.database.seed-users=" + options.seedUsers(),
+                // Логирование каждого запроса на INFO исказило бы замеры
+                "--logging.level.com.prosoft=WARN"));
+        if (options.storeLatency() != null) {
+            // Задержка чтения из БД по id - ее понимают все модули
+            command.add("--app.database.read-latency=" + options.storeLatency());
+        }
+        command.addAll(extraArgs);
+        command.addAll(options.appArgs());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+
+        AppProcess app = new AppProcess(name, process, port);
+        System.out.printf("🚀 Запускаем %s на порту %d (лог: %s)%n", name, port, logFile);
+        app.awaitReady();
+        return app;
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    private void awaitReady() throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest probe = HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/1"))
+                .timeout(Duration.ofSeconds(2))
+                .build();
+
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Процесс " + name + " завершился при старте, код " + process.exitValue());
+            }
+            try {
+                if (client.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    System.out.printf("✅ %s готов к нагрузке%n", name);
+                    return;
+                }
+            } catch (IOException e) {
+                // Приложение еще не слушает порт
+            }
+            Thread.sleep(500);
+        }
+        close();
+        throw new IllegalStateException(name + " не поднялся за " + STARTUP_TIMEOUT.toSeconds() + " секунд");
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+        System.out.printf("🛑 %s остановлен%n", name);
+    }
+
+    private static Path findBootJar(Path moduleDir) throws IOException {
+        Path libs = moduleDir.resolve("build").resolve("libs");
+        if (!Files.isDirectory(libs)) {
+            throw new IllegalStateException("Не найден " + libs + " - соберите модуль: ./gradlew :" + moduleDir.getFileName() + ":bootJar");
+        }
+        try (Stream<Path> files = Files.list(libs)) {
+            return files
+                    .filter(path -> path.toString().endsWith(".jar"))
+                    .filter(path -> !path.toString().endsWith("-plain.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("В " + libs + " нет исполняемого jar"));
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
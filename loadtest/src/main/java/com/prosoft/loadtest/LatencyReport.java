@@ -0,0 +1,77 @@
+package com.prosoft.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Отчеты прогона. Все модули одного запуска пишутся в один каталог:
+ * - summary.csv - по строке на (модуль, операция), удобно сравнивать паттерны между собой
+ * - <module>-<operation>.hgrm - полное перцентильное распределение (открывается HdrHistogram Plotter)
+ */
+public class LatencyReport {
+
+    private static final String HEADER = "module,operation,target_rps,achieved_rps,count,errors,not_found,p50_ms,p90_ms,p99_ms,p99_9_ms,max_ms";
+
+    private final Path runDir;
+    private final List<String> rows = new ArrayList<>();
+
+    public LatencyReport(Path reportDir) throws IOException {
+        String runId = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        this.runDir = Files.createDirectories(reportDir.resolve(runId));
+    }
+
+    public void add(ModuleResult result) throws IOException {
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = result.histograms().get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            try (PrintStream out = new PrintStream(runDir.resolve(result.module() + "-" + operation.name().toLowerCase() + ".hgrm").toFile())) {
+                // Значения записаны в микросекундах - в файле показываем миллисекунды
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+
+            rows.add(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    result.module(),
+                    operation,
+                    result.targetRate(),
+                    (double) histogram.getTotalCount() / result.durationSeconds(),
+                    histogram.getTotalCount(),
+                    result.errors().get(operation),
+                    result.notFound().get(operation),
+                    millis(histogram, 50.0),
+                    millis(histogram, 90.0),
+                    millis(histogram, 99.0),
+                    millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0));
+        }
+    }
+
+    public void write() throws IOException {
+        Path summary = runDir.resolve("summary.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(summary))) {
+            out.println(HEADER);
+            rows.forEach(out::println);
+        }
+
+        System.out.println();
+        System.out.println(HEADER);
+        rows.forEach(System.out::println);
+        System.out.printf("%n📄 Отчеты сохранены в %s%n", runDir);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.prosoft.loadtest;
+
+/**
+ * Нагрузочный стенд для модулей-примеров.
+ * По очереди поднимает каждый модуль, гоняет одинаковый профиль нагрузки и пишет сравнимые отчеты.
+ *
+ * Запуск: ./gradlew :loadtest:run --args="--modules=cache-aside,write-back-cache --rate=2000 --duration=60"
+ */
+public class LoadTestApp {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        if (options.readPercent() + options.writePercent() + options.deletePercent() != 100) {
+            throw new IllegalArgumentException("Сумма --read, --write и --delete должна быть равна 100");
+        }
+
+        System.out.println("🔧 Профиль нагрузки: " + options);
+        LatencyReport report = new LatencyReport(options.reportDir());
+
+        if (options.baseUrl() != null) {
+            // Приложение уже запущено (например, из IDE) - только нагружаем
+            String module = options.modules().size() == 1 ? options.modules().get(0) : "external";
+            report.add(new OpenModelLoadDriver(module, options.baseUrl(), options).run());
+        } else {
+            for (String module : options.modules()) {
+                try (AppProcess app = AppProcess.start(module, options)) {
+                    report.add(new OpenModelLoadDriver(module, app.baseUrl(), options).run());
+                }
+            }
+        }
+
+        report.write();
+    }
+}
@@ -0,0 +1,158 @@
+package com.prosoft.loadtest;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Параметры прогона. Задаются аргументами вида --key=value, например:
+ * --modules=cache-aside,write-back-cache --rate=2000 --duration=60 --read=80 --write=15 --delete=5
+ */
+public class LoadTestOptions {
+
+    public static final List<String> ALL_MODULES = List.of(
+            "cache-aside", "read-through-cache", "write-through-cache", "write-around-cache", "write-back-cache",
+            "reactive-read-through-cache");
+
+    private final Map<String, String> args = new HashMap<>();
+
+    public LoadTestOptions(String[] argv) {
+        for (String arg : argv) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидался аргумент вида --key=value, получено: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            args.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+    }
+
+    // Какие модули прогонять (по очереди, каждый в своем процессе)
+    public List<String> modules() {
+        String value = args.get("modules");
+        return value == null ? ALL_MODULES : Arrays.asList(value.split(","));
+    }
+
+    // Уже запущенное приложение - если задано, модуль не поднимается
+    public String baseUrl() {
+        return args.get("base-url");
+    }
+
+    // Целевая интенсивность (открытая модель: запросы в секунду вне зависимости от ответов)
+    public int rate() {
+        return intArg("rate", 500);
+    }
+
+    public int durationSeconds() {
+        return intArg("duration", 30);
+    }
+
+    // Прогрев: запросы отправляются, но не попадают в гистограммы
+    public int warmupSeconds() {
+        return intArg("warmup", 5);
+    }
+
+    // Размер пространства ключей (столько же пользователей создается в БД при старте)
+    public int keys() {
+        return intArg("keys", 10_000);
+    }
+
+    // Пользователи в БД при старте: ключи 1..keys для чтений и записей и, если есть удаления,
+    // еще столько же "холодных" id keys+1..2*keys - удаления идут только в них
+    public int seedUsers() {
+        return deletePercent() > 0 ? 2 * keys() : keys();
+    }
+
+    public double zipfTheta() {
+        return Double.parseDouble(args.getOrDefault("zipf", "0.99"));
+    }
+
+    public int readPercent() {
+        return intArg("read", 80);
+    }
+
+    public int writePercent() {
+        return intArg("write", 20);
+    }
+
+    // По умолчанию 0: DELETE есть только у write-* модулей, а смесь операций должна быть одинаковой для всех
+    public int deletePercent() {
+        return intArg("delete", 0);
+    }
+
+    // Ограничение числа запросов "в полете" - защищает стенд от OOM, задержка ожидания входит в замер
+    public int maxInFlight() {
+        return intArg("max-in-flight", 1_000);
+    }
+
+    // Задержка чтения из БД (например, 20ms) - имитация медленного хранилища
+    public String storeLatency() {
+        return args.get("store-latency");
+    }
+
+    // Дополнительные аргументы приложения через запятую, например --server.tomcat.threads.max=50
+    public List<String> appArgs() {
+        return listArg("app-args");
+    }
+
+    // Дополнительные опции JVM через запятую, например -Xmx512m,-Dreactor.netty.ioWorkerCount=2
+    public List<String> jvmArgs() {
+        return listArg("jvm-args");
+    }
+
+    // Максимальный размер кластера cache-aside в PartitionClusterApp (прогоны для 1..nodes узлов)
+    public int nodes() {
+        return intArg("nodes", 3);
+    }
+
+    // Бюджет памяти кэша каждого узла в PartitionClusterApp - меньше, чем нужно под все ключи
+    public String nodeBudget() {
+        return args.getOrDefault("node-budget", "512KB");
+    }
+
+    // Файл трассы для TraceSimulatorApp (app.cache.trace.path модуля)
+    public Path trace() {
+        String value = args.get("trace");
+        if (value == null) {
+            throw new IllegalArgumentException("Не задан --trace=<файл трассы>");
+        }
+        return Path.of(value);
+    }
+
+    // Как записи влияют на кэш в симуляторе: invalidate, update или ignore
+    public String writeMode() {
+        return args.getOrDefault("writes", "invalidate");
+    }
+
+    // Размеры кэша (в записях) для симулятора через запятую; по умолчанию - доли от числа различных ключей
+    public List<String> sizes() {
+        return listArg("sizes");
+    }
+
+    public Path rootDir() {
+        return Path.of(args.getOrDefault("root-dir", System.getProperty("loadtest.rootDir", ".")));
+    }
+
+    public Path reportDir() {
+        return Path.of(args.getOrDefault("report-dir",
+                System.getProperty("loadtest.reportDir", "loadtest/build/reports/loadtest")));
+    }
+
+    private List<String> listArg(String name) {
+        String value = args.get(name);
+        return value == null || value.isBlank() ? List.of() : Arrays.asList(value.split(","));
+    }
+
+    private int intArg(String name, int defaultValue) {
+        String value = args.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rate=%d rps, duration=%ds, warmup=%ds, keys=%d, zipf=%.2f, mix=%d/%d/%d (read/write/delete), store-latency=%s",
+                rate(), durationSeconds(), warmupSeconds(), keys(), zipfTheta(),
+                readPercent(), writePercent(), deletePercent(), storeLatency() == null ? "0ms" : storeLatency());
+    }
+}
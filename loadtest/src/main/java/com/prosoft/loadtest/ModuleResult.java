@@ -0,0 +1,17 @@
+package com.prosoft.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+
+/**
+ * Результат прогона одного модуля: гистограмма задержек (мкс), число ошибок и ответов
+ * "не найдено" (404 или 200 с пустым телом) на каждую операцию
+ */
+public record ModuleResult(String module,
+                           int targetRate,
+                           int durationSeconds,
+                           Map<Operation, Histogram> histograms,
+                           Map<Operation, Long> errors,
+                           Map<Operation, Long> notFound) {
+}
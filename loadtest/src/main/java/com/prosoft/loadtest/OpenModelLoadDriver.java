@@ -0,0 +1,148 @@
+package com.prosoft.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки по открытой модели: запросы отправляются с постоянной интенсивностью
+ * по заранее рассчитанному расписанию, независимо от того, как быстро отвечает сервер.
+ *
+ * Задержка считается от ЗАПЛАНИРОВАННОГО момента отправки, а не от фактического. Если сервер
+ * (или сам генератор) притормозил, ожидание в очереди попадает в гистограмму - это и есть
+ * коррекция coordinated omission.
+ *
+ * Чтения и записи выбирают ключи 1..keys по Ципфу, а удаления - равномерно из отдельного "холодного"
+ * диапазона keys+1..2*keys, и удаленный пользователь сразу создается заново (POST, вне замера).
+ * Так удаления не выбивают горячие ключи и не превращают остаток прогона в чтения несуществующих
+ * пользователей. Ответы "не найдено" (404 или 200 с пустым телом) считаются отдельно от успешных.
+ */
+public class OpenModelLoadDriver {
+
+    private final String module;
+    private final String baseUrl;
+    private final LoadTestOptions options;
+    private final ZipfianGenerator keys;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> notFound = new EnumMap<>(Operation.class);
+
+    public OpenModelLoadDriver(String module, String baseUrl, LoadTestOptions options) {
+        this.module = module;
+        this.baseUrl = baseUrl;
+        this.options = options;
+        this.keys = new ZipfianGenerator(options.keys(), options.zipfTheta());
+
+        for (Operation operation : Operation.values()) {
+            // Значения в микросекундах, 3 значащие цифры, диапазон расширяется автоматически
+            recorders.put(operation, new Recorder(3));
+            errors.put(operation, new LongAdder());
+            notFound.put(operation, new LongAdder());
+        }
+    }
+
+    public ModuleResult run() throws InterruptedException {
+        int readPercent = options.readPercent();
+        int writePercent = options.writePercent();
+        if (!Operation.supportsDelete(module) && options.deletePercent() > 0) {
+            System.out.printf("⚠️  В %s нет DELETE - доля удалений (%d%%) переносится в записи%n",
+                    module, options.deletePercent());
+            writePercent += options.deletePercent();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Semaphore inFlight = new Semaphore(options.maxInFlight());
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        System.out.printf("📈 %s: прогрев %d с, затем замер %d с при %d rps%n",
+                module, options.warmupSeconds(), options.durationSeconds(), options.rate());
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+
+            Operation operation = pick(readPercent, writePercent);
+            boolean measured = intended >= measureFrom;
+
+            long id = operation == Operation.DELETE
+                    ? options.keys() + 1 + ThreadLocalRandom.current().nextLong(options.keys())
+                    : keys.next();
+
+            // Ожидание свободного слота тоже входит в задержку: отсчет идет от intended
+            inFlight.acquire();
+            client.sendAsync(operation.request(baseUrl, id), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, error) -> {
+                        if (measured) {
+                            record(operation, intended, response, error);
+                        }
+                        if (operation == Operation.DELETE) {
+                            // Слот освобождается после восстановления: иначе повторные создания копились бы без ограничения
+                            client.sendAsync(Operation.restore(baseUrl, id), HttpResponse.BodyHandlers.discarding())
+                                    .whenComplete((restored, restoreError) -> inFlight.release());
+                        } else {
+                            inFlight.release();
+                        }
+                    });
+        }
+
+        // Дожидаемся всех ответов, чтобы хвост распределения не потерялся
+        inFlight.acquire(options.maxInFlight());
+        inFlight.release(options.maxInFlight());
+
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        Map<Operation, Long> notFoundCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, recorders.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, errors.get(operation).sum());
+            notFoundCounts.put(operation, notFound.get(operation).sum());
+        }
+        return new ModuleResult(module, options.rate(), options.durationSeconds(), histograms, errorCounts, notFoundCounts);
+    }
+
+    private void record(Operation operation, long intended, HttpResponse<byte[]> response, Throwable error) {
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+        recorders.get(operation).recordValue(latencyMicros);
+        if (error != null || (response.statusCode() >= 400 && response.statusCode() != 404)) {
+            errors.get(operation).increment();
+        } else if (response.statusCode() == 404 || (operation.returnsUser() && response.body().length == 0)) {
+            notFound.get(operation).increment();
+        }
+    }
+
+    private static Operation pick(int readPercent, int writePercent) {
+        int roll = ThreadLocalRandom.current().nextInt(100);
+        if (roll < readPercent) {
+            return Operation.READ;
+        }
+        if (roll < readPercent + writePercent) {
+            return Operation.WRITE;
+        }
+        return Operation.DELETE;
+    }
+}
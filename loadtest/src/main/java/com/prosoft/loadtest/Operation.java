@@ -0,0 +1,62 @@
+package com.prosoft.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+/**
+ * Операции нагрузочного профиля - те же эндпоинты UserController, что и в README модулей
+ */
+public enum Operation {
+
+    READ {
+        @Override
+        HttpRequest request(String baseUrl, long id) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/" + id)).GET().build();
+        }
+    },
+
+    WRITE {
+        @Override
+        HttpRequest request(String baseUrl, long id) {
+            String query = "?name=User%20" + id + "&email=user" + id + "%40example.com";
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/" + id + query))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .build();
+        }
+    },
+
+    DELETE {
+        @Override
+        HttpRequest request(String baseUrl, long id) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/" + id)).DELETE().build();
+        }
+
+        @Override
+        boolean returnsUser() {
+            return false;
+        }
+    };
+
+    abstract HttpRequest request(String baseUrl, long id);
+
+    // Ответ - пользователь; пустое тело означает, что его нет в БД
+    boolean returnsUser() {
+        return true;
+    }
+
+    /**
+     * Повторное создание удаленного пользователя (POST с тем же id) - удаления не истощают диапазон ключей
+     */
+    static HttpRequest restore(String baseUrl, long id) {
+        String body = "{\"id\":" + id + ",\"name\":\"User " + id + "\",\"email\":\"user" + id + "@example.com\"}";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/users"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    // DELETE есть только у write-* модулей
+    static boolean supportsDelete(String module) {
+        return module.startsWith("write-");
+    }
+}
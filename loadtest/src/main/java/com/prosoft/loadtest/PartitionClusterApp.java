@@ -0,0 +1,132 @@
+package com.prosoft.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Емкость партиционированного cache-aside в зависимости от числа узлов.
+ * Для n = 1..--nodes поднимает n процессов на loopback с маленьким бюджетом кэша (--node-budget),
+ * дважды читает все --keys пользователей по кругу через все узлы и суммирует /cache/stats узлов.
+ * Каждый ключ кэшируется только у владельца, поэтому число закэшированных ключей растет линейно с n.
+ *
+ * Запуск: ./gradlew :loadtest:partitionCluster --args="--nodes=4 --keys=20000 --node-budget=1MB"
+ */
+public class PartitionClusterApp {
+
+    private static final String MODULE = "cache-aside";
+    private static final Pattern ENTRIES = Pattern.compile("\"entries\":(\\d+)");
+    private static final Pattern BYTES = Pattern.compile("\"weightedBytes\":(\\d+)");
+    private static final Pattern HITS = Pattern.compile("\"hits\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        System.out.printf("🔧 Кластер cache-aside: до %d узлов, %d ключей, бюджет кэша узла %s%n",
+                options.nodes(), options.keys(), options.nodeBudget());
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        List<String> rows = new ArrayList<>();
+        for (int n = 1; n <= options.nodes(); n++) {
+            rows.add(runCluster(n, options, client));
+        }
+
+        System.out.println();
+        System.out.println("nodes,cached_keys,cached_share,cached_bytes,second_pass_hits,errors");
+        rows.forEach(System.out::println);
+    }
+
+    private static String runCluster(int n, LoadTestOptions options, HttpClient client) throws Exception {
+        List<String> members = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            members.add("node-" + i + "@localhost:" + AppProcess.freePort());
+        }
+
+        List<AppProcess> apps = new ArrayList<>();
+        try {
+            for (int i = 1; i <= n; i++) {
+                apps.add(AppProcess.start(MODULE, MODULE + "-" + n + "-node-" + i, options, List.of(
+                        "--app.cache.partition.enabled=true",
+                        "--app.cache.partition.node-id=node-" + i,
+                        "--app.cache.partition.nodes=" + String.join(",", members),
+                        "--app.cache.memory.budget=" + options.nodeBudget())));
+            }
+            for (AppProcess app : apps) {
+                send(client, app.baseUrl() + "/api/users/cache/clear", true);
+            }
+
+            // Первый проход заполняет кэши владельцев, второй показывает, сколько ключей в них удержалось
+            LongAdder errors = new LongAdder();
+            readAll(client, apps, options.keys(), errors);
+            long hitsBefore = sum(client, apps, HITS);
+            readAll(client, apps, options.keys(), errors);
+            long secondPassHits = sum(client, apps, HITS) - hitsBefore;
+
+            long entries = sum(client, apps, ENTRIES);
+            long bytes = sum(client, apps, BYTES);
+            System.out.printf("📦 %d узл.: в кэшах %d из %d ключей (%d байт)%n", n, entries, options.keys(), bytes);
+            return String.format(Locale.ROOT, "%d,%d,%.3f,%d,%d,%d",
+                    n, entries, (double) entries / options.keys(), bytes, secondPassHits, errors.sum());
+        } finally {
+            for (AppProcess app : apps) {
+                app.close();
+            }
+        }
+    }
+
+    // Ключ i читается через узел i % n - больше половины запросов приходят не к владельцу
+    private static void readAll(HttpClient client, List<AppProcess> apps, int keys, LongAdder errors) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(64);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int key = 1; key <= keys; key++) {
+                String url = apps.get(key % apps.size()).baseUrl() + "/api/users/" + key;
+                inFlight.acquire();
+                executor.submit(() -> {
+                    try {
+                        if (send(client, url, false).statusCode() != 200) {
+                            errors.increment();
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private static long sum(HttpClient client, List<AppProcess> apps, Pattern field) throws Exception {
+        long total = 0;
+        for (AppProcess app : apps) {
+            // Первое вхождение - поле самого кэша, а не вложенной статистики бюджета памяти
+            Matcher matcher = field.matcher(send(client, app.baseUrl() + "/api/users/cache/stats", false).body());
+            if (matcher.find()) {
+                total += Long.parseLong(matcher.group(1));
+            }
+        }
+        return total;
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String url, boolean post) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(10));
+        if (post) {
+            request.POST(HttpRequest.BodyPublishers.noBody());
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,51 @@
+package com.prosoft.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Генератор ключей с распределением Ципфа (алгоритм Gray et al., как в YCSB).
+ * Ключ 1 самый "горячий", дальше популярность убывает по степенному закону.
+ */
+public class ZipfianGenerator {
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+
+    public ZipfianGenerator(long items, double theta) {
+        if (items < 2) {
+            throw new IllegalArgumentException("Нужно минимум 2 ключа, получено: " + items);
+        }
+        this.items = items;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetan = zeta(items, theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    /**
+     * Следующий ключ в диапазоне [1, items]
+     */
+    public long next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetan;
+
+        if (uz < 1.0) {
+            return 1;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 2;
+        }
+        return 1 + (long) (items * Math.pow(eta * u - eta + 1, alpha));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
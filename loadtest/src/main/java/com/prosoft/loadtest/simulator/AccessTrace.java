@@ -0,0 +1,177 @@
+package com.prosoft.loadtest.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Трасса, записанная AccessTraceRecorder модуля, в виде последовательности вызовов политики кэша.
+ *
+ * Формат файла: [int MAGIC][short VERSION][long время начала], затем записи по 8 байт -
+ * старшие 8 бит операция (0 - чтение, 1 - запись, 2 - удаление), младшие 56 - id.
+ * Запись в трассе превращается в вызов политики в зависимости от паттерна модуля (WriteMode).
+ */
+final class AccessTrace {
+
+    static final int MAGIC = 0x55545243;
+    static final short VERSION = 1;
+
+    private static final int OP_READ = 0;
+    private static final int OP_WRITE = 1;
+    private static final long KEY_MASK = (1L << 56) - 1;
+
+    // Виды шагов воспроизведения
+    static final byte COUNTED_ACCESS = 0;
+    static final byte UNCOUNTED_ACCESS = 1;
+    static final byte INVALIDATE = 2;
+
+    /**
+     * Как запись в БД влияет на кэш
+     */
+    enum WriteMode {
+        // cache-aside, read-through, write-around: запись удаляет ключ из кэша
+        INVALIDATE,
+        // write-through, write-back: запись кладет значение в кэш (в hit ratio не входит)
+        UPDATE,
+        // записи не моделируются
+        IGNORE
+    }
+
+    private final long[] keys;
+    private final byte[] kinds;
+    private final int countedAccesses;
+    private final int accesses;
+    private final int distinctKeys;
+    private final long events;
+
+    private AccessTrace(long[] keys, byte[] kinds, long events) {
+        this.keys = keys;
+        this.kinds = kinds;
+        this.events = events;
+        int counted = 0;
+        int all = 0;
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != INVALIDATE) {
+                all++;
+                if (kinds[i] == COUNTED_ACCESS) {
+                    counted++;
+                    distinct.add(keys[i]);
+                }
+            }
+        }
+        this.countedAccesses = counted;
+        this.accesses = all;
+        this.distinctKeys = distinct.size();
+    }
+
+    /**
+     * Чтение трассы. Обрезанная последняя запись (файл дописывается работающим приложением) игнорируется.
+     */
+    static AccessTrace read(Path file, WriteMode writeMode) throws IOException {
+        long size = Files.size(file);
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, (size - 14) / 8));
+        long[] keys = new long[capacity];
+        byte[] kinds = new byte[capacity];
+        int steps = 0;
+        long events = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " - не трасса обращений (неверная сигнатура)");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException(file + " - неподдерживаемая версия трассы " + version);
+            }
+            in.readLong(); // время начала записи
+
+            while (steps < capacity) {
+                long event;
+                try {
+                    event = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                events++;
+                int op = (int) (event >>> 56);
+                long key = event & KEY_MASK;
+                byte kind;
+                if (op == OP_READ) {
+                    kind = COUNTED_ACCESS;
+                } else if (writeMode == WriteMode.IGNORE) {
+                    continue;
+                } else if (op == OP_WRITE && writeMode == WriteMode.UPDATE) {
+                    kind = UNCOUNTED_ACCESS;
+                } else {
+                    kind = INVALIDATE;
+                }
+                keys[steps] = key;
+                kinds[steps] = kind;
+                steps++;
+            }
+        }
+        return new AccessTrace(Arrays.copyOf(keys, steps), Arrays.copyOf(kinds, steps), events);
+    }
+
+    /**
+     * Проигрывает трассу через политику и возвращает hit ratio по чтениям
+     */
+    double replay(CachePolicy policy) {
+        long hits = 0;
+        for (int i = 0; i < keys.length; i++) {
+            switch (kinds[i]) {
+                case COUNTED_ACCESS -> {
+                    if (policy.access(keys[i])) {
+                        hits++;
+                    }
+                }
+                case UNCOUNTED_ACCESS -> policy.access(keys[i]);
+                default -> policy.invalidate(keys[i]);
+            }
+        }
+        return countedAccesses == 0 ? 0.0 : (double) hits / countedAccesses;
+    }
+
+    /**
+     * Для каждого обращения - порядковый номер следующего обращения к тому же ключу (для Белади).
+     * Инвалидация обрывает цепочку: значение все равно придется загрузить заново.
+     * Ключи без будущих обращений получают уникальные значения больше любого номера.
+     */
+    long[] nextUse() {
+        long[] next = new long[accesses];
+        Map<Long, Long> following = new HashMap<>();
+        int access = accesses;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (kinds[i] == INVALIDATE) {
+                following.remove(keys[i]);
+                continue;
+            }
+            access--;
+            Long upcoming = following.get(keys[i]);
+            next[access] = upcoming != null ? upcoming : Long.MAX_VALUE - access;
+            following.put(keys[i], (long) access);
+        }
+        return next;
+    }
+
+    long events() {
+        return events;
+    }
+
+    int countedAccesses() {
+        return countedAccesses;
+    }
+
+    int distinctKeys() {
+        return distinctKeys;
+    }
+}
@@ -0,0 +1,93 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * ARC (Megiddo, Modha): два LRU-списка - T1 (видели один раз) и T2 (видели повторно) - и их "призраки"
+ * B1/B2 с ключами недавно вытесненных записей. Попадание в призрак сдвигает целевой размер T1 (p)
+ * в сторону того списка, который ошибся, поэтому политика сама подстраивается между LRU и LFU.
+ */
+final class ArcPolicy implements CachePolicy {
+
+    private final int capacity;
+    private final LinkedHashSet<Long> t1 = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> t2 = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> b2 = new LinkedHashSet<>();
+    private int p;
+
+    ArcPolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean access(long key) {
+        if (t1.remove(key) || t2.remove(key)) {
+            t2.add(key);
+            return true;
+        }
+        if (b1.contains(key)) {
+            p = Math.min(capacity, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+            replace(false);
+            b1.remove(key);
+            t2.add(key);
+            return false;
+        }
+        if (b2.contains(key)) {
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+            replace(true);
+            b2.remove(key);
+            t2.add(key);
+            return false;
+        }
+
+        int l1 = t1.size() + b1.size();
+        int total = l1 + t2.size() + b2.size();
+        if (l1 >= capacity) {
+            if (t1.size() < capacity) {
+                removeFirst(b1);
+                replace(false);
+            } else {
+                removeFirst(t1);
+            }
+        } else if (total >= capacity) {
+            if (total >= 2 * capacity) {
+                removeFirst(b2);
+            }
+            replace(false);
+        }
+        t1.add(key);
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        if (!t1.remove(key)) {
+            t2.remove(key);
+        }
+    }
+
+    // Освобождает место в кэше: LRU из T1 уходит в B1 или LRU из T2 - в B2
+    private void replace(boolean hitInB2) {
+        if (t1.size() + t2.size() < capacity) {
+            return; // после инвалидаций место уже есть
+        }
+        boolean fromT1 = !t1.isEmpty() && (t1.size() > p || (hitInB2 && t1.size() == p) || t2.isEmpty());
+        if (fromT1) {
+            b1.add(removeFirst(t1));
+        } else {
+            b2.add(removeFirst(t2));
+        }
+    }
+
+    private static Long removeFirst(LinkedHashSet<Long> list) {
+        Iterator<Long> iterator = list.iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Long first = iterator.next();
+        iterator.remove();
+        return first;
+    }
+}
@@ -0,0 +1,57 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Оптимальная политика Белади (OPT): вытесняется запись, которая понадобится позже всех.
+ * Требует знания будущего, поэтому возможна только офлайн - это верхняя граница hit ratio для данного размера.
+ * Ключ, который понадобится позже всех резидентов, в кэш не помещается вовсе.
+ */
+final class BeladyPolicy implements CachePolicy {
+
+    private final int capacity;
+    // Для каждого обращения трассы - номер следующего обращения к тому же ключу
+    private final long[] nextUse;
+    private int cursor;
+
+    private final Map<Long, Long> resident = new HashMap<>();
+    private final TreeMap<Long, Long> byNextUse = new TreeMap<>();
+
+    BeladyPolicy(int capacity, long[] nextUse) {
+        this.capacity = capacity;
+        this.nextUse = nextUse;
+    }
+
+    @Override
+    public boolean access(long key) {
+        long next = nextUse[cursor++];
+        Long current = resident.get(key);
+        if (current != null) {
+            byNextUse.remove(current);
+            resident.put(key, next);
+            byNextUse.put(next, key);
+            return true;
+        }
+        if (resident.size() >= capacity) {
+            Map.Entry<Long, Long> farthest = byNextUse.lastEntry();
+            if (farthest.getKey() < next) {
+                return false;
+            }
+            byNextUse.pollLastEntry();
+            resident.remove(farthest.getValue());
+        }
+        resident.put(key, next);
+        byNextUse.put(next, key);
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        Long next = resident.remove(key);
+        if (next != null) {
+            byNextUse.remove(next);
+        }
+    }
+}
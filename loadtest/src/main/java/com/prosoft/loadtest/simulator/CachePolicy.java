@@ -0,0 +1,19 @@
+package com.prosoft.loadtest.simulator;
+
+/**
+ * Политика вытеснения в симуляторе: емкость в записях, ключи - id пользователей
+ */
+interface CachePolicy {
+
+    /**
+     * Обращение к ключу. При промахе политика сама решает, помещать ли ключ в кэш.
+     *
+     * @return true - попадание
+     */
+    boolean access(long key);
+
+    /**
+     * Ключ удален из кэша (инвалидация после записи)
+     */
+    void invalidate(long key);
+}
@@ -0,0 +1,73 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * LFU за O(1): корзины ключей по частоте, вытесняется самый старый ключ из корзины с минимальной частотой.
+ * Частоты не стареют - классическая слабость LFU при смене "горячего" набора.
+ */
+final class LfuPolicy implements CachePolicy {
+
+    private final int capacity;
+    private final Map<Long, Integer> frequencies = new HashMap<>();
+    private final Map<Integer, LinkedHashSet<Long>> buckets = new HashMap<>();
+    private int minFrequency;
+
+    LfuPolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean access(long key) {
+        Integer frequency = frequencies.get(key);
+        if (frequency != null) {
+            unlink(key, frequency);
+            link(key, frequency + 1);
+            return true;
+        }
+        if (frequencies.size() >= capacity) {
+            evict();
+        }
+        link(key, 1);
+        minFrequency = 1;
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        Integer frequency = frequencies.remove(key);
+        if (frequency != null) {
+            unlink(key, frequency);
+        }
+    }
+
+    private void evict() {
+        if (!buckets.containsKey(minFrequency)) {
+            // Корзину опустошила инвалидация - ищем новый минимум
+            minFrequency = Collections.min(buckets.keySet());
+        }
+        LinkedHashSet<Long> bucket = buckets.get(minFrequency);
+        Long victim = bucket.iterator().next();
+        unlink(victim, minFrequency);
+        frequencies.remove(victim);
+    }
+
+    private void link(long key, int frequency) {
+        frequencies.put(key, frequency);
+        buckets.computeIfAbsent(frequency, f -> new LinkedHashSet<>()).add(key);
+    }
+
+    private void unlink(long key, int frequency) {
+        LinkedHashSet<Long> bucket = buckets.get(frequency);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(frequency);
+            if (minFrequency == frequency) {
+                minFrequency = frequency + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU: вытесняется запись, к которой дольше всего не обращались
+ */
+final class LruPolicy implements CachePolicy {
+
+    private final Map<Long, Boolean> entries;
+
+    LruPolicy(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public boolean access(long key) {
+        if (entries.get(key) != null) {
+            return true;
+        }
+        entries.put(key, Boolean.TRUE);
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        entries.remove(key);
+    }
+}
@@ -0,0 +1,143 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * S3-FIFO (Yang et al., SOSP'23): три FIFO-очереди без перестановок на попадании.
+ * Новые ключи попадают в маленькую очередь S (10%) - большинство "одноразовых" ключей уходит из нее,
+ * не потревожив основную очередь M. Ключ, к которому обращались в S, переходит в M; в M ключ с ненулевым
+ * счетчиком получает второй шанс. Призрачная очередь G помнит недавно вытесненные из S ключи:
+ * повторный промах по ним сразу помещает ключ в M.
+ */
+final class S3FifoPolicy implements CachePolicy {
+
+    private static final int MAX_FREQUENCY = 3;
+
+    private final int capacity;
+    private final int smallCapacity;
+    private final int ghostCapacity;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final ArrayDeque<Entry> small = new ArrayDeque<>();
+    private final ArrayDeque<Entry> main = new ArrayDeque<>();
+    private final LinkedHashSet<Long> ghost = new LinkedHashSet<>();
+    private int smallSize;
+    private int mainSize;
+
+    S3FifoPolicy(int capacity) {
+        this.capacity = capacity;
+        this.smallCapacity = Math.max(1, capacity / 10);
+        this.ghostCapacity = Math.max(1, capacity - smallCapacity);
+    }
+
+    @Override
+    public boolean access(long key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.frequency = Math.min(entry.frequency + 1, MAX_FREQUENCY);
+            return true;
+        }
+
+        while (smallSize + mainSize >= capacity) {
+            evict();
+        }
+        entry = new Entry(key);
+        entries.put(key, entry);
+        if (ghost.remove(key)) {
+            main.add(entry);
+            mainSize++;
+        } else {
+            entry.small = true;
+            small.add(entry);
+            smallSize++;
+        }
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            // Из очереди запись уберется лениво - при извлечении
+            entry.removed = true;
+            if (entry.small) {
+                smallSize--;
+            } else {
+                mainSize--;
+            }
+        }
+    }
+
+    private void evict() {
+        if (smallSize >= smallCapacity || mainSize == 0) {
+            evictSmall();
+        } else {
+            evictMain();
+        }
+    }
+
+    private void evictSmall() {
+        while (smallSize > 0) {
+            Entry entry = poll(small);
+            smallSize--;
+            if (entry.frequency > 1) {
+                // Ключ успел понадобиться повторно - переводим в основную очередь
+                entry.small = false;
+                entry.frequency = 0;
+                main.add(entry);
+                mainSize++;
+                if (mainSize > capacity - smallCapacity) {
+                    evictMain();
+                    return;
+                }
+            } else {
+                entries.remove(entry.key);
+                ghost.add(entry.key);
+                if (ghost.size() > ghostCapacity) {
+                    Iterator<Long> oldest = ghost.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                return;
+            }
+        }
+        evictMain();
+    }
+
+    private void evictMain() {
+        while (mainSize > 0) {
+            Entry entry = poll(main);
+            if (entry.frequency > 0) {
+                entry.frequency--;
+                main.add(entry);
+            } else {
+                entries.remove(entry.key);
+                mainSize--;
+                return;
+            }
+        }
+    }
+
+    private static Entry poll(ArrayDeque<Entry> queue) {
+        Entry entry;
+        do {
+            entry = queue.poll();
+        } while (entry.removed);
+        return entry;
+    }
+
+    private static final class Entry {
+        private final long key;
+        private int frequency;
+        private boolean small;
+        private boolean removed;
+
+        Entry(long key) {
+            this.key = key;
+        }
+    }
+}
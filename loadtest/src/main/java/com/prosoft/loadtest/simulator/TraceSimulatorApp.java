@@ -0,0 +1,92 @@
+package com.prosoft.loadtest.simulator;
+
+import com.prosoft.loadtest.LoadTestOptions;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Офлайн-симулятор политик вытеснения: проигрывает трассу обращений (app.cache.trace в модулях)
+ * через LRU, LFU, ARC, W-TinyLFU, S3-FIFO и оптимальную политику Белади на нескольких размерах кэша
+ * и печатает кривые hit ratio. По ним выбирается политика и размер кэша до изменений в продакшене.
+ *
+ * Запуск: ./gradlew :loadtest:simulate --args="--trace=cache-aside/traces/cache-aside.trace --writes=invalidate"
+ */
+public class TraceSimulatorApp {
+
+    private static final double[] DEFAULT_SIZE_SHARES = {0.005, 0.01, 0.02, 0.05, 0.1, 0.2, 0.3, 0.5, 0.75, 1.0};
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        Path traceFile = options.trace();
+        AccessTrace.WriteMode writeMode = AccessTrace.WriteMode.valueOf(options.writeMode().toUpperCase(Locale.ROOT));
+
+        AccessTrace trace = AccessTrace.read(traceFile, writeMode);
+        System.out.printf("📂 Трасса %s: %d событий, %d чтений, %d различных ключей, записи: %s%n",
+                traceFile, trace.events(), trace.countedAccesses(), trace.distinctKeys(), writeMode);
+        if (trace.countedAccesses() == 0) {
+            throw new IllegalStateException("В трассе нет чтений - моделировать нечего");
+        }
+
+        int[] sizes = options.sizes().isEmpty() ? defaultSizes(trace.distinctKeys()) : options.sizes().stream()
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        long[] nextUse = trace.nextUse();
+
+        Map<String, IntFunction<CachePolicy>> policies = new LinkedHashMap<>();
+        policies.put("LRU", LruPolicy::new);
+        policies.put("LFU", LfuPolicy::new);
+        policies.put("ARC", ArcPolicy::new);
+        policies.put("W-TinyLFU", WTinyLfuPolicy::new);
+        policies.put("S3-FIFO", S3FifoPolicy::new);
+        policies.put("Belady", size -> new BeladyPolicy(size, nextUse));
+        List<String> names = new ArrayList<>(policies.keySet());
+
+        // Каждая пара (политика, размер) независима - считаем параллельно
+        double[][] hitRatios = new double[sizes.length][names.size()];
+        IntStream.range(0, sizes.length * names.size()).parallel().forEach(task -> {
+            int size = task / names.size();
+            int policy = task % names.size();
+            hitRatios[size][policy] = trace.replay(policies.get(names.get(policy)).apply(sizes[size]));
+        });
+
+        List<String> rows = new ArrayList<>();
+        rows.add("size,size_share," + String.join(",", names));
+        for (int i = 0; i < sizes.length; i++) {
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%d,%.4f", sizes[i],
+                    (double) sizes[i] / trace.distinctKeys()));
+            for (double hitRatio : hitRatios[i]) {
+                row.append(String.format(Locale.ROOT, ",%.4f", hitRatio));
+            }
+            rows.add(row.toString());
+        }
+
+        Path reportDir = Files.createDirectories(options.reportDir());
+        String name = traceFile.getFileName().toString().replaceFirst("\\.trace$", "");
+        Path report = reportDir.resolve(name + "-hit-ratio.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            rows.forEach(out::println);
+        }
+
+        System.out.println();
+        rows.forEach(System.out::println);
+        System.out.printf("%n📄 Кривые hit ratio сохранены в %s%n", report);
+    }
+
+    // Доли от числа различных ключей: от 0.5% до всего рабочего набора
+    private static int[] defaultSizes(int distinctKeys) {
+        return Arrays.stream(DEFAULT_SIZE_SHARES)
+                .mapToInt(share -> Math.max(1, (int) Math.round(share * distinctKeys)))
+                .distinct()
+                .toArray();
+    }
+}
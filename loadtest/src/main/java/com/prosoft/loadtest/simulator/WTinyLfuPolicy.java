@@ -0,0 +1,148 @@
+package com.prosoft.loadtest.simulator;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * W-TinyLFU (как в Caffeine): маленькое LRU-окно (1%) принимает все новые ключи, основная часть -
+ * сегментированный LRU (probation + protected 80%). Вытесненный из окна кандидат попадает в основную часть,
+ * только если по оценке частоты (Count-Min Sketch со старением) он популярнее жертвы из probation.
+ */
+final class WTinyLfuPolicy implements CachePolicy {
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    private final LinkedHashSet<Long> window = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> protectedSegment = new LinkedHashSet<>();
+    private final FrequencySketch sketch;
+
+    WTinyLfuPolicy(int capacity) {
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * 80 / 100;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public boolean access(long key) {
+        sketch.increment(key);
+        if (window.remove(key)) {
+            window.add(key);
+            return true;
+        }
+        if (protectedSegment.remove(key)) {
+            protectedSegment.add(key);
+            return true;
+        }
+        if (probation.remove(key)) {
+            // Повторное обращение - повышение в protected, лишнее из protected возвращается в probation
+            protectedSegment.add(key);
+            if (protectedSegment.size() > protectedCapacity) {
+                probation.add(removeFirst(protectedSegment));
+            }
+            return true;
+        }
+
+        window.add(key);
+        if (window.size() > windowCapacity) {
+            admit(removeFirst(window));
+        }
+        return false;
+    }
+
+    @Override
+    public void invalidate(long key) {
+        if (!window.remove(key) && !probation.remove(key)) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    private void admit(Long candidate) {
+        if (mainCapacity <= 0) {
+            return;
+        }
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.add(candidate);
+            return;
+        }
+        LinkedHashSet<Long> victims = probation.isEmpty() ? protectedSegment : probation;
+        Long victim = victims.iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            probation.add(candidate);
+        }
+    }
+
+    private static Long removeFirst(LinkedHashSet<Long> list) {
+        Iterator<Long> iterator = list.iterator();
+        Long first = iterator.next();
+        iterator.remove();
+        return first;
+    }
+
+    /**
+     * Count-Min Sketch с 4-битными по смыслу счетчиками (насыщение на 15) и старением:
+     * после 10 * capacity инкрементов все счетчики делятся пополам
+     */
+    static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX = 15;
+
+        private final int[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            this.counters = new int[DEPTH * width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(1, capacity);
+        }
+
+        void increment(long key) {
+            long hash = spread(key);
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (counters[index] < MAX) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(long key) {
+            long hash = spread(key);
+            int frequency = MAX;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int index(long hash, int row) {
+            return row * (mask + 1) + (int) ((hash >>> (row * 16)) & mask);
+        }
+
+        // Финализатор MurmurHash3 - перемешивает последовательные id
+        private static long spread(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            key *= 0xc4ceb9fe1a85ec53L;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
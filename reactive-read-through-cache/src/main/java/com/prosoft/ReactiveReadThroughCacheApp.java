@@ -0,0 +1,13 @@
+package com.prosoft;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class ReactiveReadThroughCacheApp {
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveReadThroughCacheApp.class, args);
+    }
+}
@@ -0,0 +1,125 @@
+package com.prosoft.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-through кэш с неблокирующими загрузчиками: промах возвращает Mono загрузки,
+ * поток event loop не ждет источник.
+ *
+ * - Одна загрузка на ключ: конкурентные промахи одного id подписываются на общий Mono (Mono.cache()),
+ *   в источник уходит один запрос. После завершения загрузка убирается из таблицы in-flight,
+ *   ошибка не кэшируется - следующий промах загрузит заново
+ * - Инвалидация во время загрузки: у каждой полосы ключей есть счетчик поколений. Инвалидация
+ *   увеличивает его, и результат загрузки, начатой раньше, отдается ожидающим, но в кэше не остается.
+ *   Это неблокирующая замена StripedKeyLocks из servlet-версии read-through-cache
+ */
+public class AsyncLoadingCache<K, V> {
+
+    private final WeightedCache<K, V> cache;
+    private final Function<K, Mono<V>> loader;
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations;
+    private final int mask;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+
+    /**
+     * @param stripes число полос счетчиков поколений (округляется вверх до степени двойки), 0 - по 4 на ядро
+     */
+    public AsyncLoadingCache(WeightedCache<K, V> cache, Function<K, Mono<V>> loader, int stripes) {
+        this.cache = cache;
+        this.loader = loader;
+        int requested = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * 4;
+        int size = Integer.highestOneBit(Math.max(1, requested - 1)) << 1;
+        this.generations = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    public Mono<V> get(K key) {
+        V cached = cache.get(key);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        Mono<V> pending = inFlight.get(key);
+        if (pending != null) {
+            coalesced.increment();
+            return pending;
+        }
+        return inFlight.computeIfAbsent(key, this::load);
+    }
+
+    /**
+     * Удаляет ключ и отменяет право еще не завершенных загрузок положить его в кэш
+     */
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        inFlight.remove(key);
+        cache.remove(key);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < generations.length(); i++) {
+            generations.incrementAndGet(i);
+        }
+        inFlight.clear();
+        cache.clear();
+    }
+
+    public WeightedCache<K, V> cache() {
+        return cache;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("coalescedMisses", coalesced.sum());
+        stats.put("staleLoads", staleLoads.sum());
+        return stats;
+    }
+
+    private Mono<V> load(K key) {
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        loads.increment();
+
+        Object[] self = new Object[1];
+        Mono<V> shared = Mono.defer(() -> loader.apply(key))
+                .doOnNext(value -> store(key, value, stripe, generation))
+                // Убираем из in-flight только свою загрузку - после инвалидации там может быть уже новая
+                .doFinally(signal -> inFlight.remove(key, self[0]))
+                .cache();
+        self[0] = shared;
+        return shared;
+    }
+
+    private void store(K key, V value, int stripe, long generation) {
+        if (generations.get(stripe) != generation) {
+            staleLoads.increment();
+            return;
+        }
+        cache.put(key, value);
+        // Инвалидация могла пройти между проверкой и вставкой - тогда убираем только что вставленное
+        if (generations.get(stripe) != generation) {
+            staleLoads.increment();
+            cache.remove(key);
+        }
+    }
+
+    private int stripe(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+}
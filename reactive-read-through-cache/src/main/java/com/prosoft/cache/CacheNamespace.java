@@ -0,0 +1,16 @@
+package com.prosoft.cache;
+
+import java.time.Duration;
+
+/**
+ * Настройки пространства имен (именованного кэша) в общем бюджете памяти
+ *
+ * @param quotaBytes гарантированная кэшу доля бюджета, 0 - без квоты (только свободный остаток бюджета)
+ * @param borrow     можно ли занимать свободное место бюджета сверх квоты; занятое возвращается первым,
+ *                   когда бюджет исчерпан
+ * @param ttl        срок жизни записи с загрузки или последней замены, 0 - без ограничения
+ */
+public record CacheNamespace(long quotaBytes, boolean borrow, Duration ttl) {
+
+    public static final CacheNamespace SHARED = new CacheNamespace(0, true, Duration.ZERO);
+}
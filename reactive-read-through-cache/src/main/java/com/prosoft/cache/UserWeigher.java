@@ -0,0 +1,52 @@
+package com.prosoft.cache;
+
+import com.prosoft.model.User;
+
+/**
+ * Оценка памяти, удерживаемой парой Long -> User (64-битная JVM, compressed oops, compact strings):
+ * ключ Long, объект User, его Long id (если это не тот же объект, что и ключ) и строки name/email
+ * вместе с их массивами байт. Это оценка по раскладке объектов, а не замер - ее достаточно,
+ * чтобы планировать емкость кэша в байтах, а не в штуках.
+ */
+public class UserWeigher implements Weigher<Long, User> {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    // Long: заголовок + long
+    private static final long LONG_BYTES = align(OBJECT_HEADER + 8);
+    // User: заголовок + ссылки id, name, email
+    private static final long USER_BYTES = align(OBJECT_HEADER + 3 * REFERENCE);
+    // String: заголовок + ссылка на byte[] + hash + coder + hashIsZero
+    private static final long STRING_BYTES = align(OBJECT_HEADER + REFERENCE + 4 + 1 + 1);
+
+    @Override
+    public long weigh(Long key, User user) {
+        long bytes = LONG_BYTES + USER_BYTES;
+        // Сравнение ссылок намеренно: отдельный объект Long для id занимает свою память
+        if (user.getId() != null && user.getId() != key) {
+            bytes += LONG_BYTES;
+        }
+        return bytes + stringBytes(user.getName()) + stringBytes(user.getEmail());
+    }
+
+    static long stringBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // Латиница хранится по байту на символ (LATIN1), кириллица и прочее - по два (UTF16)
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING_BYTES + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,10 @@
+package com.prosoft.cache;
+
+/**
+ * Оценка памяти (в байтах), которую удерживает пара ключ-значение в кэше
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    long weigh(K key, V value);
+}
@@ -0,0 +1,45 @@
+package com.prosoft.config;
+
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheNamespace;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.MemoryBudget;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public HotKeyTracker hotKeyTracker(CacheProperties properties) {
+        CacheProperties.HotKeys hotKeys = properties.getHotKeys();
+        return new HotKeyTracker(hotKeys.getSketchWidth(), hotKeys.getTopK(), hotKeys.getSampleRate(),
+                hotKeys.getDecayInterval().toMillis());
+    }
+
+    @Bean
+    public MemoryBudget memoryBudget(CacheProperties properties) {
+        return new MemoryBudget(properties.getMemory().getBudget().toBytes());
+    }
+
+    @Bean
+    public CacheRegistry cacheRegistry(MemoryBudget memoryBudget, CacheProperties properties) {
+        Map<String, CacheNamespace> namespaces = new LinkedHashMap<>();
+        properties.getMemory().getNamespaces().forEach((name, namespace) -> namespaces.put(name,
+                new CacheNamespace(namespace.getQuota().toBytes(), namespace.isBorrow(), namespace.getTtl())));
+        return new CacheRegistry(memoryBudget, namespaces);
+    }
+
+    @Bean
+    public AccessTraceRecorder accessTraceRecorder(CacheProperties properties) {
+        CacheProperties.Trace trace = properties.getTrace();
+        return trace.isEnabled()
+                ? AccessTraceRecorder.toFile(Path.of(trace.getPath()), trace.getQueueCapacity())
+                : AccessTraceRecorder.disabled();
+    }
+}
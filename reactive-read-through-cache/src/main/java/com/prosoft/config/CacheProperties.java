@@ -0,0 +1,85 @@
+package com.prosoft.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Настройки кэша (секция app.cache в application.yml)
+ */
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+
+    private HotKeys hotKeys = new HotKeys();
+    private Loads loads = new Loads();
+    private Cdc cdc = new Cdc();
+    private Memory memory = new Memory();
+    private Bulk bulk = new Bulk();
+    private Trace trace = new Trace();
+
+    // Поиск "горячих" ключей
+    @Data
+    public static class HotKeys {
+        private int sketchWidth = 1024;
+        private int topK = 32;
+        // Учитывать каждое N-е обращение - при большом RPS снижает накладные расходы
+        private int sampleRate = 1;
+        // Период, за который оценки частоты уменьшаются вдвое
+        private Duration decayInterval = Duration.ofMinutes(1);
+    }
+
+    // Неблокирующие загрузки промахов
+    @Data
+    public static class Loads {
+        // Число полос счетчиков поколений (защита от записи в кэш устаревшей загрузки), 0 - по 4 на ядро
+        private int generationStripes = 0;
+    }
+
+    // Подписка кэша на журнал изменений БД
+    @Data
+    public static class Cdc {
+        private Duration pollInterval = Duration.ofMillis(20);
+        private int batchSize = 512;
+    }
+
+    // Емкость кэшей в байтах
+    @Data
+    public static class Memory {
+        // Общий бюджет для всех кэшей JVM (оценка удерживаемой памяти), 0 - без ограничения
+        private DataSize budget = DataSize.ofMegabytes(64);
+        // Пространства имен (именованные кэши) и их доли бюджета; кэш без настроек делит свободный остаток
+        private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Namespace {
+        // Гарантированная доля бюджета, 0 - без квоты
+        private DataSize quota = DataSize.ofBytes(0);
+        // Занимать свободное место бюджета сверх квоты (возвращается первым, когда бюджет исчерпан)
+        private boolean borrow = true;
+        // Срок жизни записи с загрузки, 0 - без ограничения
+        private Duration ttl = Duration.ZERO;
+    }
+
+    // Пакетные эндпоинты
+    @Data
+    public static class Bulk {
+        // Сколько загрузок одного пакетного запроса выполняется одновременно
+        private int concurrency = 64;
+    }
+
+    // Трасса обращений к кэшу для офлайн-моделирования политик вытеснения (loadtest: TraceSimulatorApp)
+    @Data
+    public static class Trace {
+        private boolean enabled = false;
+        // Файл перезаписывается при каждом старте
+        private String path = "traces/access.trace";
+        // Событий в очереди к записи; при переполнении события отбрасываются, а не тормозят запросы
+        private int queueCapacity = 65536;
+    }
+}
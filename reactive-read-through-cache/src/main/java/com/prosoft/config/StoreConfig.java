@@ -0,0 +1,16 @@
+package com.prosoft.config;
+
+import com.prosoft.store.ChangeLog;
+import com.prosoft.store.UserStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StoreConfig {
+
+    @Bean
+    public UserStore userStore(@Value("${app.database.change-log-capacity:65536}") int changeLogCapacity) {
+        return new UserStore(new ChangeLog(changeLogCapacity));
+    }
+}
@@ -0,0 +1,98 @@
+package com.prosoft.controller;
+
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.model.User;
+import com.prosoft.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/users")
+@Slf4j
+public class UserController {
+
+    private final UserService userService;
+
+    public UserController(UserService userService) {
+        this.userService = userService;
+    }
+
+    @GetMapping("/{id}")
+    public Mono<User> getUser(@PathVariable Long id) {
+        log.info("🌐 Получен HTTP GET запрос для пользователя ID: {}", id);
+        return userService.getUserById(id);
+    }
+
+    /**
+     * Пакетное чтение по списку: GET /api/users?ids=1,2,3
+     */
+    @GetMapping(params = "ids")
+    public Flux<User> getUsers(@RequestParam List<Long> ids) {
+        log.info("🌐 Получен HTTP GET запрос для {} пользователей", ids.size());
+        return userService.getUsersByIds(Flux.fromIterable(ids));
+    }
+
+    /**
+     * Потоковое пакетное чтение: id приходят в теле (NDJSON или JSON-массив), пользователи уходят
+     * NDJSON по мере загрузки. Тело читается только по мере спроса со стороны ответа.
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> getUsersStream(@RequestBody Flux<Long> ids) {
+        log.info("🌐 Получен потоковый HTTP POST запрос пакетного чтения");
+        return userService.getUsersByIds(ids);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<User> updateUser(@PathVariable Long id,
+                                 @RequestParam String name,
+                                 @RequestParam String email) {
+        log.info("🌐 Получен HTTP PUT запрос для обновления пользователя ID: {}", id);
+        return userService.updateUser(id, name, email)
+                .doOnNext(user -> log.info("🏁 Успешно обновлен пользователь: {} ({})", user.getName(), user.getId()));
+    }
+
+    @PostMapping("/cache/clear")
+    public String clearCache() {
+        log.info("🌐 Получен запрос на очистку кэша");
+        userService.clearCache();
+        String response = "Кэш очищен!";
+        log.info("🏁 {}", response);
+        return response;
+    }
+
+    @GetMapping("/cache/show")
+    public Map<Long, User> showCache() {
+        log.info("🌐 Получен запрос на просмотр содержимого кэша");
+        Map<Long, User> cacheContent = userService.getCache();
+        log.info("🏁 Возвращено {} записей из кэша", cacheContent.size());
+        return cacheContent;
+    }
+
+    @GetMapping("/cache/hotkeys")
+    public List<HotKeyTracker.HotKey> showHotKeys(@RequestParam(defaultValue = "10") int limit) {
+        log.info("🌐 Получен запрос на просмотр горячих ключей");
+        List<HotKeyTracker.HotKey> hotKeys = userService.getHotKeys(limit);
+        log.info("🏁 Возвращено {} горячих ключей", hotKeys.size());
+        return hotKeys;
+    }
+
+    @GetMapping("/cache/cdc")
+    public Map<String, Object> showChangeFeed() {
+        log.info("🌐 Получен запрос на просмотр подписки кэша на журнал изменений");
+        return userService.getChangeFeedStats();
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> showCacheStats() {
+        log.info("🌐 Получен запрос на просмотр статистики кэша");
+        return userService.getCacheStats();
+    }
+}
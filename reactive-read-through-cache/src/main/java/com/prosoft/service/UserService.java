@@ -0,0 +1,198 @@
+package com.prosoft.service;
+
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.AsyncLoadingCache;
+import com.prosoft.cache.CacheEvents;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.UserWeigher;
+import com.prosoft.cache.WeightedCache;
+import com.prosoft.config.CacheProperties;
+import com.prosoft.model.User;
+import com.prosoft.store.ChangeEvent;
+import com.prosoft.store.ChangeFeedSubscriber;
+import com.prosoft.store.UserStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Slf4j
+public class UserService {
+
+    // Имитация базы данных с журналом изменений (CDC)
+    private final UserStore database;
+
+    // Reactive Read-Through Cache - кэш сам загружает данные неблокирующим загрузчиком
+    private final AsyncLoadingCache<Long, User> cache;
+
+    // Частота обращений по ключам - для поиска "горячих" пользователей
+    private final HotKeyTracker hotKeyTracker;
+
+    // Общий для кэшей JVM бюджет памяти (показывается в /cache/stats)
+    private final CacheRegistry cacheRegistry;
+
+    // Трасса обращений для офлайн-моделирования политик вытеснения (app.cache.trace)
+    private final AccessTraceRecorder traceRecorder;
+
+    // Подписка кэша на журнал изменений БД
+    private final CacheProperties cacheProperties;
+    private ChangeFeedSubscriber changeFeed;
+
+    // Дополнительные тестовые пользователи (нужны нагрузочному стенду loadtest)
+    @Value("${app.database.seed-users:0}")
+    private int seedUsers;
+
+    // Имитация медленного хранилища: задержка каждого чтения из БД (таймер, поток не блокируется)
+    @Value("${app.database.read-latency:0ms}")
+    private Duration readLatency;
+
+    public UserService(HotKeyTracker hotKeyTracker, UserStore database,
+                       CacheProperties cacheProperties, CacheRegistry cacheRegistry,
+                       AccessTraceRecorder traceRecorder) {
+        this.hotKeyTracker = hotKeyTracker;
+        this.database = database;
+        this.cacheProperties = cacheProperties;
+        this.cacheRegistry = cacheRegistry;
+        this.traceRecorder = traceRecorder;
+        // Вытеснение по весу не трогает "горячие" ключи
+        WeightedCache<Long, User> users = cacheRegistry.create("users", new UserWeigher(),
+                (id, user) -> hotKeyTracker.isHot(id));
+        this.cache = new AsyncLoadingCache<>(users, this::loadUserFromDatabase,
+                cacheProperties.getLoads().getGenerationStripes());
+    }
+
+    @PostConstruct
+    public void init() {
+        // Добавим тестовые данные
+        database.put(1L, new User(1L, "Alice", "alice@example.com"));
+        database.put(2L, new User(2L, "Bob", "bob@example.com"));
+        database.put(3L, new User(3L, "Charlie", "charlie@example.com"));
+        for (long id = 4; id <= seedUsers; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com"));
+        }
+
+        log.info("🔧 База данных инициализирована с {} пользователями", database.size());
+
+        // Кэш пока пуст - подписываемся с текущего конца журнала
+        changeFeed = new ChangeFeedSubscriber("user-cache", database.changeLog(), database.changeLog().tail(),
+                cacheProperties.getCdc().getBatchSize(), this::applyChanges, cache::invalidateAll);
+        changeFeed.start(cacheProperties.getCdc().getPollInterval());
+    }
+
+    /**
+     * READ-THROUGH PATTERN без блокировок: попадание возвращается сразу,
+     * промах - Mono загрузки, общий для всех конкурентных запросов этого id
+     */
+    public Mono<User> getUserById(Long id) {
+        log.info("🔍 Запрос пользователя с ID: {} через Reactive Read-Through кэш", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+
+        return cache.get(id)
+                .doOnNext(user -> log.info("🎯 Пользователь {} получен через кэш", id))
+                .switchIfEmpty(Mono.fromRunnable(() -> log.warn("⚠️  Пользователь {} не найден в базе данных", id)));
+    }
+
+    /**
+     * Пакетное чтение: не больше bulk.concurrency загрузок одновременно, порядок ответа совпадает
+     * с порядком id. Следующие id запрашиваются у источника (тела запроса) только по мере спроса
+     * со стороны клиента - backpressure проходит от сокета ответа до чтения тела запроса.
+     */
+    public Flux<User> getUsersByIds(Flux<Long> ids) {
+        return ids.flatMapSequential(this::getUserById, cacheProperties.getBulk().getConcurrency());
+    }
+
+    // Метод-загрузчик для Read-Through кэша
+    private Mono<User> loadUserFromDatabase(Long id) {
+        Mono<User> row = Mono.fromSupplier(() -> {
+            log.info("📖 READ-THROUGH: Автоматически загружаем пользователя {} из базы данных", id);
+            return database.get(id);
+        });
+        // Задержка через таймер Reactor - как у неблокирующего драйвера БД
+        Mono<User> load = readLatency.isZero() ? row : Mono.delay(readLatency).then(row);
+        // Загрузчик вызывается при подписке: длительность в JFR (событие Cache Load) - от подписки до ответа
+        CacheEvents.LoadEvent event = CacheEvents.beginLoad("users", id);
+        return load.doOnSuccess(user -> CacheEvents.endLoad(event, user != null));
+    }
+
+    public Mono<User> updateUser(Long id, String name, String email) {
+        log.info("✏️ Обновляем пользователя {}", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, id);
+
+        // Запись в in-memory БД не блокируется; инвалидацию кэша выполнит подписчик журнала изменений
+        return Mono.fromSupplier(() -> {
+            User existingUser = database.get(id);
+            if (existingUser != null) {
+                existingUser.setName(name);
+                existingUser.setEmail(email);
+                database.put(id, existingUser);
+                log.info("🗑️ Пользователь {} обновлен в БД, кэш будет инвалидирован через журнал изменений", id);
+            }
+            return existingUser;
+        });
+    }
+
+    /**
+     * Обработка пачки событий журнала изменений БД: измененные пользователи удаляются из кэша,
+     * а загрузки, начатые до изменения, не смогут положить в кэш устаревшую версию
+     */
+    private void applyChanges(List<ChangeEvent> batch) {
+        batch.stream()
+                .map(ChangeEvent::id)
+                .distinct()
+                .forEach(id -> invalidate(id, "cdc"));
+        log.debug("🔄 CDC: обработано {} событий, последний offset {}", batch.size(), batch.get(batch.size() - 1).offset());
+    }
+
+    // Удаление записи из кэша с причиной reason (событие Cache Invalidation в JFR)
+    private void invalidate(Long id, String reason) {
+        CacheEvents.invalidation("users", id, reason);
+        cache.invalidate(id);
+    }
+
+    public Map<String, Object> getChangeFeedStats() {
+        log.info("📡 Возвращаем состояние подписки кэша на журнал изменений");
+        return changeFeed.stats();
+    }
+
+    public List<HotKeyTracker.HotKey> getHotKeys(int limit) {
+        log.info("🔥 Возвращаем top-{} горячих ключей", limit);
+        return hotKeyTracker.hotKeys(limit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeFeed.close();
+    }
+
+    public void clearCache() {
+        log.info("🧹 Очищаем весь кэш! Было записей: {}", cache.cache().size());
+        CacheEvents.invalidation("users", "*", "clear");
+        cache.invalidateAll();
+        log.info("✅ Кэш успешно очищен");
+    }
+
+    public Map<Long, User> getCache() {
+        log.info("📤 Возвращаем содержимое кэша клиенту. Размер кэша: {}", cache.cache().size());
+        return cache.cache().snapshot();
+    }
+
+    public Map<String, Object> getCacheStats() {
+        log.info("📊 Возвращаем статистику кэша: {} записей, {} байт", cache.cache().size(), cache.cache().weightedSize());
+        Map<String, Object> stats = cache.cache().stats();
+        stats.put("loader", cache.stats());
+        stats.put("memoryBudget", cacheRegistry.stats());
+        stats.put("trace", traceRecorder.stats());
+        return stats;
+    }
+}
@@ -0,0 +1,76 @@
+package com.prosoft.store;
+
+import com.prosoft.model.User;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Имитация базы данных с версиями строк и журналом изменений.
+ * Любая запись - через сервис или напрямую - попадает в ChangeLog в том же порядке,
+ * в котором применялась к строке. Наружу отдаются копии: изменить строку можно только через put.
+ */
+public class UserStore {
+
+    private record Row(User user, long version) {
+    }
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    private final ChangeLog changeLog;
+    private final AtomicLong maxId = new AtomicLong();
+
+    public UserStore(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    public User get(Long id) {
+        Row row = rows.get(id);
+        return row == null ? null : copyOf(row.user());
+    }
+
+    /**
+     * Вставка или обновление строки. Возвращает новую версию
+     */
+    public long put(Long id, User user) {
+        User stored = copyOf(user);
+        maxId.accumulateAndGet(id, Math::max);
+        // Событие пишется внутри compute - для одного ключа порядок журнала совпадает с порядком записей
+        Row row = rows.compute(id, (key, old) -> {
+            long version = old == null ? 1 : old.version() + 1;
+            changeLog.append(old == null ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE, key, version);
+            return new Row(stored, version);
+        });
+        return row.version();
+    }
+
+    public void remove(Long id) {
+        rows.computeIfPresent(id, (key, old) -> {
+            changeLog.append(ChangeEvent.Type.DELETE, key, old.version() + 1);
+            return null;
+        });
+    }
+
+    public long nextId() {
+        return maxId.incrementAndGet();
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public Map<Long, User> snapshot() {
+        Map<Long, User> snapshot = new HashMap<>();
+        rows.forEach((id, row) -> snapshot.put(id, copyOf(row.user())));
+        return snapshot;
+    }
+
+    public ChangeLog changeLog() {
+        return changeLog;
+    }
+
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail());
+    }
+}
@@ -2,8 +2,10 @@ package com.prosoft;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class ReadThroughCacheApp {
     public static void main(String[] args) {
         SpringApplication.run(ReadThroughCacheApp.class, args);
@@ -0,0 +1,65 @@
+package com.prosoft.cache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ETag для условных GET (If-None-Match -> 304 Not Modified)
+ */
+public final class EntityTags {
+
+    // Счетчики изменений начинаются с нуля при каждом старте - метка экземпляра не дает спутать версии
+    private static final String INSTANCE = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private EntityTags() {
+    }
+
+    /**
+     * Сильный ETag по содержимому: первые 8 байт SHA-256 тела ответа
+     */
+    public static String strong(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Слабый ETag по счетчику изменений (для списков, где тело каждый раз собирается заново)
+     */
+    public static String weak(String name, long version) {
+        return "W/\"" + INSTANCE + "-" + name + "-" + version + "\"";
+    }
+
+    /**
+     * Сильный ETag варианта того же содержимого (например, gzip) - у разных представлений разные ETag
+     */
+    public static String variant(String etag, String suffix) {
+        return etag.substring(0, etag.length() - 1) + "-" + suffix + "\"";
+    }
+
+    /**
+     * Слабое сравнение, как требует RFC 9110 для If-None-Match: префикс W/ не учитывается, * совпадает с любым
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,383 @@
+package com.prosoft.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Предзагрузка (prefetch) ключей, которые по потоку чтений, скорее всего, запросят следующими.
+ *
+ * Два источника предсказаний:
+ * - последовательности с постоянным шагом (stride): таблица из нескольких "потоков" чтений, как у аппаратного
+ *   prefetcher процессора, поэтому чтения разных клиентов вперемешку не мешают каждому потоку обучаться;
+ * - совместный доступ (co-access): ограниченная таблица "ключ -> частые последователи" в окне последних чтений.
+ *
+ * Предсказанные ключи, которых нет в кэше, копятся в очереди и загружаются пачками в отдельном потоке
+ * (один запрос к БД на пачку). Бюджет - не больше budgetPerSecond ключей в секунду, остальные отбрасываются,
+ * чтобы бесполезные предзагрузки не тратили пропускную способность БД. Обучение не ждет блокировку:
+ * если она занята, чтение в обучение не попадает (выборка под нагрузкой).
+ */
+@Slf4j
+public class Prefetcher implements AutoCloseable {
+
+    private static final int MAX_COUNT = 255;
+
+    private final boolean enabled;
+    private final int maxStride;
+    private final int depth;
+    private final int minSupport;
+    private final int budgetPerSecond;
+    private final int batchSize;
+    private final int successorsPerKey;
+    private final Predicate<Long> present;
+    private final Function<List<Long>, List<Long>> loader;
+
+    // Таблица потоков чтений и окно последних чтений - только под learnLock
+    private final ReentrantLock learnLock = new ReentrantLock();
+    private final long[] streamLast;
+    private final long[] streamStride;
+    private final int[] streamHits;
+    private final long[] streamUsedAt;
+    private long tick;
+    private final long[] window;
+    private int windowFill;
+    private int windowPos;
+    private final Map<Long, Successors> associations;
+
+    private final Queue<Long> queue = new ConcurrentLinkedQueue<>();
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    // Загруженные предзагрузкой и еще не прочитанные ключи - для оценки точности
+    private final Set<Long> prefetched = ConcurrentHashMap.newKeySet();
+    private final int prefetchedCapacity;
+
+    private final AtomicLong budgetWindowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger budgetUsed = new AtomicInteger();
+
+    private final ScheduledExecutorService worker;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder learningSkipped = new LongAdder();
+    private final LongAdder predicted = new LongAdder();
+    private final LongAdder alreadyCached = new LongAdder();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder droppedByBudget = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder useful = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param streams         число одновременно отслеживаемых последовательностей
+     * @param maxStride       наибольший шаг последовательности (по модулю)
+     * @param depth           на сколько шагов вперед загружать подтвержденную последовательность
+     * @param associations    емкость таблицы совместного доступа (ключей), вытесняются давно не читанные
+     * @param successors      сколько последователей помнить для ключа
+     * @param window          сколько предыдущих чтений считаются "совместными" с текущим
+     * @param minSupport      сколько раз последователь должен встретиться, чтобы его предзагружать
+     * @param budgetPerSecond не больше стольких предзагрузок в секунду
+     * @param batchSize       ключей в одном запросе к БД
+     * @param batchDelayMs    период разбора очереди предзагрузки
+     * @param present         есть ли ключ в кэше (без учета в статистике)
+     * @param loader          загружает пачку в кэш, возвращает ключи, которые действительно загружены
+     */
+    public Prefetcher(boolean enabled, int streams, int maxStride, int depth, int associations, int successors,
+                      int window, int minSupport, int budgetPerSecond, int batchSize, long batchDelayMs,
+                      Predicate<Long> present, Function<List<Long>, List<Long>> loader) {
+        this.enabled = enabled;
+        this.maxStride = Math.max(1, maxStride);
+        this.depth = Math.max(1, depth);
+        this.minSupport = Math.max(1, minSupport);
+        this.budgetPerSecond = Math.max(1, budgetPerSecond);
+        this.batchSize = Math.max(1, batchSize);
+        this.present = present;
+        this.loader = loader;
+
+        int streamCount = Math.max(1, streams);
+        this.streamLast = new long[streamCount];
+        this.streamStride = new long[streamCount];
+        this.streamHits = new int[streamCount];
+        this.streamUsedAt = new long[streamCount];
+        this.window = new long[Math.max(1, window)];
+        this.successorsPerKey = Math.max(1, successors);
+        int capacity = Math.max(16, associations);
+        this.associations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Successors> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.prefetchedCapacity = this.budgetPerSecond * 60;
+
+        if (enabled) {
+            this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-prefetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.worker.scheduleWithFixedDelay(this::drain, batchDelayMs, Math.max(1, batchDelayMs), TimeUnit.MILLISECONDS);
+        } else {
+            this.worker = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Чтение ключа: учет точности, обучение и постановка предсказанных ключей в очередь предзагрузки
+     *
+     * @param hit ключ нашелся в кэше
+     */
+    public void onRead(Long key, boolean hit) {
+        if (!enabled || key == null) {
+            return;
+        }
+        reads.increment();
+        if (prefetched.remove(key) && hit) {
+            useful.increment();
+        }
+        if (!learnLock.tryLock()) {
+            learningSkipped.increment();
+            return;
+        }
+        long[] predictions;
+        try {
+            predictions = learnAndPredict(key);
+        } finally {
+            learnLock.unlock();
+        }
+        for (long candidate : predictions) {
+            offer(candidate);
+        }
+    }
+
+    // Выполняется под learnLock
+    private long[] learnAndPredict(long key) {
+        long[] predictions = new long[depth + successorsPerKey];
+        int count = 0;
+
+        // Последовательности: продолжение известного потока, новый шаг рядом с потоком или новый поток
+        int stream = -1;
+        for (int i = 0; i < streamLast.length; i++) {
+            if (streamStride[i] != 0 && streamLast[i] + streamStride[i] == key) {
+                stream = i;
+                streamHits[i] = Math.min(streamHits[i] + 1, MAX_COUNT);
+                break;
+            }
+        }
+        if (stream < 0) {
+            stream = nearestStream(key);
+            if (stream >= 0) {
+                streamStride[stream] = key - streamLast[stream];
+                streamHits[stream] = 0;
+            } else {
+                stream = leastRecentStream();
+                streamStride[stream] = 0;
+                streamHits[stream] = 0;
+            }
+        }
+        streamLast[stream] = key;
+        streamUsedAt[stream] = ++tick;
+        // Шаг подтвержден дважды подряд - последовательность, загружаем depth следующих ключей
+        if (streamHits[stream] > 0) {
+            for (int step = 1; step <= depth; step++) {
+                predictions[count++] = key + streamStride[stream] * step;
+            }
+        }
+
+        // Совместный доступ: текущий ключ - последователь каждого ключа окна
+        for (int i = 0; i < windowFill; i++) {
+            long previous = window[i];
+            if (previous != key) {
+                associations.computeIfAbsent(previous, k -> new Successors(successorsPerKey)).record(key);
+            }
+        }
+        window[windowPos] = key;
+        windowPos = (windowPos + 1) % window.length;
+        windowFill = Math.min(windowFill + 1, window.length);
+
+        Successors successors = associations.get(key);
+        if (successors != null) {
+            count = successors.frequent(minSupport, predictions, count);
+        }
+        predicted.add(count);
+        return Arrays.copyOf(predictions, count);
+    }
+
+    private int nearestStream(long key) {
+        int nearest = -1;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < streamLast.length; i++) {
+            if (streamUsedAt[i] == 0) {
+                continue;
+            }
+            long distance = Math.abs(key - streamLast[i]);
+            if (distance != 0 && distance <= maxStride && distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private int leastRecentStream() {
+        int oldest = 0;
+        for (int i = 1; i < streamUsedAt.length; i++) {
+            if (streamUsedAt[i] < streamUsedAt[oldest]) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    private void offer(long key) {
+        if (key <= 0) {
+            return;
+        }
+        if (present.test(key)) {
+            alreadyCached.increment();
+            return;
+        }
+        if (!queued.add(key)) {
+            return; // уже в очереди
+        }
+        if (!tryAcquireBudget()) {
+            queued.remove(key);
+            droppedByBudget.increment();
+            return;
+        }
+        queue.add(key);
+        issued.increment();
+    }
+
+    private boolean tryAcquireBudget() {
+        long start = budgetWindowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= TimeUnit.SECONDS.toNanos(1) && budgetWindowStart.compareAndSet(start, now)) {
+            budgetUsed.set(0);
+        }
+        return budgetUsed.incrementAndGet() <= budgetPerSecond;
+    }
+
+    // Поток предзагрузки: очередь разбирается пачками по batchSize ключей
+    private void drain() {
+        while (!queue.isEmpty()) {
+            List<Long> batch = new ArrayList<>(batchSize);
+            Long key;
+            while (batch.size() < batchSize && (key = queue.poll()) != null) {
+                queued.remove(key);
+                if (!present.test(key)) {
+                    batch.add(key);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                List<Long> done = loader.apply(batch);
+                batches.increment();
+                loaded.add(done.size());
+                if (prefetched.size() > prefetchedCapacity) {
+                    prefetched.clear(); // оценка точности приблизительна, память важнее
+                }
+                prefetched.addAll(done);
+            } catch (RuntimeException e) {
+                // БД недоступна или автомат защиты разомкнут - предзагрузка не повторяется
+                failures.increment();
+                log.debug("⚠️  Предзагрузка {} ключей не удалась: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        long loadedCount = loaded.sum();
+        stats.put("reads", reads.sum());
+        stats.put("learningSkipped", learningSkipped.sum());
+        stats.put("predicted", predicted.sum());
+        stats.put("alreadyCached", alreadyCached.sum());
+        stats.put("issued", issued.sum());
+        stats.put("droppedByBudget", droppedByBudget.sum());
+        stats.put("queued", queued.size());
+        stats.put("batches", batches.sum());
+        stats.put("loaded", loadedCount);
+        stats.put("useful", useful.sum());
+        stats.put("accuracy", loadedCount == 0 ? 0.0 : Math.round(1000.0 * useful.sum() / loadedCount) / 1000.0);
+        stats.put("failures", failures.sum());
+        stats.put("budgetPerSecond", budgetPerSecond);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    /**
+     * Частые последователи ключа: несколько слотов со счетчиками, новый последователь
+     * вытесняет самый редкий. Насыщенные счетчики делятся пополам - старые связи "остывают".
+     */
+    private static final class Successors {
+
+        private final long[] keys;
+        private final int[] counts;
+
+        Successors(int capacity) {
+            this.keys = new long[capacity];
+            this.counts = new int[capacity];
+        }
+
+        void record(long key) {
+            int weakest = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (counts[i] > 0 && keys[i] == key) {
+                    if (++counts[i] >= MAX_COUNT) {
+                        for (int j = 0; j < counts.length; j++) {
+                            counts[j] >>= 1;
+                        }
+                    }
+                    return;
+                }
+                if (counts[i] < counts[weakest]) {
+                    weakest = i;
+                }
+            }
+            keys[weakest] = key;
+            counts[weakest] = 1;
+        }
+
+        int frequent(int minSupport, long[] into, int from) {
+            int count = from;
+            for (int i = 0; i < keys.length && count < into.length; i++) {
+                if (counts[i] >= minSupport) {
+                    into[count++] = keys[i];
+                }
+            }
+            return count;
+        }
+    }
+}
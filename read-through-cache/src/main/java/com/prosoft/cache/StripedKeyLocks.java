@@ -0,0 +1,99 @@
+package com.prosoft.cache;
+
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Блокировки по ключу без глобального lock: ключ хешируется на одну из N "полос" (stripes).
+ * Операции над одним ключом выполняются строго по очереди, над разными ключами - параллельно
+ * (кроме редких коллизий полос).
+ *
+ * Режимы:
+ * - write - эксклюзивно, для двухфазной записи "БД + кэш"
+ * - read - разделяемо, для загрузки промаха в кэш (не пересекается с записью того же ключа)
+ *
+ * StampedLock не реентерабелен: внутри секции нельзя брать блокировку другого ключа
+ * (он может попасть в ту же полосу).
+ */
+public class StripedKeyLocks {
+
+    private final StampedLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes число полос (округляется вверх до степени двойки), 0 - по 4 на ядро
+     */
+    public StripedKeyLocks(int stripes) {
+        int requested = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * 4;
+        int size = Integer.highestOneBit(Math.max(1, requested - 1)) << 1;
+        this.stripes = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public <T> T withWriteLock(Object key, Supplier<T> action) {
+        StampedLock lock = stripeFor(key);
+        long stamp = lock.writeLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void withWriteLock(Object key, Runnable action) {
+        withWriteLock(key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T withReadLock(Object key, Supplier<T> action) {
+        StampedLock lock = stripeFor(key);
+        long stamp = lock.readLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Разделяемая блокировка набора ключей - для пакетной загрузки в кэш. Полосы берутся по возрастанию номера,
+     * как и у любого другого захвата нескольких полос
+     */
+    public <T> T withReadLocks(Collection<?> keys, Supplier<T> action) {
+        int[] indexes = keys.stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+        long[] stamps = new long[indexes.length];
+        int locked = 0;
+        try {
+            for (; locked < indexes.length; locked++) {
+                stamps[locked] = stripes[indexes[locked]].readLock();
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    public int stripes() {
+        return stripes.length;
+    }
+
+    private StampedLock stripeFor(Object key) {
+        return stripes[stripeIndex(key)];
+    }
+
+    private int stripeIndex(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+}
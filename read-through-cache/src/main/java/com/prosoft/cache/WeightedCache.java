@@ -0,0 +1,579 @@
+package com.prosoft.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш, емкость которого измеряется в байтах, а не в числе записей.
+ *
+ * Вес записи = оценка от Weigher (ключ + значение) + накладные расходы самой структуры.
+ * Все изменения веса делаются внутри compute для того же ключа, поэтому учет не расходится
+ * с содержимым при конкурентных записях.
+ *
+ * Вытеснение - CLOCK (second chance): записи стоят в кольцевой очереди, чтение ставит бит обращения,
+ * вытеснитель снимает бит и дает записи второй шанс, а без бита - удаляет. Закрепленные записи
+ * (pinned: "горячие" ключи) пропускаются. Если вытеснять больше нечего,
+ * бюджет временно превышается - корректность важнее лимита.
+ *
+ * К записи можно прикрепить производные данные (attachment, например готовый JSON ответа): они учитываются
+ * в весе записи и сбрасываются при любом изменении значения, поэтому не могут устареть относительно него.
+ *
+ * Запись помнит момент загрузки (или последней замены значения) - по возрасту сервис решает,
+ * отдать ли значение сразу, отдать устаревшее с фоновой перезагрузкой или загрузить заново.
+ *
+ * Кэш - пространство имен общего бюджета (CacheNamespace): квота гарантирует ему место, без заимствования
+ * он не растет сверх квоты, а с заимствованием занимает свободное место бюджета и возвращает его первым,
+ * когда бюджет исчерпан. Записи старше ttl пространства имен считаются отсутствующими (кроме закрепленных).
+ *
+ * Загрузчик computeIfAbsent выполняется вне ConcurrentHashMap: медленная БД не держит блокировку корзины
+ * (и соседние ключи в ней), а конкурентные промахи по ключу ждут одну загрузку. Удаление ключа во время
+ * загрузки отменяет ее вставку - загруженное до инвалидации значение в кэш не попадет.
+ *
+ * Попадания, промахи и вытеснения видны в JDK Flight Recorder (CacheEvents), если запись JFR включена.
+ */
+public class WeightedCache<K, V> {
+
+    // Накладные расходы на запись (64-битная JVM, compressed oops):
+    // узел ConcurrentHashMap 32 + слот таблицы ~8 + Node этого кэша 32 + узел очереди вытеснения 24
+    static final long ENTRY_OVERHEAD = 32 + 8 + 32 + 24;
+
+    private final String name;
+    private final MemoryBudget budget;
+    private final long quotaBytes;
+    private final boolean borrow;
+    private final long expireAfterNanos;
+    private final Weigher<K, V> weigher;
+    private final BiPredicate<K, V> pinned;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    // Загрузки computeIfAbsent, которые идут сейчас: одна на ключ
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong weightedSize = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder pinnedSkips = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    // Любое изменение содержимого (вставка, замена, удаление, вытеснение) - для ETag списков.
+    // Увеличивается после того, как изменение стало видно в map: счетчик, прочитанный до snapshot(),
+    // может только отстать от содержимого, но не опередить его
+    private final LongAdder modifications = new LongAdder();
+
+    public WeightedCache(String name, MemoryBudget budget, CacheNamespace namespace,
+                         Weigher<K, V> weigher, BiPredicate<K, V> pinned) {
+        this.name = name;
+        this.budget = budget;
+        this.quotaBytes = namespace.quotaBytes() > 0 ? namespace.quotaBytes() : Long.MAX_VALUE;
+        this.borrow = namespace.borrow();
+        this.expireAfterNanos = namespace.ttl().isZero() ? Long.MAX_VALUE : namespace.ttl().toNanos();
+        this.weigher = weigher;
+        this.pinned = pinned;
+        budget.register(name, this);
+    }
+
+    public V get(K key) {
+        Node<K, V> node = live(map.get(key));
+        if (node == null) {
+            misses.increment();
+            CacheEvents.miss(name, key);
+            return null;
+        }
+        hits.increment();
+        CacheEvents.hit(name, key);
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Значение вместе с возрастом - временем с загрузки или последней замены
+     */
+    public Timed<V> getTimed(K key) {
+        Node<K, V> node = live(map.get(key));
+        if (node == null) {
+            misses.increment();
+            CacheEvents.miss(name, key);
+            return null;
+        }
+        hits.increment();
+        CacheEvents.hit(name, key);
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        // Момент загрузки читаем до значения: при конкурентной замене возраст может только завыситься
+        long loadedAt = node.loadedAt;
+        return new Timed<>(node.value, System.nanoTime() - loadedAt);
+    }
+
+    /**
+     * Возраст записи без учета в статистике, -1 - ключа нет в кэше
+     */
+    public long ageNanos(K key) {
+        Node<K, V> node = map.get(key);
+        return node == null ? -1 : System.nanoTime() - node.loadedAt;
+    }
+
+    /**
+     * Чтение без учета в статистике и без бита обращения - для служебных путей (запись, сброс)
+     */
+    public V peek(K key) {
+        Node<K, V> node = map.get(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Производные данные значения value: берутся из прикрепленных, а при их отсутствии строятся factory
+     * и прикрепляются. null - ключа нет в кэше или в нем уже другое значение: прикрепленные данные
+     * описывают значение записи, а не то, что вызывающий прочитал раньше.
+     */
+    public <A> A attachment(K key, V value, Function<? super V, ? extends A> factory, ToLongFunction<? super A> weigher) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Версию читаем до значения: если значение успеют заменить, прикрепление к старой версии не состоится
+        long version = node.version;
+        if (node.value != value) {
+            return null;
+        }
+        Attachment attachment = node.attachment;
+        if (attachment != null && attachment.version() == version) {
+            @SuppressWarnings("unchecked")
+            A cached = (A) attachment.value();
+            return cached;
+        }
+
+        A derived = factory.apply(value);
+        long weight = weigher.applyAsLong(derived);
+        map.computeIfPresent(key, (k, current) -> {
+            if (current == node && current.version == version && current.attachment == null) {
+                current.attachment = new Attachment(version, derived, weight);
+                charge(weight);
+            }
+            return current;
+        });
+        evictIfNeeded();
+        return derived;
+    }
+
+    /**
+     * Прикрепленные данные, только если они уже построены для текущего значения - без factory и без статистики
+     */
+    public <A> A cachedAttachment(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null || isExpired(node)) {
+            return null;
+        }
+        Attachment attachment = node.attachment;
+        if (attachment == null || attachment.version() != node.version) {
+            return null;
+        }
+        node.referenced = true;
+        @SuppressWarnings("unchecked")
+        A cached = (A) attachment.value();
+        return cached;
+    }
+
+    public void put(K key, V value) {
+        long weight = weigh(key, value);
+        Node<K, V> created = insertOrReplace(key, value, weight);
+        modifications.increment();
+        if (created != null) {
+            enqueue(created);
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Загрузчик выполняется не более одного раза на ключ одновременно: остальные промахи по ключу ждут
+     * его результат. null от загрузчика ничего не кэширует. Если за время загрузки ключ удалили
+     * или пересчитали, загруженное значение возвращается вызывающим, но в кэш не кладется.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> existing = live(map.get(key));
+        if (existing != null) {
+            return existing.value;
+        }
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            // Значение могли вставить между первой проверкой и регистрацией загрузки
+            Node<K, V> raced = live(map.get(key));
+            V value = raced != null ? raced.value : loader.apply(key);
+            if (raced == null && value != null) {
+                value = insertLoaded(key, value, load);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    // Вставка загруженного значения, если ключ все еще отсутствует и загрузку не отменили
+    private V insertLoaded(K key, V value, CompletableFuture<V> load) {
+        Node<K, V> fresh = new Node<>(key, value, weigh(key, value));
+        boolean[] created = new boolean[1];
+        Node<K, V> node = map.computeIfAbsent(key, k -> {
+            if (loading.get(k) != load) {
+                return null;
+            }
+            charge(fresh.weight);
+            created[0] = true;
+            return fresh;
+        });
+        if (created[0]) {
+            modifications.increment();
+            enqueue(fresh);
+            evictIfNeeded();
+        }
+        // Конкурентная запись новее загруженной строки - возвращаем ее
+        return node == null ? value : node.value;
+    }
+
+    private static <V> V await(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Пересчет существующего значения, null от функции удаляет запись
+     */
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        // Загрузка, начатая до пересчета, могла прочитать устаревшую версию
+        loading.remove(key);
+        boolean[] changed = new boolean[1];
+        Node<K, V> node = map.computeIfPresent(key, (k, current) -> {
+            V value = remapping.apply(k, current.value);
+            changed[0] = true;
+            if (value == null) {
+                charge(-current.retained());
+                return null;
+            }
+            replaceValue(current, value, weigh(k, value));
+            return current;
+        });
+        // Отсутствующий ключ содержимое не меняет - snapshot() остается прежним
+        if (changed[0]) {
+            modifications.increment();
+        }
+        evictIfNeeded();
+        return node == null ? null : node.value;
+    }
+
+    public V remove(K key) {
+        loading.remove(key);
+        Object[] removed = new Object[1];
+        map.computeIfPresent(key, (k, current) -> {
+            charge(-current.retained());
+            removed[0] = current.value;
+            return null;
+        });
+        if (removed[0] != null) {
+            modifications.increment();
+        }
+        compactIfNeeded();
+        @SuppressWarnings("unchecked")
+        V value = (V) removed[0];
+        return value;
+    }
+
+    public void clear() {
+        // Поштучно, чтобы учет веса оставался точным при конкурентных вставках
+        loading.clear();
+        map.keySet().forEach(this::remove);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long weightedSize() {
+        return weightedSize.get();
+    }
+
+    /**
+     * Счетчик изменений содержимого: если он не изменился, snapshot() вернет то же самое
+     */
+    public long modificationCount() {
+        return modifications.sum();
+    }
+
+    public Map<K, V> snapshot() {
+        Map<K, V> copy = new HashMap<>();
+        map.forEach((key, node) -> copy.put(key, node.value));
+        return copy;
+    }
+
+    public Map<String, Object> stats() {
+        long entries = map.size();
+        long bytes = weightedSize.get();
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("entries", entries);
+        stats.put("weightedBytes", bytes);
+        stats.put("avgEntryBytes", entries == 0 ? 0 : bytes / entries);
+        stats.put("hits", hitCount);
+        stats.put("misses", requests - hitCount);
+        stats.put("hitRate", requests == 0 ? 0.0 : Math.round(1000.0 * hitCount / requests) / 1000.0);
+        stats.put("evictions", evictions.sum());
+        stats.put("evictedBytes", evictedBytes.sum());
+        stats.put("pinnedSkips", pinnedSkips.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("quotaBytes", quotaBytes == Long.MAX_VALUE ? 0 : quotaBytes);
+        stats.put("borrow", borrow);
+        stats.put("borrowedBytes", quotaBytes == Long.MAX_VALUE ? 0 : Math.max(0, bytes - quotaBytes));
+        stats.put("ttlMs", expireAfterNanos == Long.MAX_VALUE ? 0 : expireAfterNanos / 1_000_000);
+        return stats;
+    }
+
+    private long weigh(K key, V value) {
+        return ENTRY_OVERHEAD + weigher.weigh(key, value);
+    }
+
+    private void charge(long delta) {
+        weightedSize.addAndGet(delta);
+        budget.charge(delta);
+    }
+
+    // Возвращает новый узел, если ключа не было (его нужно поставить в очередь вытеснения)
+    private Node<K, V> insertOrReplace(K key, V value, long weight) {
+        Object[] created = new Object[1];
+        map.compute(key, (k, current) -> {
+            if (current == null) {
+                Node<K, V> fresh = new Node<>(k, value, weight);
+                charge(weight);
+                created[0] = fresh;
+                return fresh;
+            }
+            replaceValue(current, value, weight);
+            current.referenced = true;
+            return current;
+        });
+        @SuppressWarnings("unchecked")
+        Node<K, V> node = (Node<K, V>) created[0];
+        return node;
+    }
+
+    // Новое значение сбрасывает прикрепленные данные старого
+    private void replaceValue(Node<K, V> node, V value, long weight) {
+        charge(weight - node.retained());
+        node.value = value;
+        node.weight = weight;
+        node.attachment = null;
+        node.version++;
+        node.loadedAt = System.nanoTime();
+    }
+
+    private void enqueue(Node<K, V> node) {
+        clock.offer(node);
+        clockSize.incrementAndGet();
+    }
+
+    private void evictIfNeeded() {
+        if (weightedSize.get() > quotaBytes && !borrow) {
+            shrink(); // без заимствования квота - жесткий предел
+        }
+        if (budget.isExceeded()) {
+            // Место возвращают кэши, занявшие больше гарантированного, а не обязательно тот, в который вставка
+            budget.reclaim();
+        }
+    }
+
+    /**
+     * Нужно ли вытеснять свои записи: без заимствования - пока превышена квота,
+     * при исчерпанном общем бюджете - пока занято больше гарантированного квотой
+     */
+    boolean mustShrink() {
+        long size = weightedSize.get();
+        if (size > quotaBytes && !borrow) {
+            return true;
+        }
+        return budget.isExceeded() && overGuaranteeBytes() > 0;
+    }
+
+    // Сколько занято сверх квоты; у кэша без квоты гарантированного места нет
+    long overGuaranteeBytes() {
+        return weightedSize.get() - (quotaBytes == Long.MAX_VALUE ? 0 : quotaBytes);
+    }
+
+    void shrink() {
+        // Вытесняет один поток, остальные не ждут: превышение на время одной вставки допустимо
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Не больше двух полных оборотов: первый снимает биты обращения, второй вытесняет
+            int scanLimit = 2 * clockSize.get();
+            while (mustShrink() && scanLimit-- > 0) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    break;
+                }
+                clockSize.decrementAndGet();
+
+                if (map.get(node.key) != node) {
+                    continue; // запись уже удалена
+                }
+                if (node.referenced && !isExpired(node)) {
+                    node.referenced = false;
+                    enqueue(node);
+                    continue;
+                }
+                if (pinned.test(node.key, node.value)) {
+                    pinnedSkips.increment();
+                    enqueue(node);
+                    continue;
+                }
+                if (!evict(node)) {
+                    enqueue(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Узел, если он есть и не истек; истекший удаляется, как будто его нет
+    private Node<K, V> live(Node<K, V> node) {
+        if (node == null || !isExpired(node)) {
+            return node;
+        }
+        boolean[] removed = {false};
+        map.computeIfPresent(node.key, (k, current) -> {
+            // Повторная проверка под блокировкой ключа, как в evict: запись могла смениться или стать закрепленной
+            if (current != node || !isExpired(current)) {
+                return current;
+            }
+            charge(-current.retained());
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            modifications.increment();
+            expirations.increment();
+            return null;
+        }
+        return map.get(node.key);
+    }
+
+    // Закрепленные записи не истекают так же, как не вытесняются: например, в write-back
+    // запись email -> id несброшенного пользователя больше негде найти
+    private boolean isExpired(Node<K, V> node) {
+        return expireAfterNanos != Long.MAX_VALUE && System.nanoTime() - node.loadedAt > expireAfterNanos
+                && !pinned.test(node.key, node.value);
+    }
+
+    private boolean evict(Node<K, V> node) {
+        long[] released = {-1};
+        map.computeIfPresent(node.key, (k, current) -> {
+            // Повторная проверка под блокировкой ключа: запись могла стать закрепленной после выбора жертвы
+            if (current != node || pinned.test(k, current.value)) {
+                return current;
+            }
+            released[0] = current.retained();
+            charge(-released[0]);
+            return null;
+        });
+        if (released[0] < 0) {
+            return map.get(node.key) != node; // узел заменен - в очередь не возвращаем
+        }
+        modifications.increment();
+        evictions.increment();
+        evictedBytes.add(released[0]);
+        CacheEvents.eviction(name, node.key, released[0]);
+        return true;
+    }
+
+    // Удаленные записи остаются в очереди до обхода вытеснителем; без давления на бюджет
+    // их вычищаем сами, чтобы очередь не росла бесконечно
+    private void compactIfNeeded() {
+        if (clockSize.get() <= 2 * map.size() + 1024 || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            for (int i = clockSize.get(); i > 0; i--) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    break;
+                }
+                clockSize.decrementAndGet();
+                if (map.get(node.key) == node) {
+                    enqueue(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long weight;
+        volatile boolean referenced;
+        // Меняются только внутри compute для ключа
+        volatile long version;
+        volatile Attachment attachment;
+        volatile long loadedAt;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.loadedAt = System.nanoTime();
+        }
+
+        long retained() {
+            Attachment current = attachment;
+            return current == null ? weight : weight + current.weight();
+        }
+    }
+
+    private record Attachment(long version, Object value, long weight) {
+    }
+
+    public record Timed<V>(V value, long ageNanos) {
+    }
+}
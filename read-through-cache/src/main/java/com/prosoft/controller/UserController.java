@@ -1,10 +1,20 @@
 package com.prosoft.controller;
 
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
 import com.prosoft.service.UserService;
+import com.prosoft.store.StoreUnavailableException;
 import com.prosoft.model.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,17 +29,76 @@ public class UserController {
     }
 
     @GetMapping("/{id}")
-    public User getUser(@PathVariable Long id) {
+    public ResponseEntity<?> getUser(@PathVariable Long id,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("🌐 Получен HTTP GET запрос для пользователя ID: {}", id);
+        boolean acceptsGzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        // Условный GET: версия клиента совпала с версией в кэше - 304 без обращения к БД и без сериализации
+        if (ifNoneMatch != null) {
+            String etag = userService.getUnchangedEtag(id, ifNoneMatch, acceptsGzip);
+            if (etag != null) {
+                return notModified(id, etag);
+            }
+        }
+
+        if (userService.isEncodedResponsesEnabled()) {
+            return encodedUser(id, acceptsGzip, ifNoneMatch);
+        }
 
         User user = userService.getUserById(id);
+        if (user == null) {
+            log.warn("🏁 Пользователь с ID {} не найден", id);
+            return ResponseEntity.ok().build();
+        }
 
-        if (user != null) {
-            log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
-        } else {
+        String etag = userService.getEtag(id, user);
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            return notModified(id, etag);
+        }
+        log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
+        return ResponseEntity.ok().eTag(etag).body(user);
+    }
+
+    // Попадания в кэш отдаются готовыми байтами JSON (или gzip) - без сериализации на каждый запрос
+    private ResponseEntity<?> encodedUser(Long id, boolean acceptsGzip, String ifNoneMatch) {
+        EncodedResponse encoded = userService.getEncodedUserById(id);
+        if (encoded == null) {
             log.warn("🏁 Пользователь с ID {} не найден", id);
+            return ResponseEntity.ok().build();
+        }
+
+        boolean gzipped = acceptsGzip && encoded.gzip() != null;
+        String etag = encoded.etag(gzipped);
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            return notModified(id, etag);
         }
 
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag);
+        if (encoded.gzip() != null) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (gzipped) {
+            log.info("🏁 Возвращен готовый gzip JSON пользователя {} ({} байт)", id, encoded.gzip().length);
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded.gzip());
+        }
+        log.info("🏁 Возвращен готовый JSON пользователя {} ({} байт)", id, encoded.json().length);
+        return response.body(encoded.json());
+    }
+
+    private ResponseEntity<?> notModified(Long id, String etag) {
+        log.info("🏁 Пользователь {} не изменился с прошлого запроса (304 Not Modified)", id);
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    @GetMapping("/by-email")
+    public User getUserByEmail(@RequestParam String email) {
+        log.info("🌐 Получен HTTP GET запрос для пользователя с email: {}", email);
+        User user = userService.getUserByEmail(email);
+        if (user != null) {
+            log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
+        }
         return user;
     }
 
@@ -60,10 +129,54 @@ public class UserController {
     }
 
     @GetMapping("/cache/show")
-    public Map<Long, User> showCache() {
+    public ResponseEntity<Map<Long, User>> showCache(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("🌐 Получен запрос на просмотр содержимого кэша");
+
+        // ETag берется до снимка: он может только отстать от содержимого, но не опередить его
+        String etag = userService.getCacheEtag();
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            log.info("🏁 Кэш не изменился с прошлого запроса (304 Not Modified)");
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
         Map<Long, User> cacheContent = userService.getCache();
         log.info("🏁 Возвращено {} записей из кэша", cacheContent.size());
-        return cacheContent;
+        return ResponseEntity.ok().eTag(etag).body(cacheContent);
+    }
+
+    @GetMapping("/cache/hotkeys")
+    public List<HotKeyTracker.HotKey> showHotKeys(@RequestParam(defaultValue = "10") int limit) {
+        log.info("🌐 Получен запрос на просмотр горячих ключей");
+        List<HotKeyTracker.HotKey> hotKeys = userService.getHotKeys(limit);
+        log.info("🏁 Возвращено {} горячих ключей", hotKeys.size());
+        return hotKeys;
+    }
+
+    @GetMapping("/cache/cdc")
+    public Map<String, Object> showChangeFeed() {
+        log.info("🌐 Получен запрос на просмотр подписки кэша на журнал изменений");
+        return userService.getChangeFeedStats();
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> showCacheStats() {
+        log.info("🌐 Получен запрос на просмотр статистики кэша");
+        return userService.getCacheStats();
+    }
+
+    // Имитация медленной или недоступной БД, например ?latencyMs=2000 или ?failing=true; без параметров - сброс
+    @PostMapping("/database/faults")
+    public Map<String, Object> setDatabaseFaults(@RequestParam(defaultValue = "0") long latencyMs,
+                                                 @RequestParam(defaultValue = "false") boolean failing) {
+        log.info("🧪 Получен запрос на имитацию проблем БД");
+        return userService.setDatabaseFaults(Duration.ofMillis(latencyMs), failing);
+    }
+
+    // БД недоступна, а в кэше нет значения, которое еще можно отдать
+    @ExceptionHandler(StoreUnavailableException.class)
+    public ResponseEntity<String> handleStoreUnavailable(StoreUnavailableException e) {
+        log.warn("🔌 {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
     }
 }
@@ -1,23 +1,97 @@
 package com.prosoft.service;
 
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheEvents;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.EmailKeyWeigher;
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.Prefetcher;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.cache.UserWeigher;
+import com.prosoft.cache.WeightedCache;
+import com.prosoft.config.CacheProperties;
 import com.prosoft.model.User;
+import com.prosoft.store.ChangeEvent;
+import com.prosoft.store.ChangeFeedSubscriber;
+import com.prosoft.store.UserStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class UserService {
 
-    // Имитация базы данных
-    private final Map<Long, User> database = new HashMap<>();
+    // Имитация базы данных с журналом изменений (CDC)
+    private final UserStore database;
 
-    // Read-Through Cache - кэш сам загружает данные при их отсутствии
-    private final Map<Long, User> cache = new ConcurrentHashMap<>();
+    // Read-Through Cache - кэш сам загружает данные при их отсутствии, емкость в байтах (общий бюджет памяти JVM)
+    private final WeightedCache<Long, User> cache;
+
+    // Вторичный индекс email -> id: поиск по email идет дальше по обычному пути чтения по id
+    private final WeightedCache<String, Long> emailCache;
+
+    // Частота обращений по ключам - для поиска "горячих" пользователей
+    private final HotKeyTracker hotKeyTracker;
+
+    // Блокировки по ключу: загрузка промаха не пересекается с обновлением того же id
+    private final StripedKeyLocks keyLocks;
+
+    // Общий для кэшей JVM бюджет памяти (показывается в /cache/stats)
+    private final CacheRegistry cacheRegistry;
+
+    // Готовые JSON-ответы хранятся рядом с записями кэша (app.cache.encoded-responses)
+    private final UserResponseEncoder responseEncoder;
+
+    // Трасса обращений для офлайн-моделирования политик вытеснения (app.cache.trace)
+    private final AccessTraceRecorder traceRecorder;
+
+    // Устаревшие записи отдаются сразу с фоновой перезагрузкой, чтения БД - через автомат защиты (app.cache.stale)
+    private final StaleWhileRevalidate staleness;
+
+    // Предзагрузка ключей, которые по потоку чтений запросят следующими (app.cache.prefetch)
+    private final Prefetcher prefetcher;
+
+    // Подписка кэша на журнал изменений БД
+    private final CacheProperties cacheProperties;
+    private ChangeFeedSubscriber changeFeed;
+
+    // Дополнительные тестовые пользователи (нужны нагрузочному стенду loadtest)
+    @Value("${app.database.seed-users:0}")
+    private int seedUsers;
+
+    public UserService(HotKeyTracker hotKeyTracker, StripedKeyLocks keyLocks,
+                       UserStore database, CacheProperties cacheProperties,
+                       CacheRegistry cacheRegistry, UserResponseEncoder responseEncoder,
+                       AccessTraceRecorder traceRecorder, StaleWhileRevalidate staleness) {
+        this.hotKeyTracker = hotKeyTracker;
+        this.keyLocks = keyLocks;
+        this.database = database;
+        this.cacheProperties = cacheProperties;
+        this.cacheRegistry = cacheRegistry;
+        this.responseEncoder = responseEncoder;
+        this.traceRecorder = traceRecorder;
+        this.staleness = staleness;
+        // Вытеснение по весу не трогает "горячие" ключи
+        this.cache = cacheRegistry.create("users", new UserWeigher(), (id, user) -> hotKeyTracker.isHot(id));
+        this.emailCache = cacheRegistry.create("users-by-email", new EmailKeyWeigher(), (email, id) -> false);
+        CacheProperties.Prefetch prefetch = cacheProperties.getPrefetch();
+        this.prefetcher = new Prefetcher(prefetch.isEnabled(), prefetch.getStreams(), prefetch.getMaxStride(),
+                prefetch.getDepth(), prefetch.getAssociations(), prefetch.getSuccessors(), prefetch.getWindow(),
+                prefetch.getMinSupport(), prefetch.getBudgetPerSecond(), prefetch.getBatchSize(),
+                prefetch.getBatchDelay().toMillis(), id -> cache.ageNanos(id) >= 0, this::prefetchBatch);
+    }
 
     @PostConstruct
     public void init() {
@@ -25,8 +99,16 @@ public class UserService {
         database.put(1L, new User(1L, "Alice", "alice@example.com"));
         database.put(2L, new User(2L, "Bob", "bob@example.com"));
         database.put(3L, new User(3L, "Charlie", "charlie@example.com"));
+        for (long id = 4; id <= seedUsers; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com"));
+        }
 
         log.info("🔧 База данных инициализирована с {} пользователями", database.size());
+
+        // Кэш пока пуст - подписываемся с текущего конца журнала
+        changeFeed = new ChangeFeedSubscriber("user-cache", database.changeLog(), database.changeLog().tail(),
+                cacheProperties.getCdc().getBatchSize(), this::applyChanges, cache::clear);
+        changeFeed.start(cacheProperties.getCdc().getPollInterval());
     }
 
     /**
@@ -35,9 +117,23 @@ public class UserService {
      */
     public User getUserById(Long id) {
         log.info("🔍 Запрос пользователя с ID: {} через Read-Through кэш", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
 
-        // READ-THROUGH: computeIfAbsent автоматически загружает данные при их отсутствии
-        User user = cache.computeIfAbsent(id, this::loadUserFromDatabase);
+        // READ-THROUGH: computeIfAbsent автоматически загружает данные при их отсутствии.
+        // Попадание читается без блокировок, загрузка промаха - под read-блокировкой ключа.
+        // Устаревшая запись отдается сразу и обновляется в фоне, запись старше жесткого срока - перезагружается
+        WeightedCache.Timed<User> cached = cache.getTimed(id);
+        // Предсказанные следующие ключи загрузятся в фоне одной пачкой, а не отдельными промахами
+        prefetcher.onRead(id, cached != null);
+        User user;
+        if (cached == null) {
+            user = keyLocks.withReadLock(id, () -> cache.computeIfAbsent(id, this::loadUserFromDatabase));
+        } else if (staleness.serve(id, cached.ageNanos(), () -> reloadEntry(id))) {
+            user = cached.value();
+        } else {
+            user = reloadEntry(id);
+        }
 
         if (user != null) {
             log.info("🎯 CACHE HIT: Пользователь {} найден в кэше", id);
@@ -48,38 +144,237 @@ public class UserService {
         return user;
     }
 
+    /**
+     * Поиск по email: индекс email -> id в кэше, дальше - обычный путь чтения по id с его кэшем,
+     * поэтому попадание стоит столько же, сколько попадание по id. Запись индекса - только подсказка:
+     * найденный пользователь сверяется с email, а несовпавшая запись удаляется и ищется по индексу БД.
+     */
+    public User getUserByEmail(String email) {
+        log.info("🔍 Запрос пользователя с email: {}", email);
+        String key = UserStore.normalizeEmail(email);
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        Long cachedId = emailCache.get(key);
+        if (cachedId != null) {
+            User user = getUserById(cachedId);
+            if (user != null && key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+                log.info("🎯 CACHE HIT: email найден в индексе кэша (ID {})", cachedId);
+                return user;
+            }
+            emailCache.remove(key);
+        }
+
+        log.info("❌ CACHE MISS: email не найден в индексе кэша, ищем по индексу БД...");
+        Long id = staleness.load(() -> database.findIdByEmail(key));
+        User user = id == null ? null : getUserById(id);
+        if (user == null || !key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+            log.warn("⚠️  Пользователь с email {} не найден", email);
+            return null;
+        }
+        emailCache.put(key, id);
+        return user;
+    }
+
+    // Запись индекса email -> id уходит вместе с прежней версией пользователя, если email сменился
+    private void evictEmail(User previous, User current) {
+        String email = previous == null ? null : UserStore.normalizeEmail(previous.getEmail());
+        if (email != null && (current == null || !email.equals(UserStore.normalizeEmail(current.getEmail())))) {
+            emailCache.remove(email);
+        }
+    }
+
+    public boolean isEncodedResponsesEnabled() {
+        return cacheProperties.getEncodedResponses().isEnabled();
+    }
+
+    /**
+     * Ответ GET /api/users/{id} готовыми байтами: JSON строится один раз на версию записи кэша
+     * и сбрасывается вместе с ней (обновление, инвалидация, вытеснение)
+     */
+    public EncodedResponse getEncodedUserById(Long id) {
+        User user = getUserById(id);
+        return user == null ? null : responseFor(id, user);
+    }
+
+    /**
+     * ETag ответа с пользователем - считается один раз на версию записи кэша
+     */
+    public String getEtag(Long id, User user) {
+        return responseFor(id, user).etag();
+    }
+
+    /**
+     * Условный GET только по метаданным кэша, без обращения к БД и без сериализации.
+     * Возвращает ETag, если копия клиента актуальна, и null, если нужен обычный путь
+     * (пользователя нет в кэше, ETag для его версии еще не построен или версия клиента устарела).
+     */
+    public String getUnchangedEtag(Long id, String ifNoneMatch, boolean acceptsGzip) {
+        // Устаревшую запись проверяет обычный путь - он же запустит ее перезагрузку
+        long age = cache.ageNanos(id);
+        if (age < 0 || staleness.freshness(age) != StaleWhileRevalidate.Freshness.FRESH) {
+            return null;
+        }
+        EncodedResponse cached = cache.cachedAttachment(id);
+        if (cached == null) {
+            return null;
+        }
+        String etag = cached.etag(acceptsGzip && cached.gzip() != null);
+        if (!EntityTags.matches(ifNoneMatch, etag)) {
+            return null;
+        }
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+        log.info("📭 Версия пользователя {} у клиента актуальна (ETag {}), БД не читаем", id, etag);
+        return etag;
+    }
+
+    // Готовый ответ из кэша; если запись успели заменить, вытеснить или инвалидировать - кодируем user без сохранения
+    private EncodedResponse responseFor(Long id, User user) {
+        EncodedResponse encoded = cache.attachment(id, user, responseEncoder::encode, EncodedResponse::weight);
+        return encoded != null ? encoded : responseEncoder.encode(user);
+    }
+
+    // Удаление записи из кэша с причиной reason (событие Cache Invalidation в JFR)
+    private User invalidate(Long id, String reason) {
+        CacheEvents.invalidation("users", id, reason);
+        return cache.remove(id);
+    }
+
     // Метод-загрузчик для Read-Through кэша
     private User loadUserFromDatabase(Long id) {
         log.info("📖 READ-THROUGH: Автоматически загружаем пользователя {} из базы данных", id);
-        return database.get(id); // Просто возвращаем из in-memory Map
+        // Чтение через автомат защиты: при недоступной БД ошибка возвращается сразу.
+        // Длительность загрузки видна в JFR (событие Cache Load)
+        CacheEvents.LoadEvent event = CacheEvents.beginLoad("users", id);
+        User user = staleness.load(() -> database.get(id));
+        CacheEvents.endLoad(event, user != null);
+        return user;
+    }
+
+    /**
+     * Предзагрузка пачки одним запросом к БД - под read-блокировками всех ключей пачки, как загрузка промаха:
+     * обновление этих id не вклинится между чтением из БД и вставкой в кэш. Уже загруженные ключи не заменяются.
+     * Новая запись кэша не помечена как прочитанная - непригодившаяся предзагрузка вытесняется первой
+     */
+    private List<Long> prefetchBatch(List<Long> ids) {
+        return keyLocks.withReadLocks(ids, () -> {
+            Map<Long, User> rows = staleness.load(() -> database.getAll(ids));
+            List<Long> loaded = new ArrayList<>(rows.size());
+            rows.forEach((id, user) -> {
+                if (cache.computeIfAbsent(id, key -> user) == user) {
+                    loaded.add(id);
+                }
+            });
+            log.debug("🔮 Предзагружено {} из {} пользователей", loaded.size(), ids.size());
+            return loaded;
+        });
+    }
+
+    /**
+     * Перезагрузка записи, которая уже есть в кэше (computeIfAbsent вернул бы старое значение).
+     * Под той же read-блокировкой ключа, что и загрузка промаха
+     */
+    private User reloadEntry(Long id) {
+        return keyLocks.withReadLock(id, () -> {
+            User fresh = loadUserFromDatabase(id);
+            if (fresh == null) {
+                invalidate(id, "refresh");
+            } else {
+                cache.put(id, fresh);
+            }
+            return fresh;
+        });
     }
 
     public User updateUser(Long id, String name, String email) {
         log.info("✏️ Обновляем пользователя {}", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, id);
 
-        // Обновляем в БД (имитация)
-        User existingUser = database.get(id);
-        if (existingUser != null) {
-            existingUser.setName(name);
-            existingUser.setEmail(email);
-            database.put(id, existingUser);
+        // Чтение-изменение-запись строки - атомарно относительно других операций с этим id
+        return keyLocks.withWriteLock(id, () -> {
+            // Обновляем в БД (имитация)
+            User existingUser = database.get(id);
+            if (existingUser != null) {
+                existingUser.setName(name);
+                existingUser.setEmail(email);
+                database.put(id, existingUser);
 
-            // Инвалидируем кэш (удаляем старые данные)
-            log.info("🗑️ Удаляем пользователя {} из кэша (инвалидация)", id);
-            cache.remove(id);
-        }
+                // Инвалидацию кэша выполнит подписчик журнала изменений БД (applyChanges)
+                log.info("🗑️ Пользователь {} обновлен в БД, кэш будет инвалидирован через журнал изменений", id);
+            }
 
-        return existingUser;
+            return existingUser;
+        });
+    }
+
+    /**
+     * Обработка пачки событий журнала изменений БД: измененные пользователи удаляются из кэша,
+     * следующее чтение загрузит актуальную версию. Инвалидацию делает подписчик, а не метод записи.
+     */
+    private void applyChanges(List<ChangeEvent> batch) {
+        batch.stream()
+                .map(ChangeEvent::id)
+                .distinct()
+                .forEach(id -> evictEmail(invalidate(id, "cdc"), null));
+        log.debug("🔄 CDC: обработано {} событий, последний offset {}", batch.size(), batch.get(batch.size() - 1).offset());
+    }
+
+    public Map<String, Object> getChangeFeedStats() {
+        log.info("📡 Возвращаем состояние подписки кэша на журнал изменений");
+        return changeFeed.stats();
+    }
+
+    public List<HotKeyTracker.HotKey> getHotKeys(int limit) {
+        log.info("🔥 Возвращаем top-{} горячих ключей", limit);
+        return hotKeyTracker.hotKeys(limit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeFeed.close();
+        prefetcher.close();
     }
 
     public void clearCache() {
         log.info("🧹 Очищаем весь кэш! Было записей: {}", cache.size());
+        CacheEvents.invalidation("users", "*", "clear");
         cache.clear();
+        emailCache.clear();
         log.info("✅ Кэш успешно очищен");
     }
 
     public Map<Long, User> getCache() {
         log.info("📤 Возвращаем содержимое кэша клиенту. Размер кэша: {}", cache.size());
-        return new HashMap<>(cache);
+        return cache.snapshot();
+    }
+
+    /**
+     * Слабый ETag содержимого кэша: меняется при любой вставке, замене, удалении или вытеснении
+     */
+    public String getCacheEtag() {
+        return EntityTags.weak("cache", cache.modificationCount());
+    }
+
+    public Map<String, Object> getCacheStats() {
+        log.info("📊 Возвращаем статистику кэша: {} записей, {} байт", cache.size(), cache.weightedSize());
+        Map<String, Object> stats = cache.stats();
+        stats.put("memoryBudget", cacheRegistry.stats());
+        stats.put("stale", staleness.stats());
+        stats.put("trace", traceRecorder.stats());
+        stats.put("emailIndex", emailCache.stats());
+        stats.put("prefetch", prefetcher.stats());
+        return stats;
+    }
+
+    /**
+     * Имитация медленной или недоступной БД: задержка и отказ чтения по id
+     */
+    public Map<String, Object> setDatabaseFaults(Duration readLatency, boolean readFailing) {
+        log.warn("🧪 Имитация проблем БД: задержка чтения {} мс, отказ чтения: {}", readLatency.toMillis(), readFailing);
+        database.setReadFaults(readLatency, readFailing);
+        return database.readFaults();
     }
-}
\ No newline at end of file
+}
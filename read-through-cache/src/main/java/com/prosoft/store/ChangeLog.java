@@ -0,0 +1,57 @@
+package com.prosoft.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Упорядоченный журнал изменений (change data capture) - кольцевой буфер последних событий.
+ * Каждое событие получает монотонный offset, подписчики читают журнал со своего offset.
+ * Если подписчик отстал больше, чем на capacity событий, старые события уже перезаписаны -
+ * ему нужно пересинхронизироваться (см. oldestOffset).
+ */
+public class ChangeLog {
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+
+    // Следующий offset; события [tail - capacity, tail) доступны для чтения
+    private volatile long tail;
+
+    public ChangeLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new ChangeEvent[size];
+        this.mask = size - 1;
+    }
+
+    public synchronized ChangeEvent append(ChangeEvent.Type type, Long id, long version) {
+        long offset = tail;
+        ChangeEvent event = new ChangeEvent(offset, type, id, version);
+        ring[(int) (offset & mask)] = event;
+        tail = offset + 1; // Публикация: читатели видят событие только после записи в слот
+        return event;
+    }
+
+    /**
+     * До max событий начиная с from. Чтение останавливается на слоте, который уже перезаписан
+     */
+    public List<ChangeEvent> read(long from, int max) {
+        long end = Math.min(tail, from + max);
+        List<ChangeEvent> events = new ArrayList<>((int) Math.max(0, end - from));
+        for (long offset = from; offset < end; offset++) {
+            ChangeEvent event = ring[(int) (offset & mask)];
+            if (event == null || event.offset() != offset) {
+                break;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    public long tail() {
+        return tail;
+    }
+
+    public long oldestOffset() {
+        return Math.max(0, tail - ring.length);
+    }
+}
@@ -0,0 +1,12 @@
+package com.prosoft.store;
+
+/**
+ * БД не ответила: чтение завершилось ошибкой или автомат защиты (CircuitBreaker) не пропустил обращение.
+ * Ошибка временная - запрос можно повторить позже.
+ */
+public class StoreUnavailableException extends RuntimeException {
+
+    public StoreUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,167 @@
+package com.prosoft.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedCacheLoadingTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final WeightedCache<Long, String> cache = new WeightedCache<>("test", new MemoryBudget(0),
+            CacheNamespace.SHARED, (key, value) -> 16 + 2L * value.length(), (key, value) -> false);
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Медленная загрузка не блокирует другие ключи и рост таблицы")
+    void slowLoaderDoesNotBlockOtherKeys() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> slow = executor.submit(() -> cache.computeIfAbsent(1L, key -> {
+            started.countDown();
+            await(release);
+            return "slow";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Вставки вызывают рост таблицы - он прошел бы через корзину ключа 1
+        Future<?> others = executor.submit(() -> {
+            for (long key = 2; key <= 20_000; key++) {
+                cache.put(key, "v" + key);
+            }
+        });
+        others.get(5, TimeUnit.SECONDS);
+        assertEquals("v777", cache.get(777L));
+
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        assertEquals("slow", cache.peek(1L));
+    }
+
+    @Test
+    @DisplayName("Одновременные промахи по ключу ждут одну загрузку")
+    void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.computeIfAbsent(1L, key -> {
+                loads.incrementAndGet();
+                await(release);
+                return "loaded";
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Удаление ключа во время загрузки отменяет вставку загруженного значения")
+    void removeDuringLoadCancelsInsert() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> load = executor.submit(() -> cache.computeIfAbsent(1L, key -> {
+            started.countDown();
+            await(release);
+            return "stale";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        cache.remove(1L);
+        release.countDown();
+
+        assertEquals("stale", load.get(5, TimeUnit.SECONDS));
+        assertNull(cache.peek(1L));
+        assertEquals(0, cache.weightedSize());
+        assertEquals("fresh", cache.computeIfAbsent(1L, key -> "fresh"));
+    }
+
+    @Test
+    @DisplayName("Запись во время загрузки новее загруженного значения и остается в кэше")
+    void putDuringLoadWins() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> load = executor.submit(() -> cache.computeIfAbsent(1L, key -> {
+            started.countDown();
+            await(release);
+            return "loaded";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        cache.put(1L, "written");
+        release.countDown();
+
+        assertEquals("written", load.get(5, TimeUnit.SECONDS));
+        assertEquals("written", cache.peek(1L));
+    }
+
+    @Test
+    @DisplayName("Ошибка загрузчика получают все ожидающие, в кэш ничего не попадает")
+    void loaderFailureIsSharedAndNotCached() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> cache.computeIfAbsent(1L, key -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("БД недоступна");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> waiter = executor.submit(() -> cache.computeIfAbsent(1L, key -> "second"));
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> result : List.of(first, waiter)) {
+            Exception error = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof IllegalStateException, String.valueOf(error.getCause()));
+        }
+        assertNull(cache.peek(1L));
+        assertEquals("retry", cache.computeIfAbsent(1L, key -> "retry"));
+    }
+
+    @Test
+    @DisplayName("null от загрузчика не кэшируется, уже загруженное значение не перезагружается")
+    void nullIsNotCachedAndHitSkipsLoader() {
+        assertNull(cache.computeIfAbsent(1L, key -> null));
+        assertEquals(0, cache.size());
+
+        String value = cache.computeIfAbsent(1L, key -> "loaded");
+        assertSame(value, cache.computeIfAbsent(1L, key -> {
+            throw new AssertionError("загрузчик не должен вызываться при попадании");
+        }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("тест не отпустил загрузку");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.prosoft.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedCacheTest {
+
+    private static final Duration TTL = Duration.ofMillis(50);
+
+    private final Set<Long> pinnedKeys = ConcurrentHashMap.newKeySet();
+
+    @Test
+    @DisplayName("Счетчик изменений растет только при изменении содержимого")
+    void modificationCountTracksContentChanges() {
+        WeightedCache<Long, String> cache = cache(new MemoryBudget(0), CacheNamespace.SHARED);
+        cache.put(1L, "a");
+        long afterPut = cache.modificationCount();
+        assertEquals(1, afterPut);
+
+        // Чтения и операции над отсутствующими ключами содержимое не меняют
+        cache.get(1L);
+        cache.peek(1L);
+        cache.get(2L);
+        assertNull(cache.computeIfPresent(2L, (key, value) -> "x"));
+        assertNull(cache.remove(2L));
+        assertEquals(afterPut, cache.modificationCount());
+
+        cache.computeIfPresent(1L, (key, value) -> value + "b");
+        assertEquals(afterPut + 1, cache.modificationCount());
+        cache.computeIfPresent(1L, (key, value) -> null);
+        assertEquals(afterPut + 2, cache.modificationCount());
+        cache.put(1L, "c");
+        cache.remove(1L);
+        assertEquals(afterPut + 4, cache.modificationCount());
+    }
+
+    @Test
+    @DisplayName("Вытеснение и истечение срока жизни тоже считаются изменениями")
+    void evictionAndExpiryCountAsModifications() {
+        long entry = WeightedCache.ENTRY_OVERHEAD + weight("aaaa");
+        WeightedCache<Long, String> bounded = cache(new MemoryBudget(2 * entry), CacheNamespace.SHARED);
+        bounded.put(1L, "aaaa");
+        bounded.put(2L, "bbbb");
+        long before = bounded.modificationCount();
+        bounded.put(3L, "cccc");
+        assertEquals(2, bounded.size());
+        assertEquals(before + 2, bounded.modificationCount(), "вставка + вытеснение");
+
+        WeightedCache<Long, String> expiring = cache(new MemoryBudget(0), new CacheNamespace(0, true, TTL));
+        expiring.put(1L, "a");
+        sleep(TTL.multipliedBy(2));
+        long beforeExpiry = expiring.modificationCount();
+        assertNull(expiring.get(1L));
+        assertEquals(beforeExpiry + 1, expiring.modificationCount());
+    }
+
+    @Test
+    @DisplayName("Закрепленные записи не истекают по ttl пространства имен")
+    void pinnedEntriesDoNotExpire() {
+        WeightedCache<Long, String> cache = cache(new MemoryBudget(0), new CacheNamespace(0, true, TTL));
+        pinnedKeys.add(1L);
+        cache.put(1L, "pinned");
+        cache.put(2L, "plain");
+        long weightBefore = cache.weightedSize();
+
+        sleep(TTL.multipliedBy(2));
+
+        assertEquals("pinned", cache.get(1L));
+        assertEquals("pinned", cache.getTimed(1L).value());
+        assertNull(cache.get(2L));
+        assertEquals(1L, cache.stats().get("expirations"));
+        assertEquals(weightBefore - WeightedCache.ENTRY_OVERHEAD - weight("plain"), cache.weightedSize());
+
+        // Снятое закрепление возвращает записи обычный срок жизни
+        pinnedKeys.remove(1L);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    @DisplayName("Вытеснение держит вес в пределах бюджета и дает второй шанс прочитанным записям")
+    void evictionKeepsWithinByteBudget() {
+        long entry = WeightedCache.ENTRY_OVERHEAD + weight("aaaa");
+        MemoryBudget budget = new MemoryBudget(3 * entry);
+        WeightedCache<Long, String> cache = cache(budget, CacheNamespace.SHARED);
+        cache.put(1L, "aaaa");
+        cache.put(2L, "bbbb");
+        cache.put(3L, "cccc");
+        cache.get(1L);
+
+        cache.put(4L, "dddd");
+
+        // Ключ 1 прочитан и пропущен по биту обращения, вытеснен следующий по кругу
+        assertEquals("aaaa", cache.peek(1L));
+        assertNull(cache.peek(2L));
+        assertEquals(3, cache.size());
+
+        for (long key = 5; key <= 10; key++) {
+            cache.put(key, "eeee");
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(3 * entry, cache.weightedSize());
+        assertEquals(cache.weightedSize(), budget.usedBytes());
+        assertEquals(7L, cache.stats().get("evictions"));
+        assertEquals(7 * entry, cache.stats().get("evictedBytes"));
+    }
+
+    @Test
+    @DisplayName("Закрепленные записи вытеснение пропускает, даже если бюджет остается превышен")
+    void evictionSkipsPinnedEntries() {
+        long entry = WeightedCache.ENTRY_OVERHEAD + weight("aaaa");
+        MemoryBudget budget = new MemoryBudget(2 * entry);
+        WeightedCache<Long, String> cache = cache(budget, CacheNamespace.SHARED);
+        pinnedKeys.add(1L);
+        cache.put(1L, "aaaa");
+        cache.put(2L, "bbbb");
+
+        cache.put(3L, "cccc");
+
+        assertEquals("aaaa", cache.peek(1L));
+        assertNull(cache.peek(2L));
+        assertTrue((Long) cache.stats().get("pinnedSkips") >= 1);
+
+        // Когда закреплено все, вытеснять нечего: бюджет превышается, но записи не теряются
+        pinnedKeys.add(3L);
+        pinnedKeys.add(4L);
+        cache.put(4L, "dddd");
+
+        assertEquals(3, cache.size());
+        assertEquals(1L, cache.stats().get("evictions"));
+        assertTrue(budget.isExceeded());
+        assertEquals(3 * entry, budget.usedBytes());
+    }
+
+    @Test
+    @DisplayName("Истекшая запись удаляется при чтении и освобождает свой вес")
+    void expiredEntryIsRemovedAndUncharged() {
+        MemoryBudget budget = new MemoryBudget(0);
+        WeightedCache<Long, String> cache = cache(budget, new CacheNamespace(0, true, TTL));
+        cache.put(1L, "a");
+        cache.attachment(1L, cache.peek(1L), value -> "derived", derived -> 40);
+        assertEquals("a", cache.get(1L));
+
+        sleep(TTL.multipliedBy(2));
+
+        assertNull(cache.cachedAttachment(1L));
+        assertNull(cache.getTimed(1L));
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertEquals(0, budget.usedBytes());
+        assertEquals(1L, cache.stats().get("expirations"));
+
+        // Новая загрузка начинает срок жизни заново
+        cache.put(1L, "b");
+        assertEquals("b", cache.get(1L));
+    }
+
+    @Test
+    @DisplayName("Вес учитывается точно при замене, удалении и прикреплении производных данных")
+    void chargeFollowsReplaceRemoveAndAttachment() {
+        MemoryBudget budget = new MemoryBudget(0);
+        WeightedCache<Long, String> cache = cache(budget, CacheNamespace.SHARED);
+        long overhead = WeightedCache.ENTRY_OVERHEAD;
+
+        cache.put(1L, "aa");
+        cache.put(2L, "bbbb");
+        assertWeight(cache, budget, 2 * overhead + weight("aa") + weight("bbbb"));
+
+        // Замена списывает старый вес и начисляет новый
+        cache.put(1L, "aaaaaaaa");
+        assertWeight(cache, budget, 2 * overhead + weight("aaaaaaaa") + weight("bbbb"));
+        cache.computeIfPresent(2L, (key, value) -> "b");
+        assertWeight(cache, budget, 2 * overhead + weight("aaaaaaaa") + weight("b"));
+
+        // Прикрепленные данные строятся один раз и добавляют свой вес к записи
+        AtomicInteger built = new AtomicInteger();
+        String value = cache.peek(1L);
+        assertEquals("derived", cache.attachment(1L, value, v -> {
+            built.incrementAndGet();
+            return "derived";
+        }, derived -> 40));
+        assertEquals("derived", cache.attachment(1L, value, v -> "rebuilt", derived -> 1_000));
+        assertEquals("derived", cache.<String>cachedAttachment(1L));
+        assertEquals(1, built.get());
+        assertWeight(cache, budget, 2 * overhead + weight("aaaaaaaa") + weight("b") + 40);
+
+        // К другому значению (даже равному по equals) и к отсутствующему ключу ничего не прикрепляется
+        assertNull(cache.attachment(1L, new String("aaaaaaaa"), v -> "stale", derived -> 1_000));
+        assertNull(cache.attachment(3L, "c", v -> "missing", derived -> 1_000));
+        assertWeight(cache, budget, 2 * overhead + weight("aaaaaaaa") + weight("b") + 40);
+
+        // Замена сбрасывает прикрепленные данные вместе с их весом
+        cache.put(1L, "a");
+        assertNull(cache.cachedAttachment(1L));
+        assertWeight(cache, budget, 2 * overhead + weight("a") + weight("b"));
+
+        // Удаление записи с прикрепленными данными списывает и их
+        assertNotNull(cache.attachment(1L, cache.peek(1L), v -> "derived", derived -> 40));
+        cache.remove(1L);
+        assertWeight(cache, budget, overhead + weight("b"));
+        cache.computeIfPresent(2L, (key, current) -> null);
+        assertWeight(cache, budget, 0);
+
+        cache.put(3L, "c");
+        cache.clear();
+        assertWeight(cache, budget, 0);
+    }
+
+    private WeightedCache<Long, String> cache(MemoryBudget budget, CacheNamespace namespace) {
+        return new WeightedCache<>("test", budget, namespace, (key, value) -> weight(value),
+                (key, value) -> pinnedKeys.contains(key));
+    }
+
+    private static void assertWeight(WeightedCache<Long, String> cache, MemoryBudget budget, long expected) {
+        assertEquals(expected, cache.weightedSize());
+        assertEquals(expected, budget.usedBytes(), "бюджет расходится с весом кэша");
+    }
+
+    private static long weight(String value) {
+        return 16 + 2L * value.length();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.prosoft;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class WriteAroundCacheApp {
     public static void main(String[] args) {
         SpringApplication.run(WriteAroundCacheApp.class, args);
@@ -0,0 +1,146 @@
+package com.prosoft.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Трасса обращений к кэшу в компактном бинарном файле - для офлайн-моделирования политик вытеснения
+ * и размеров кэша (loadtest: TraceSimulatorApp).
+ *
+ * Формат: заголовок [int MAGIC][short VERSION][long время начала, мс от эпохи], затем записи по 8 байт:
+ * старшие 8 бит - операция (Op.ordinal), младшие 56 - id пользователя.
+ *
+ * Горячий путь только кладет событие в ограниченную очередь, в файл пачками пишет отдельный поток.
+ * Запрос никогда не ждет диск: если очередь переполнена, событие отбрасывается и учитывается в dropped.
+ */
+@Slf4j
+public class AccessTraceRecorder implements AutoCloseable {
+
+    public static final int MAGIC = 0x55545243; // "UTRC"
+    public static final short VERSION = 1;
+
+    private static final int BATCH = 4096;
+    private static final long KEY_MASK = (1L << 56) - 1;
+
+    public enum Op {
+        READ, WRITE, DELETE
+    }
+
+    private final Path path;
+    private final BlockingQueue<Long> queue;
+    private final Thread writer;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+
+    private AccessTraceRecorder(Path path, int queueCapacity) {
+        this.path = path;
+        this.queue = path == null ? null : new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = path == null ? null : Thread.ofPlatform().name("access-trace-writer").daemon().unstarted(this::writeLoop);
+    }
+
+    public static AccessTraceRecorder disabled() {
+        return new AccessTraceRecorder(null, 0);
+    }
+
+    /**
+     * Запись трассы в файл path (перезаписывается при каждом старте)
+     */
+    public static AccessTraceRecorder toFile(Path path, int queueCapacity) {
+        AccessTraceRecorder recorder = new AccessTraceRecorder(path, queueCapacity);
+        recorder.running = true;
+        recorder.writer.start();
+        log.info("📝 Трасса обращений к кэшу пишется в {}", path.toAbsolutePath());
+        return recorder;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public void record(Op op, Long id) {
+        if (!running || id == null) {
+            return;
+        }
+        if (queue.offer(((long) op.ordinal() << 56) | (id & KEY_MASK))) {
+            recorded.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(open(), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            List<Long> batch = new ArrayList<>(BATCH);
+            while (running || !queue.isEmpty()) {
+                Long first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    out.flush(); // простой - сбрасываем буфер, чтобы файл был читаем во время работы
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH - 1);
+                for (Long event : batch) {
+                    out.writeLong(event);
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            running = false;
+            log.error("❌ Запись трассы в {} остановлена", path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private OutputStream open() throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return Files.newOutputStream(path);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (isEnabled()) {
+            stats.put("path", path.toAbsolutePath().toString());
+            stats.put("recorded", recorded.sum());
+            stats.put("dropped", dropped.sum());
+            stats.put("queued", queue.size());
+        }
+        return stats;
+    }
+
+    /**
+     * Дописывает события из очереди и закрывает файл
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (writer == null || !running) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        log.info("📝 Трасса обращений закрыта: {} событий, отброшено {}", recorded.sum(), dropped.sum());
+    }
+}
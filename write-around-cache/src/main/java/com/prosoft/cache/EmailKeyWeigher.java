@@ -0,0 +1,13 @@
+package com.prosoft.cache;
+
+/**
+ * Оценка памяти, удерживаемой парой email -> id вторичного индекса в кэше:
+ * строка email с массивом байт и объект Long id (раскладка та же, что в UserWeigher)
+ */
+public class EmailKeyWeigher implements Weigher<String, Long> {
+
+    @Override
+    public long weigh(String email, Long id) {
+        return UserWeigher.stringBytes(email) + UserWeigher.LONG_BYTES;
+    }
+}
@@ -0,0 +1,81 @@
+package com.prosoft.cache;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий бюджет памяти для всех взвешенных кэшей одной JVM.
+ * Каждый кэш списывает из бюджета оценку байт своих записей; когда бюджет превышен,
+ * кэш, в который идет вставка, вытесняет свои записи, пока занятый объем не вернется в лимит.
+ * С квотами (CacheNamespace) место возвращают кэши, занявшие больше гарантированного им, начиная
+ * с самого большого превышения (reclaim): кэш в пределах квоты свои записи не теряет, а "шумный"
+ * кэш не вытесняет остальные.
+ */
+public class MemoryBudget {
+
+    private final long limitBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Map<String, WeightedCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param limitBytes лимит в байтах, 0 - без ограничения
+     */
+    public MemoryBudget(long limitBytes) {
+        this.limitBytes = limitBytes > 0 ? limitBytes : Long.MAX_VALUE;
+    }
+
+    void register(String name, WeightedCache<?, ?> cache) {
+        if (caches.putIfAbsent(name, cache) != null) {
+            throw new IllegalStateException("Кэш с именем " + name + " уже использует этот бюджет памяти");
+        }
+    }
+
+    void charge(long deltaBytes) {
+        usedBytes.addAndGet(deltaBytes);
+    }
+
+    /**
+     * Бюджет превышен: вытесняют кэши, занявшие больше гарантированного, от самого большого превышения,
+     * пока занятый объем не вернется в лимит
+     */
+    void reclaim() {
+        List<WeightedCache<?, ?>> borrowers = caches.values().stream()
+                .filter(WeightedCache::mustShrink)
+                .sorted(Comparator.comparingLong(WeightedCache<?, ?>::overGuaranteeBytes).reversed())
+                .toList();
+        for (WeightedCache<?, ?> cache : borrowers) {
+            if (!isExceeded()) {
+                return;
+            }
+            cache.shrink();
+        }
+    }
+
+    public boolean isExceeded() {
+        return usedBytes.get() > limitBytes;
+    }
+
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    public long limitBytes() {
+        return limitBytes;
+    }
+
+    public Map<String, Object> stats() {
+        long used = usedBytes.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limitBytes", limitBytes == Long.MAX_VALUE ? 0 : limitBytes);
+        stats.put("usedBytes", used);
+        stats.put("usedPercent", limitBytes == Long.MAX_VALUE ? 0.0 : Math.round(1000.0 * used / limitBytes) / 10.0);
+        Map<String, Long> perCache = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> perCache.put(name, cache.weightedSize()));
+        stats.put("caches", perCache);
+        return stats;
+    }
+}
@@ -1,10 +1,33 @@
 package com.prosoft.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
 import com.prosoft.model.User;
 import com.prosoft.service.UserService;
+import com.prosoft.store.StoreUnavailableException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -13,23 +36,88 @@ import java.util.Map;
 public class UserController {
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserService userService) {
+    // Сколько операций пакетного запроса применяется к БД и кэшу за один раз
+    @Value("${app.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    public UserController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/{id}")
-    public User getUser(@PathVariable Long id) {
+    public ResponseEntity<?> getUser(@PathVariable Long id,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("🌐 Получен HTTP GET запрос для пользователя ID: {}", id);
+        boolean acceptsGzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        // Условный GET: версия клиента совпала с версией в кэше - 304 без обращения к БД и без сериализации
+        if (ifNoneMatch != null) {
+            String etag = userService.getUnchangedEtag(id, ifNoneMatch, acceptsGzip);
+            if (etag != null) {
+                return notModified(id, etag);
+            }
+        }
+
+        if (userService.isEncodedResponsesEnabled()) {
+            return encodedUser(id, acceptsGzip, ifNoneMatch);
+        }
 
         User user = userService.getUserById(id);
+        if (user == null) {
+            log.warn("🏁 Пользователь с ID {} не найден", id);
+            return ResponseEntity.ok().build();
+        }
 
-        if (user != null) {
-            log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
-        } else {
+        String etag = userService.getEtag(id, user);
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            return notModified(id, etag);
+        }
+        log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
+        return ResponseEntity.ok().eTag(etag).body(user);
+    }
+
+    // Попадания в кэш отдаются готовыми байтами JSON (или gzip) - без сериализации на каждый запрос
+    private ResponseEntity<?> encodedUser(Long id, boolean acceptsGzip, String ifNoneMatch) {
+        EncodedResponse encoded = userService.getEncodedUserById(id);
+        if (encoded == null) {
             log.warn("🏁 Пользователь с ID {} не найден", id);
+            return ResponseEntity.ok().build();
         }
 
+        boolean gzipped = acceptsGzip && encoded.gzip() != null;
+        String etag = encoded.etag(gzipped);
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            return notModified(id, etag);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag);
+        if (encoded.gzip() != null) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (gzipped) {
+            log.info("🏁 Возвращен готовый gzip JSON пользователя {} ({} байт)", id, encoded.gzip().length);
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded.gzip());
+        }
+        log.info("🏁 Возвращен готовый JSON пользователя {} ({} байт)", id, encoded.json().length);
+        return response.body(encoded.json());
+    }
+
+    private ResponseEntity<?> notModified(Long id, String etag) {
+        log.info("🏁 Пользователь {} не изменился с прошлого запроса (304 Not Modified)", id);
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    @GetMapping("/by-email")
+    public User getUserByEmail(@RequestParam String email) {
+        log.info("🌐 Получен HTTP GET запрос для пользователя с email: {}", email);
+        User user = userService.getUserByEmail(email);
+        if (user != null) {
+            log.info("🏁 Успешно возвращен пользователь: {} ({})", user.getName(), user.getId());
+        }
         return user;
     }
 
@@ -67,6 +155,83 @@ public class UserController {
         log.info("🏁 Успешно удален пользователь: {}", id);
     }
 
+    /**
+     * Пакет операций потоком: NDJSON (объект на строку) или JSON-массив объектов
+     * {"op":"CREATE|UPDATE|DELETE","id":..,"name":..,"email":..}. Запрос читается по мере поступления
+     * и применяется пачками по app.batch.chunk-size, результат каждой операции уходит клиенту
+     * строкой NDJSON сразу после применения ее пачки - тело целиком в памяти не держится.
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public void batch(InputStream body, HttpServletResponse response) throws IOException {
+        log.info("🌐 Получен HTTP POST запрос с пакетом операций");
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+
+        List<BatchOperation> chunk = new ArrayList<>(batchChunkSize);
+        long applied = 0;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                chunk.add(readOperation(parser.readValueAsTree()));
+                if (chunk.size() >= batchChunkSize) {
+                    applied += applyChunk(chunk, applied, out);
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            // Поток оборвался на некорректном JSON: прочитанное применяем, остаток не разобрать
+            applied += applyChunk(chunk, applied, out);
+            writeResult(out, new BatchResult(applied, null, null, BatchResult.Status.INVALID,
+                    "Некорректный JSON: " + e.getOriginalMessage()));
+            out.flush();
+            log.warn("🏁 Пакет прерван на операции {}: некорректный JSON", applied);
+            return;
+        }
+        applied += applyChunk(chunk, applied, out);
+        log.info("🏁 Пакет обработан: {} операций", applied);
+    }
+
+    // Элемент с неверными полями (например, неизвестная op) не обрывает поток, а получает результат INVALID
+    private BatchOperation readOperation(JsonNode node) {
+        try {
+            return objectMapper.treeToValue(node, BatchOperation.class);
+        } catch (JsonProcessingException e) {
+            return BatchOperation.unreadable("Некорректная операция: " + e.getOriginalMessage());
+        }
+    }
+
+    private int applyChunk(List<BatchOperation> chunk, long firstIndex, OutputStream out) throws IOException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        List<BatchResult> results;
+        try {
+            results = userService.applyBatch(chunk, firstIndex);
+        } catch (RuntimeException e) {
+            log.warn("🏁 Пачка из {} операций не применена: {}", chunk.size(), e.getMessage());
+            results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                results.add(BatchResult.error(firstIndex + i, chunk.get(i), BatchResult.Status.FAILED, e.getMessage()));
+            }
+        }
+        for (BatchResult result : results) {
+            writeResult(out, result);
+        }
+        out.flush();
+
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+
+    private void writeResult(OutputStream out, BatchResult result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+    }
+
     @PostMapping("/cache/clear")
     public String clearCache() {
         log.info("🌐 Получен запрос на очистку кэша");
@@ -77,10 +242,54 @@ public class UserController {
     }
 
     @GetMapping("/cache/show")
-    public Map<Long, User> showCache() {
+    public ResponseEntity<Map<Long, User>> showCache(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("🌐 Получен запрос на просмотр содержимого кэша");
+
+        // ETag берется до снимка: он может только отстать от содержимого, но не опередить его
+        String etag = userService.getCacheEtag();
+        if (EntityTags.matches(ifNoneMatch, etag)) {
+            log.info("🏁 Кэш не изменился с прошлого запроса (304 Not Modified)");
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
         Map<Long, User> cacheContent = userService.getCache();
         log.info("🏁 Возвращено {} записей из кэша", cacheContent.size());
-        return cacheContent;
+        return ResponseEntity.ok().eTag(etag).body(cacheContent);
+    }
+
+    @GetMapping("/cache/hotkeys")
+    public List<HotKeyTracker.HotKey> showHotKeys(@RequestParam(defaultValue = "10") int limit) {
+        log.info("🌐 Получен запрос на просмотр горячих ключей");
+        List<HotKeyTracker.HotKey> hotKeys = userService.getHotKeys(limit);
+        log.info("🏁 Возвращено {} горячих ключей", hotKeys.size());
+        return hotKeys;
+    }
+
+    @GetMapping("/cache/cdc")
+    public Map<String, Object> showChangeFeed() {
+        log.info("🌐 Получен запрос на просмотр подписки кэша на журнал изменений");
+        return userService.getChangeFeedStats();
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> showCacheStats() {
+        log.info("🌐 Получен запрос на просмотр статистики кэша");
+        return userService.getCacheStats();
+    }
+
+    // Имитация медленной или недоступной БД, например ?latencyMs=2000 или ?failing=true; без параметров - сброс
+    @PostMapping("/database/faults")
+    public Map<String, Object> setDatabaseFaults(@RequestParam(defaultValue = "0") long latencyMs,
+                                                 @RequestParam(defaultValue = "false") boolean failing) {
+        log.info("🧪 Получен запрос на имитацию проблем БД");
+        return userService.setDatabaseFaults(Duration.ofMillis(latencyMs), failing);
+    }
+
+    // БД недоступна, а в кэше нет значения, которое еще можно отдать
+    @ExceptionHandler(StoreUnavailableException.class)
+    public ResponseEntity<String> handleStoreUnavailable(StoreUnavailableException e) {
+        log.warn("🔌 {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
     }
-}
\ No newline at end of file
+}
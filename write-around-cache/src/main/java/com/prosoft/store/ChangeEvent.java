@@ -0,0 +1,11 @@
+package com.prosoft.store;
+
+/**
+ * Событие журнала изменений БД: что произошло с пользователем и какая версия строки получилась
+ */
+public record ChangeEvent(long offset, Type type, Long id, long version) {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+}
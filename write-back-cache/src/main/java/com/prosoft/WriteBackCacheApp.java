@@ -2,10 +2,12 @@ package com.prosoft;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class WriteBackCacheApp {
     public static void main(String[] args) {
         SpringApplication.run(WriteBackCacheApp.class, args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,268 @@
+package com.prosoft.cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * События JDK Flight Recorder для операций кэша: попадание, промах, загрузка из БД, вытеснение, инвалидация
+ * и сброс пачки write-back изменений в БД.
+ *
+ * Пока запись JFR не идет, вызов стоит одну проверку флага: объект события не покидает метод,
+ * и JIT убирает его выделение (escape analysis), а поля заполняются только у включенного события.
+ * Частые события (попадание, промах) по умолчанию выключены и пишутся с выборкой (sampleRate),
+ * загрузки - только дольше порога (threshold). Настройки - в профиле jfr/cache-events.jfc в корне репозитория.
+ */
+public final class CacheEvents {
+
+    private CacheEvents() {
+    }
+
+    public static void hit(String cache, Object key) {
+        HitEvent event = new HitEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.commit();
+        }
+    }
+
+    public static void miss(String cache, Object key) {
+        MissEvent event = new MissEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.commit();
+        }
+    }
+
+    /**
+     * Начало загрузки из БД; длительность считается до {@link #endLoad}
+     */
+    public static LoadEvent beginLoad(String cache, Object key) {
+        LoadEvent event = new LoadEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.begin();
+        }
+        return event;
+    }
+
+    public static void endLoad(LoadEvent event, boolean found) {
+        if (event.isEnabled()) {
+            event.found = found;
+            event.commit();
+        }
+    }
+
+    public static void eviction(String cache, Object key, long bytes) {
+        EvictionEvent event = new EvictionEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * @param reason причина: cdc (журнал изменений), refresh (запись пропала из БД), write / delete
+     *               (запись или удаление через сервис), clear (очистка всего кэша, ключ "*")
+     */
+    public static void invalidation(String cache, Object key, String reason) {
+        InvalidationEvent event = new InvalidationEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /**
+     * Начало сброса пачки в БД; oldestAge - возраст самого старого изменения (считается только у включенного события)
+     */
+    public static FlushEvent beginFlush(LongSupplier oldestAgeNanos) {
+        FlushEvent event = new FlushEvent();
+        if (event.isEnabled()) {
+            event.lag = oldestAgeNanos.getAsLong();
+            event.begin();
+        }
+        return event;
+    }
+
+    public static void endFlush(FlushEvent event, int batchSize, int written, int remainingDirty) {
+        if (event.isEnabled()) {
+            event.batchSize = batchSize;
+            event.written = written;
+            event.remainingDirty = remainingDirty;
+            event.commit();
+        }
+    }
+
+    @Name("com.prosoft.cache.Hit")
+    @Label("Cache Hit")
+    @Category({"Cache"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class HitEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Name("sampleRate")
+        @Label("Sample Rate")
+        @SettingDefinition
+        protected boolean sampleRate(SampleRate rate) {
+            return rate.accept();
+        }
+    }
+
+    @Name("com.prosoft.cache.Miss")
+    @Label("Cache Miss")
+    @Category({"Cache"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class MissEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Name("sampleRate")
+        @Label("Sample Rate")
+        @SettingDefinition
+        protected boolean sampleRate(SampleRate rate) {
+            return rate.accept();
+        }
+    }
+
+    @Name("com.prosoft.cache.Load")
+    @Label("Cache Load")
+    @Description("Загрузка значения из БД при промахе или фоновой перезагрузке")
+    @Category({"Cache"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class LoadEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("com.prosoft.cache.Eviction")
+    @Label("Cache Eviction")
+    @Category({"Cache"})
+    @StackTrace(false)
+    public static final class EvictionEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Label("Released Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.prosoft.cache.Invalidation")
+    @Label("Cache Invalidation")
+    @Category({"Cache"})
+    @StackTrace(false)
+    public static final class InvalidationEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Key")
+        String key;
+
+        @Label("Reason")
+        String reason;
+    }
+
+    @Name("com.prosoft.cache.WriteBackFlush")
+    @Label("Write-Back Flush")
+    @Description("Сброс пачки изменений из буфера write-back в БД")
+    @Category({"Cache"})
+    @StackTrace(false)
+    public static final class FlushEvent extends Event {
+
+        @Label("Batch Size")
+        int batchSize;
+
+        @Label("Written")
+        int written;
+
+        @Label("Remaining Dirty")
+        int remainingDirty;
+
+        @Label("Lag")
+        @Description("Возраст самого старого несброшенного изменения перед сбросом")
+        @Timespan(Timespan.NANOSECONDS)
+        long lag;
+    }
+
+    /**
+     * Выборка для частых событий: значение N - записывается в среднем одно событие из N.
+     * Если идут несколько записей JFR с разными значениями, действует самое частое (наименьшее N).
+     */
+    public static final class SampleRate extends SettingControl {
+
+        private volatile int rate = 1;
+
+        @Override
+        public String combine(Set<String> values) {
+            return String.valueOf(values.stream().mapToInt(SampleRate::parse).min().orElse(1));
+        }
+
+        @Override
+        public void setValue(String value) {
+            rate = parse(value);
+        }
+
+        @Override
+        public String getValue() {
+            return String.valueOf(rate);
+        }
+
+        boolean accept() {
+            int current = rate;
+            return current <= 1 || ThreadLocalRandom.current().nextInt(current) == 0;
+        }
+
+        private static int parse(String value) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+    }
+}
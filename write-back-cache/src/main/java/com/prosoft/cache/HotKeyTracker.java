@@ -0,0 +1,139 @@
+package com.prosoft.cache;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Поиск "горячих" ключей: Count-Min Sketch оценивает частоту каждого ключа,
+ * а небольшой набор top-K хранит кандидатов с наибольшей оценкой.
+ *
+ * Горячий путь - несколько атомарных инкрементов без блокировок. Блокировка берется только
+ * когда новый ключ претендует на место в top-K. Счетчики периодически делятся пополам,
+ * поэтому оценки отражают недавний трафик, а не всю историю.
+ */
+public class HotKeyTracker {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int topK;
+    private final int sampleRate;
+    private final long decayIntervalNanos;
+
+    private final AtomicLongArray counters;
+    private final Set<Long> top = ConcurrentHashMap.newKeySet();
+    private final Object topLock = new Object();
+    private volatile long topThreshold;
+    private final AtomicLong nextDecayAt;
+
+    /**
+     * @param width           ширина строки sketch (округляется вверх до степени двойки, не больше 65536)
+     * @param topK            сколько кандидатов держать
+     * @param sampleRate      учитывать каждое N-е обращение (1 - все), снижает накладные расходы при большом RPS
+     * @param decayIntervalMs период "старения" - счетчики делятся пополам
+     */
+    public HotKeyTracker(int width, int topK, int sampleRate, long decayIntervalMs) {
+        this.width = Math.min(1 << 16, Math.max(16, Integer.highestOneBit(width - 1) << 1));
+        this.topK = topK;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.decayIntervalNanos = decayIntervalMs * 1_000_000;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+        this.nextDecayAt = new AtomicLong(System.nanoTime() + decayIntervalNanos);
+    }
+
+    public void record(Long key) {
+        if (key == null || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return;
+        }
+        decayIfDue();
+
+        long hash = spread(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+
+        if (estimate > topThreshold && !top.contains(key)) {
+            offer(key);
+        }
+    }
+
+    /**
+     * Ключ сейчас входит в top-K (например, чтобы не вытеснять его из кэша)
+     */
+    public boolean isHot(Long key) {
+        return top.contains(key);
+    }
+
+    /**
+     * Самые частые ключи по убыванию оценки числа обращений за последние интервалы
+     */
+    public List<HotKey> hotKeys(int limit) {
+        return top.stream()
+                .map(key -> new HotKey(key, estimate(key) * sampleRate))
+                .sorted(Comparator.comparingLong(HotKey::hits).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private void offer(Long key) {
+        synchronized (topLock) {
+            if (!top.add(key)) {
+                return;
+            }
+            if (top.size() > topK) {
+                top.stream()
+                        .min(Comparator.comparingLong(this::estimate))
+                        .ifPresent(top::remove);
+            }
+            topThreshold = top.size() < topK
+                    ? 0
+                    : top.stream().mapToLong(this::estimate).min().orElse(0);
+        }
+    }
+
+    private long estimate(Long key) {
+        long hash = spread(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    // Старение: раз в decayInterval ровно один поток делит все счетчики пополам
+    private void decayIfDue() {
+        long deadline = nextDecayAt.get();
+        long now = System.nanoTime();
+        if (now < deadline || !nextDecayAt.compareAndSet(deadline, now + decayIntervalNanos)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, value -> value >> 1);
+        }
+        topThreshold >>= 1;
+    }
+
+    private int index(long hash, int row) {
+        // Каждая строка берет свои 16 бит хеша
+        return row * width + (int) ((hash >>> (row * 16)) & (width - 1));
+    }
+
+    // Финализатор MurmurHash3 - перемешивает последовательные id
+    private static long spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    public record HotKey(Long id, long hits) {
+    }
+}
@@ -0,0 +1,285 @@
+package com.prosoft.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Очередь ключей на сброс в БД, разбитая на N упорядоченных партиций.
+ *
+ * Ключ хешируется на одну партицию, у каждой партиции свой FIFO и свой поток. Поэтому записи одного ключа
+ * никогда не идут в БД параллельно и не обгоняют друг друга, а разные партиции пишут одновременно -
+ * пропускная способность сброса растет с числом ядер.
+ *
+ * Поток партиции работает в своем цикле и ни с кем не синхронизируется: спит, пока его очередь пуста,
+ * просыпается при добавлении ключа и сам выбирает интервал и размер пачки (Pacing) по своей очереди,
+ * возрасту ее головы и своей скорости записи. Медленная или перегруженная партиция не задерживает
+ * остальные. Перекос нагрузки виден по отставанию партиций в stats().
+ */
+@Slf4j
+public class PartitionedFlushQueue implements AutoCloseable {
+
+    /**
+     * Темп сброса, который каждая партиция применяет к своей очереди
+     */
+    public interface Pacing {
+
+        /**
+         * Через сколько наносекунд сбрасывать партицию: 0 - сейчас, меньше 0 - ждать новых ключей
+         */
+        long delayNanos(int queued, long headAgeNanos, long sinceLastFlushNanos);
+
+        /**
+         * Размер пачки по средней длительности записи одного ключа этой партицией (0 - замеров еще нет)
+         */
+        int batchSize(int queued, double writeNanosEwma);
+    }
+
+    private final Partition[] partitions;
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean running;
+
+    // Задаются в start() до запуска потоков партиций
+    private Predicate<Long> flush;
+    private ToLongFunction<Long> ageOf;
+    private Pacing pacing;
+
+    /**
+     * @param partitions число партиций, 0 - по числу ядер
+     */
+    public PartitionedFlushQueue(String name, int partitions) {
+        int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            this.partitions[i] = new Partition(name + "-" + i);
+        }
+    }
+
+    /**
+     * Запуск потоков партиций. flush возвращает true, если ключ записан, ageOf - возраст ключа в наносекундах.
+     */
+    public void start(Predicate<Long> flush, ToLongFunction<Long> ageOf, Pacing pacing) {
+        this.flush = flush;
+        this.ageOf = ageOf;
+        this.pacing = pacing;
+        running = true;
+        for (Partition partition : partitions) {
+            partition.worker.start();
+        }
+    }
+
+    public void add(Long key) {
+        Partition partition = partitionFor(key);
+        partition.queue.add(key);
+        size.incrementAndGet();
+        if (partition.queued.getAndIncrement() == 0) {
+            LockSupport.unpark(partition.worker); // Поток пустой партиции спит до первого ключа
+        }
+    }
+
+    /**
+     * Разбудить все партиции, чтобы они пересчитали темп (например, когда растет давление записей)
+     */
+    public void wakeUp() {
+        for (Partition partition : partitions) {
+            LockSupport.unpark(partition.worker);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int partitions() {
+        return partitions.length;
+    }
+
+    /**
+     * Синхронный сброс всех партиций в вызывающем потоке (очистка кэша, остановка). Каждый ключ,
+     * стоявший в очереди на момент вызова, пробуется один раз; с потоком партиции сброс не пересекается.
+     * Результат - число разобранных ключей.
+     */
+    public int drainNow() {
+        int polled = 0;
+        for (Partition partition : partitions) {
+            polled += partition.flushBatch(partition.queued.get());
+        }
+        return polled;
+    }
+
+    /**
+     * Возраст самого старого ключа в голове партиций
+     */
+    public long oldestAgeNanos() {
+        long oldest = 0;
+        for (Partition partition : partitions) {
+            oldest = Math.max(oldest, partition.headAgeNanos());
+        }
+        return oldest;
+    }
+
+    /**
+     * Средняя по партициям длительность записи одного ключа (0 - замеров еще нет)
+     */
+    public double writeNanosEwma() {
+        double sum = 0;
+        int measured = 0;
+        for (Partition partition : partitions) {
+            if (partition.writeNanosEwma > 0) {
+                sum += partition.writeNanosEwma;
+                measured++;
+            }
+        }
+        return measured == 0 ? 0 : sum / measured;
+    }
+
+    /**
+     * Время до ближайшего сброса среди партиций (меньше 0 - все партиции ждут новых ключей)
+     */
+    public long nextFlushDelayNanos() {
+        long next = -1;
+        for (Partition partition : partitions) {
+            long delay = partition.delayNanos();
+            if (delay >= 0 && (next < 0 || delay < next)) {
+                next = delay;
+            }
+        }
+        return next;
+    }
+
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            Partition partition = partitions[i];
+            Map<String, Object> partitionStats = new LinkedHashMap<>();
+            partitionStats.put("partition", i);
+            partitionStats.put("queued", partition.queued.get());
+            partitionStats.put("lagMs", TimeUnit.NANOSECONDS.toMillis(partition.headAgeNanos()));
+            partitionStats.put("flushed", partition.flushed.sum());
+            partitionStats.put("lastBatchSize", partition.lastBatchSize);
+            partitionStats.put("lastBatchMs", partition.lastBatchNanos / 1_000_000.0);
+            partitionStats.put("writeMicros", partition.writeNanosEwma / 1000);
+            partitionStats.put("nextBatchSize", pacing.batchSize(partition.queued.get(), partition.writeNanosEwma));
+            partitionStats.put("nextFlushDelayMs", TimeUnit.NANOSECONDS.toMillis(Math.max(partition.delayNanos(), 0)));
+            stats.add(partitionStats);
+        }
+        return stats;
+    }
+
+    private Partition partitionFor(Long key) {
+        // Перемешивание битов: последовательные id расходятся по партициям равномерно
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return partitions[(int) Math.floorMod(hash ^ (hash >>> 32), (long) partitions.length)];
+    }
+
+    /**
+     * Остановка потоков партиций: текущие пачки дописываются, оставшиеся ключи разбирает drainNow()
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        wakeUp();
+        for (Partition partition : partitions) {
+            if (partition.worker.isAlive()) {
+                partition.worker.join(TimeUnit.SECONDS.toMillis(5));
+                if (partition.worker.isAlive()) {
+                    log.warn("⚠️  Поток сброса {} не завершился за 5 секунд", partition.worker.getName());
+                }
+            }
+        }
+    }
+
+    private final class Partition {
+
+        final Queue<Long> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final Thread worker;
+        // Пачки партиции не пересекаются: поток партиции и drainNow() разбирают очередь по очереди
+        final ReentrantLock batchLock = new ReentrantLock();
+        final LongAdder flushed = new LongAdder();
+        volatile int lastBatchSize;
+        volatile long lastBatchNanos;
+        volatile long lastFlushAt = System.nanoTime();
+        // Скользящее среднее времени записи одного ключа этой партицией
+        volatile double writeNanosEwma;
+
+        Partition(String threadName) {
+            this.worker = new Thread(this::run, threadName);
+            this.worker.setDaemon(true);
+        }
+
+        private void run() {
+            while (running) {
+                long delay = delayNanos();
+                if (delay < 0) {
+                    LockSupport.park(this);
+                } else if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                } else {
+                    try {
+                        flushBatch(pacing.batchSize(queued.get(), writeNanosEwma));
+                    } catch (Exception e) {
+                        log.error("Ошибка сброса партиции {}: ", worker.getName(), e);
+                    }
+                }
+                // После пробуждения (новый ключ, wakeUp, таймаут) темп пересчитывается заново
+            }
+        }
+
+        long delayNanos() {
+            return pacing.delayNanos(queued.get(), headAgeNanos(), System.nanoTime() - lastFlushAt);
+        }
+
+        int flushBatch(int limit) {
+            batchLock.lock();
+            try {
+                CacheEvents.FlushEvent event = CacheEvents.beginFlush(this::headAgeNanos);
+                long started = System.nanoTime();
+                int polled = 0;
+                int written = 0;
+                Long key;
+                while (polled < limit && (key = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    size.decrementAndGet();
+                    polled++;
+                    if (flush.test(key)) {
+                        written++;
+                    }
+                }
+                long finished = System.nanoTime();
+                CacheEvents.endFlush(event, polled, written, size.get());
+
+                flushed.add(written);
+                lastBatchSize = polled;
+                lastBatchNanos = finished - started;
+                lastFlushAt = finished;
+                if (written > 0) {
+                    double perWrite = (double) (finished - started) / written;
+                    double ewma = writeNanosEwma;
+                    writeNanosEwma = ewma == 0 ? perWrite : ewma * 0.8 + perWrite * 0.2;
+                    log.info("✅ {}: В БД записано {} ключей, в очереди осталось: {}", worker.getName(), written, size.get());
+                }
+                return polled;
+            } finally {
+                batchLock.unlock();
+            }
+        }
+
+        long headAgeNanos() {
+            Long head = queue.peek();
+            return head == null ? 0 : ageOf.applyAsLong(head);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.prosoft.cache;
+
+import com.prosoft.store.CircuitBreaker;
+import com.prosoft.store.StoreUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Мягкий и жесткий срок жизни записей кэша: stale-while-revalidate и stale-if-error.
+ *
+ * - моложе softTtl - значение отдается как есть
+ * - между softTtl и hardTtl - устаревшее значение отдается сразу, запись обновляет одна фоновая
+ *   перезагрузка на ключ; пока автомат защиты БД разомкнут, перезагрузка не запускается
+ * - старше hardTtl - значение не отдается, нужна синхронная загрузка (при недоступной БД - ошибка)
+ *
+ * Все чтения БД идут через автомат защиты (load): пока он разомкнут, промах завершается ошибкой сразу,
+ * а запрос не ждет медленную или недоступную БД.
+ */
+@Slf4j
+public class StaleWhileRevalidate implements AutoCloseable {
+
+    public enum Freshness {
+        FRESH, STALE, EXPIRED
+    }
+
+    private final long softTtlNanos;
+    private final long hardTtlNanos;
+    private final CircuitBreaker breaker;
+
+    private final ExecutorService refresher = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder refreshesSkipped = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param softTtl 0 - записи не устаревают
+     * @param hardTtl 0 - без жесткого ограничения
+     */
+    public StaleWhileRevalidate(Duration softTtl, Duration hardTtl, CircuitBreaker breaker) {
+        this.softTtlNanos = softTtl.isZero() ? Long.MAX_VALUE : softTtl.toNanos();
+        this.hardTtlNanos = hardTtl.isZero() ? Long.MAX_VALUE : Math.max(hardTtl.toNanos(), softTtlNanos);
+        this.breaker = breaker;
+    }
+
+    public Freshness freshness(long ageNanos) {
+        if (ageNanos < softTtlNanos) {
+            return Freshness.FRESH;
+        }
+        return ageNanos < hardTtlNanos ? Freshness.STALE : Freshness.EXPIRED;
+    }
+
+    /**
+     * Можно ли отдать значение возраста ageNanos из кэша. Для устаревшего значения запускается
+     * фоновая перезагрузка reload (не больше одной на ключ). false - жесткий срок истек, нужна загрузка.
+     */
+    public boolean serve(Object key, long ageNanos, Runnable reload) {
+        Freshness freshness = freshness(ageNanos);
+        if (freshness == Freshness.FRESH) {
+            return true;
+        }
+        if (freshness == Freshness.EXPIRED) {
+            expired.increment();
+            return false;
+        }
+        staleServed.increment();
+        refreshAsync(key, reload);
+        return true;
+    }
+
+    /**
+     * Чтение из БД через автомат защиты: ошибки и слишком медленные ответы размыкают его
+     */
+    public <T> T load(Supplier<T> loader) {
+        if (!breaker.tryAcquire()) {
+            throw new StoreUnavailableException("Автомат защиты БД разомкнут - обращение отклонено без ожидания");
+        }
+        long start = System.nanoTime();
+        try {
+            T value = loader.get();
+            breaker.onSuccess(System.nanoTime() - start);
+            return value;
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+    }
+
+    private void refreshAsync(Object key, Runnable reload) {
+        if (!breaker.isCallPermitted()) {
+            // БД недоступна - отдаем устаревшее значение, не нагружая ее перезагрузками (stale-if-error)
+            refreshesSkipped.increment();
+            return;
+        }
+        if (!refreshing.add(key)) {
+            return; // перезагрузка этого ключа уже идет
+        }
+        refresher.execute(() -> {
+            try {
+                reload.run();
+                refreshes.increment();
+            } catch (RuntimeException e) {
+                refreshFailures.increment();
+                log.warn("⚠️  Фоновая перезагрузка ключа {} не удалась: {}", key, e.getMessage());
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("softTtlMs", softTtlNanos == Long.MAX_VALUE ? 0 : softTtlNanos / 1_000_000);
+        stats.put("hardTtlMs", hardTtlNanos == Long.MAX_VALUE ? 0 : hardTtlNanos / 1_000_000);
+        stats.put("staleServed", staleServed.sum());
+        stats.put("refreshes", refreshes.sum());
+        stats.put("refreshFailures", refreshFailures.sum());
+        stats.put("refreshesSkipped", refreshesSkipped.sum());
+        stats.put("refreshesInFlight", refreshing.size());
+        stats.put("expired", expired.sum());
+        stats.put("circuitBreaker", breaker.stats());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,60 @@
+package com.prosoft.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Кодирует User в готовое тело ответа тем же ObjectMapper, что и Spring MVC,
+ * поэтому байты из кэша не отличаются от обычного ответа контроллера, а ETag по ним
+ * совпадает с ETag обычного ответа.
+ */
+public class UserResponseEncoder {
+
+    private final ObjectMapper objectMapper;
+    private final boolean keepBody;
+    private final boolean gzip;
+    private final long gzipMinBytes;
+
+    /**
+     * @param keepBody     хранить ли само тело (режим encoded-responses) или только его ETag
+     * @param gzip         строить ли gzip-вариант
+     * @param gzipMinBytes меньшие тела не сжимаем - заголовок gzip съест весь выигрыш
+     */
+    public UserResponseEncoder(ObjectMapper objectMapper, boolean keepBody, boolean gzip, long gzipMinBytes) {
+        this.objectMapper = objectMapper;
+        this.keepBody = keepBody;
+        this.gzip = gzip;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    public EncodedResponse encode(User user) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать пользователя " + user.getId(), e);
+        }
+        String etag = EntityTags.strong(json);
+        String gzipEtag = EntityTags.variant(etag, "gz");
+        if (!keepBody) {
+            return new EncodedResponse(etag, gzipEtag, null, null);
+        }
+        return new EncodedResponse(etag, gzipEtag, json, gzip && json.length >= gzipMinBytes ? gzip(json) : null);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,104 @@
+package com.prosoft.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Настройки кэша (секция app.cache в application.yml)
+ */
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+
+    private HotKeys hotKeys = new HotKeys();
+    private Locks locks = new Locks();
+    private Cdc cdc = new Cdc();
+    private Memory memory = new Memory();
+    private EncodedResponses encodedResponses = new EncodedResponses();
+    private Trace trace = new Trace();
+    private Stale stale = new Stale();
+
+    // Поиск "горячих" ключей
+    @Data
+    public static class HotKeys {
+        private int sketchWidth = 1024;
+        private int topK = 32;
+        // Учитывать каждое N-е обращение - при большом RPS снижает накладные расходы
+        private int sampleRate = 1;
+        // Период, за который оценки частоты уменьшаются вдвое
+        private Duration decayInterval = Duration.ofMinutes(1);
+    }
+
+    // Блокировки по ключу для двухфазной записи "БД + кэш"
+    @Data
+    public static class Locks {
+        // Число полос, 0 - по 4 на ядро
+        private int stripes = 0;
+    }
+
+    // Подписка кэша на журнал изменений БД
+    @Data
+    public static class Cdc {
+        private Duration pollInterval = Duration.ofMillis(20);
+        private int batchSize = 512;
+    }
+
+    // Емкость кэшей в байтах
+    @Data
+    public static class Memory {
+        // Общий бюджет для всех кэшей JVM (оценка удерживаемой памяти), 0 - без ограничения
+        private DataSize budget = DataSize.ofMegabytes(64);
+        // Пространства имен (именованные кэши) и их доли бюджета; кэш без настроек делит свободный остаток
+        private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Namespace {
+        // Гарантированная доля бюджета, 0 - без квоты
+        private DataSize quota = DataSize.ofBytes(0);
+        // Занимать свободное место бюджета сверх квоты (возвращается первым, когда бюджет исчерпан)
+        private boolean borrow = true;
+        // Срок жизни записи с загрузки, 0 - без ограничения
+        private Duration ttl = Duration.ZERO;
+    }
+
+    // Кэширование готовых JSON-ответов GET /api/users/{id}
+    @Data
+    public static class EncodedResponses {
+        private boolean enabled = false;
+        // Дополнительно хранить gzip-вариант для клиентов с Accept-Encoding: gzip
+        private boolean gzip = true;
+        // Тела меньше этого размера не сжимаются
+        private DataSize gzipMinSize = DataSize.ofBytes(512);
+    }
+
+    // Трасса обращений к кэшу для офлайн-моделирования политик вытеснения (loadtest: TraceSimulatorApp)
+    @Data
+    public static class Trace {
+        private boolean enabled = false;
+        // Файл перезаписывается при каждом старте
+        private String path = "traces/access.trace";
+        // Событий в очереди к записи; при переполнении события отбрасываются, а не тормозят запросы
+        private int queueCapacity = 65536;
+    }
+
+    // Мягкий и жесткий срок жизни записей (stale-while-revalidate, stale-if-error) и автомат защиты БД
+    @Data
+    public static class Stale {
+        // Старше - значение отдается сразу, а запись обновляется в фоне; 0 - записи не устаревают
+        private Duration softTtl = Duration.ofSeconds(30);
+        // Старше - значение не отдается даже при недоступной БД; 0 - без ограничения
+        private Duration hardTtl = Duration.ofMinutes(10);
+        // Ошибок чтения БД подряд, после которых автомат размыкается
+        private int failureThreshold = 5;
+        // Сколько автомат остается разомкнутым перед пробным обращением
+        private Duration openDuration = Duration.ofSeconds(5);
+        // Ответ БД дольше этого считается ошибкой; 0 - не учитывать длительность
+        private Duration slowCallThreshold = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,34 @@
+package com.prosoft.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки адаптивного сброса "грязных" данных в БД (секция app.write-back в application.yml)
+ */
+@Data
+@ConfigurationProperties(prefix = "app.write-back")
+public class WriteBackProperties {
+
+    // Границы интервала между сбросами: чем больше dirty-записей, тем ближе к минимуму
+    private Duration minFlushInterval = Duration.ofMillis(50);
+    private Duration maxFlushInterval = Duration.ofSeconds(5);
+
+    // Максимальный возраст dirty-записи - верхняя граница окна потери данных
+    private Duration maxDirtyAge = Duration.ofSeconds(10);
+
+    // Размер пачки подбирается так, чтобы один сброс занимал примерно targetFlushDuration
+    private Duration targetFlushDuration = Duration.ofMillis(200);
+    private int minBatchSize = 16;
+    private int maxBatchSize = 1024;
+
+    // Число партиций сброса (у каждой свой поток и свой порядок ключей), 0 - по числу ядер
+    private int flushPartitions = 0;
+
+    // Выше нижней отметки запись замедляется, на верхней - отклоняется с повторяемой ошибкой
+    private int lowWatermark = 1_000;
+    private int highWatermark = 10_000;
+    private Duration maxThrottleDelay = Duration.ofMillis(50);
+}
@@ -0,0 +1,23 @@
+package com.prosoft.model;
+
+/**
+ * Результат одной операции пакета - строка NDJSON в ответе POST /api/users/batch.
+ * index - номер операции в потоке запроса (с нуля)
+ */
+public record BatchResult(long index, BatchOperation.Type op, Long id, Status status, String error) {
+
+    /**
+     * CONFLICT - CREATE с id уже существующего пользователя, NOT_FOUND - UPDATE или DELETE отсутствующего
+     */
+    public enum Status {
+        OK, NOT_FOUND, CONFLICT, INVALID, FAILED
+    }
+
+    public static BatchResult of(long index, BatchOperation operation, Status status) {
+        return new BatchResult(index, operation.getOp(), operation.getId(), status, null);
+    }
+
+    public static BatchResult error(long index, BatchOperation operation, Status status, String error) {
+        return new BatchResult(index, operation.getOp(), operation.getId(), status, error);
+    }
+}
@@ -0,0 +1,80 @@
+package com.prosoft.service;
+
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
+import com.prosoft.model.User;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Итог пакета операций: операции над одним id применяются по порядку, а в БД и кэш уходит
+ * только последняя версия каждой строки (null - удаление). Результат каждой операции - в results.
+ */
+final class BatchPlan {
+
+    private final Map<Long, User> changes = new LinkedHashMap<>();
+    private final List<BatchResult> results = new ArrayList<>();
+
+    private BatchPlan() {
+    }
+
+    /**
+     * Ключи пакета. Новым пользователям без id он назначается заранее - по ключам берутся блокировки
+     */
+    static List<Long> keys(List<BatchOperation> batch, LongSupplier nextId) {
+        List<Long> keys = new ArrayList<>(batch.size());
+        for (BatchOperation operation : batch) {
+            if (operation.getOp() == BatchOperation.Type.CREATE && operation.getId() == null && operation.problem() == null) {
+                operation.setId(nextId.getAsLong());
+            }
+            if (operation.getId() != null) {
+                keys.add(operation.getId());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Применяет операции к текущему состоянию строк. current - версия строки до пакета (null - строки нет),
+     * вызывается под блокировками ключей пакета
+     */
+    static BatchPlan resolve(List<BatchOperation> batch, long firstIndex, Function<Long, User> current) {
+        BatchPlan plan = new BatchPlan();
+        for (int i = 0; i < batch.size(); i++) {
+            BatchOperation operation = batch.get(i);
+            long index = firstIndex + i;
+            String problem = operation.problem();
+            if (problem != null) {
+                plan.results.add(BatchResult.error(index, operation, BatchResult.Status.INVALID, problem));
+                continue;
+            }
+
+            // CREATE не перезаписывает существующую строку, UPDATE и DELETE требуют ее наличия
+            Long id = operation.getId();
+            User existing = plan.changes.containsKey(id) ? plan.changes.get(id) : current.apply(id);
+            BatchResult.Status status = switch (operation.getOp()) {
+                case CREATE -> existing != null ? BatchResult.Status.CONFLICT : BatchResult.Status.OK;
+                case UPDATE, DELETE -> existing == null ? BatchResult.Status.NOT_FOUND : BatchResult.Status.OK;
+            };
+            if (status == BatchResult.Status.OK) {
+                plan.changes.put(id, operation.getOp() == BatchOperation.Type.DELETE
+                        ? null : new User(id, operation.getName(), operation.getEmail(), true));
+            }
+            plan.results.add(BatchResult.of(index, operation, status));
+        }
+        return plan;
+    }
+
+    Map<Long, User> changes() {
+        return changes;
+    }
+
+    List<BatchResult> results() {
+        return results;
+    }
+}
@@ -1,30 +1,123 @@
 package com.prosoft.service;
 
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheEvents;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.EmailKeyWeigher;
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.PartitionedFlushQueue;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.cache.UserWeigher;
+import com.prosoft.cache.WeightedCache;
+import com.prosoft.config.CacheProperties;
+import com.prosoft.config.WriteBackProperties;
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
 import com.prosoft.model.User;
+import com.prosoft.store.ChangeEvent;
+import com.prosoft.store.ChangeFeedSubscriber;
+import com.prosoft.store.StoreUnavailableException;
+import com.prosoft.store.UserStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 @Service
 @Slf4j
 public class UserService {
 
-    // Имитация базы данных
-    private final Map<Long, User> database = new HashMap<>();
+    // Имитация базы данных с журналом изменений (CDC)
+    private final UserStore database;
 
-    // Write-Back Cache - данные сначала в кэш, потом асинхронно в БД
-    private final Map<Long, User> cache = new ConcurrentHashMap<>();
+    // Write-Back Cache - данные сначала в кэш, потом асинхронно в БД, емкость в байтах (общий бюджет памяти JVM)
+    private final WeightedCache<Long, User> cache;
 
-    // Планировщик для асинхронной записи в БД
-    private final ScheduledExecutorService writeBackExecutor = Executors.newScheduledThreadPool(2);
+    // Вторичный индекс email -> id: поиск по email идет дальше по обычному пути чтения по id
+    private final WeightedCache<String, Long> emailCache;
+
+    // Буфер несброшенных изменений - отдельно от кэша: кэш вытесняет записи по бюджету памяти,
+    // а изменение живет здесь до подтверждения записи в БД. Размер ограничен верхней отметкой backpressure
+    private final Map<Long, PendingWrite> dirtyBuffer = new ConcurrentHashMap<>();
+    // Очередь "грязных" ключей: ключ хешируется на одну из партиций, каждая сбрасывается своим потоком
+    // в порядке появления ключей - записи одного пользователя не обгоняют друг друга.
+    // Поток партиции спит, пока ее очередь пуста, и сам выбирает интервал и размер пачки
+    private final PartitionedFlushQueue dirtyQueue;
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final AtomicLong dirtyBytes = new AtomicLong();
+    private final UserWeigher weigher = new UserWeigher();
+
+    private final LongAdder throttledWrites = new LongAdder();
+    private final LongAdder rejectedWrites = new LongAdder();
+    private final LongAdder bufferReads = new LongAdder();
+
+    private final WriteBackProperties properties;
+
+    // Частота обращений по ключам - для поиска "горячих" пользователей
+    private final HotKeyTracker hotKeyTracker;
+
+    // Блокировки по ключу: изменения одного пользователя в кэше и его сброс в БД не перемешиваются
+    private final StripedKeyLocks keyLocks;
+
+    // Общий для кэшей JVM бюджет памяти (показывается в /cache/stats)
+    private final CacheRegistry cacheRegistry;
+
+    // Готовые JSON-ответы хранятся рядом с записями кэша (app.cache.encoded-responses)
+    private final UserResponseEncoder responseEncoder;
+
+    // Трасса обращений для офлайн-моделирования политик вытеснения (app.cache.trace)
+    private final AccessTraceRecorder traceRecorder;
+
+    // Устаревшие записи отдаются сразу с фоновой перезагрузкой, чтения БД - через автомат защиты (app.cache.stale)
+    private final StaleWhileRevalidate staleness;
+
+    // Подписка кэша на журнал изменений БД
+    private final CacheProperties cacheProperties;
+    private ChangeFeedSubscriber changeFeed;
+
+    // Дополнительные тестовые пользователи (нужны нагрузочному стенду loadtest)
+    @Value("${app.database.seed-users:0}")
+    private int seedUsers;
+
+    // Несброшенное изменение: снимок пользователя (null - удаление) и время первого изменения ключа
+    private record PendingWrite(User user, long since) {
+    }
+
+    public UserService(WriteBackProperties properties, HotKeyTracker hotKeyTracker, StripedKeyLocks keyLocks,
+                       UserStore database, CacheProperties cacheProperties,
+                       CacheRegistry cacheRegistry, UserResponseEncoder responseEncoder,
+                       AccessTraceRecorder traceRecorder, StaleWhileRevalidate staleness) {
+        this.properties = properties;
+        this.hotKeyTracker = hotKeyTracker;
+        this.keyLocks = keyLocks;
+        this.database = database;
+        this.cacheProperties = cacheProperties;
+        this.cacheRegistry = cacheRegistry;
+        this.responseEncoder = responseEncoder;
+        this.traceRecorder = traceRecorder;
+        this.staleness = staleness;
+        this.dirtyQueue = new PartitionedFlushQueue("write-back", properties.getFlushPartitions());
+        // Вытеснение по весу не трогает "горячие" ключи. Dirty записи вытесняются наравне с чистыми:
+        // их изменения хранит буфер dirtyBuffer, и следующее чтение возьмет версию оттуда, а не из БД
+        this.cache = cacheRegistry.create("users", weigher, (id, user) -> hotKeyTracker.isHot(id));
+        this.emailCache = cacheRegistry.create("users-by-email", new EmailKeyWeigher(), (email, id) -> dirtyBuffer.containsKey(id));
+    }
 
     @PostConstruct
     public void init() {
@@ -32,11 +125,31 @@ public class UserService {
         database.put(1L, new User(1L, "Alice", "alice@example.com", false));
         database.put(2L, new User(2L, "Bob", "bob@example.com", false));
         database.put(3L, new User(3L, "Charlie", "charlie@example.com", false));
+        for (long id = 4; id <= seedUsers; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com", false));
+        }
 
         log.info("🔧 База данных инициализирована с {} пользователями", database.size());
 
-        // Запускаем фоновый процесс для Write-Back
-        startWriteBackProcess();
+        // Кэш пока пуст - подписываемся с текущего конца журнала
+        changeFeed = new ChangeFeedSubscriber("user-cache", database.changeLog(), database.changeLog().tail(),
+                cacheProperties.getCdc().getBatchSize(), this::applyChanges, cache::clear);
+        changeFeed.start(cacheProperties.getCdc().getPollInterval());
+
+        dirtyQueue.start(this::flushOne, this::dirtyAgeNanos, new PartitionedFlushQueue.Pacing() {
+            @Override
+            public long delayNanos(int queued, long headAgeNanos, long sinceLastFlushNanos) {
+                return flushDelayNanos(queued, headAgeNanos, sinceLastFlushNanos);
+            }
+
+            @Override
+            public int batchSize(int queued, double writeNanosEwma) {
+                return flushBatchSize(writeNanosEwma);
+            }
+        });
+        log.info("🚀 Адаптивный Write-Back: интервал {}-{}, макс. возраст dirty {}, отметки {}/{}, партиций сброса {}",
+                properties.getMinFlushInterval(), properties.getMaxFlushInterval(), properties.getMaxDirtyAge(),
+                properties.getLowWatermark(), properties.getHighWatermark(), dirtyQueue.partitions());
     }
 
     /**
@@ -44,17 +157,155 @@ public class UserService {
      */
     public User getUserById(Long id) {
         log.info("🔍 Запрос пользователя с ID: {}", id);
-
-        // ШАГ 1: Проверяем кэш
-        User cachedUser = cache.get(id);
-        if (cachedUser != null) {
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+
+        // ШАГ 1: Проверяем кэш. Устаревшая запись отдается сразу, а обновляется в фоне;
+        // запись старше жесткого срока не отдается - загружаем заново
+        // (несброшенные dirty данные - единственная актуальная копия, они не устаревают)
+        WeightedCache.Timed<User> cached = cache.getTimed(id);
+        if (cached != null
+                && (dirtyBuffer.containsKey(id) || staleness.serve(id, cached.ageNanos(), () -> refreshEntry(id)))) {
             log.info("🎯 CACHE HIT: Пользователь найден в кэше!");
-            return cachedUser;
+            return cached.value();
+        }
+
+        // Загрузка промаха под read-блокировкой ключа: конкурентная запись того же id
+        // не может вклиниться между чтением из БД и сохранением в кэш
+        return keyLocks.withReadLock(id, () -> loadIntoCache(id));
+    }
+
+    /**
+     * Поиск по email: индекс email -> id в кэше, дальше - обычный путь чтения по id с его кэшем,
+     * поэтому попадание стоит столько же, сколько попадание по id. Запись индекса - только подсказка:
+     * найденный пользователь сверяется с email, а несовпавшая запись удаляется и ищется по индексу БД.
+     */
+    public User getUserByEmail(String email) {
+        log.info("🔍 Запрос пользователя с email: {}", email);
+        String key = UserStore.normalizeEmail(email);
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        Long cachedId = emailCache.get(key);
+        if (cachedId != null) {
+            User user = getUserById(cachedId);
+            if (user != null && key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+                log.info("🎯 CACHE HIT: email найден в индексе кэша (ID {})", cachedId);
+                return user;
+            }
+            emailCache.remove(key);
+        }
+
+        log.info("❌ CACHE MISS: email не найден в индексе кэша, ищем по индексу БД...");
+        Long id = staleness.load(() -> database.findIdByEmail(key));
+        User user = id == null ? null : getUserById(id);
+        if (user == null || !key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+            log.warn("⚠️  Пользователь с email {} не найден", email);
+            return null;
+        }
+        emailCache.put(key, id);
+        return user;
+    }
+
+    // Запись индекса email -> id; пользователь без email в индексе не участвует (как и в индексе UserStore)
+    private void indexEmail(String email, Long id) {
+        String key = UserStore.normalizeEmail(email);
+        if (key != null) {
+            emailCache.put(key, id);
+        }
+    }
+
+    // Запись индекса email -> id уходит вместе с прежней версией пользователя, если email сменился
+    private void evictEmail(User previous, User current) {
+        String email = previous == null ? null : UserStore.normalizeEmail(previous.getEmail());
+        if (email != null && (current == null || !email.equals(UserStore.normalizeEmail(current.getEmail())))) {
+            emailCache.remove(email);
+        }
+    }
+
+    public boolean isEncodedResponsesEnabled() {
+        return cacheProperties.getEncodedResponses().isEnabled();
+    }
+
+    /**
+     * Ответ GET /api/users/{id} готовыми байтами: JSON строится один раз на версию записи кэша
+     * и сбрасывается вместе с ней (обновление, инвалидация, вытеснение)
+     */
+    public EncodedResponse getEncodedUserById(Long id) {
+        User user = getUserById(id);
+        return user == null ? null : responseFor(id, user);
+    }
+
+    /**
+     * ETag ответа с пользователем - считается один раз на версию записи кэша
+     */
+    public String getEtag(Long id, User user) {
+        return responseFor(id, user).etag();
+    }
+
+    /**
+     * Условный GET только по метаданным кэша, без обращения к БД и без сериализации.
+     * Возвращает ETag, если копия клиента актуальна, и null, если нужен обычный путь
+     * (пользователя нет в кэше, ETag для его версии еще не построен или версия клиента устарела).
+     */
+    public String getUnchangedEtag(Long id, String ifNoneMatch, boolean acceptsGzip) {
+        // Устаревшую запись проверяет обычный путь - он же запустит ее перезагрузку
+        long age = cache.ageNanos(id);
+        if (age < 0 || staleness.freshness(age) != StaleWhileRevalidate.Freshness.FRESH) {
+            return null;
+        }
+        EncodedResponse cached = cache.cachedAttachment(id);
+        if (cached == null) {
+            return null;
+        }
+        String etag = cached.etag(acceptsGzip && cached.gzip() != null);
+        if (!EntityTags.matches(ifNoneMatch, etag)) {
+            return null;
+        }
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+        log.info("📭 Версия пользователя {} у клиента актуальна (ETag {}), БД не читаем", id, etag);
+        return etag;
+    }
+
+    // Готовый ответ из кэша; если запись успели заменить, вытеснить или инвалидировать - кодируем user без сохранения
+    private EncodedResponse responseFor(Long id, User user) {
+        EncodedResponse encoded = cache.attachment(id, user, responseEncoder::encode, EncodedResponse::weight);
+        return encoded != null ? encoded : responseEncoder.encode(user);
+    }
+
+    // Чтение пользователя из БД через автомат защиты; длительность видна в JFR (событие Cache Load)
+    private User loadUser(Long id) {
+        CacheEvents.LoadEvent event = CacheEvents.beginLoad("users", id);
+        User user = staleness.load(() -> database.get(id));
+        CacheEvents.endLoad(event, user != null);
+        return user;
+    }
+
+    // Удаление записи из кэша с причиной reason (событие Cache Invalidation в JFR)
+    private User invalidate(Long id, String reason) {
+        CacheEvents.invalidation("users", id, reason);
+        return cache.remove(id);
+    }
+
+    private User loadIntoCache(Long id) {
+        // Dirty запись могла быть вытеснена или убрана очисткой кэша: несброшенная версия новее БД
+        PendingWrite pending = dirtyBuffer.get(id);
+        if (pending != null) {
+            bufferReads.increment();
+            log.info("📝 Пользователь {} найден в буфере несброшенных изменений", id);
+            if (pending.user() == null) {
+                return null; // Удален, удаление еще не сброшено в БД
+            }
+            User user = copyOf(pending.user(), true);
+            cache.put(id, user);
+            return user;
         }
 
         // ШАГ 2: Кэш-промах - загружаем из базы данных
         log.info("❌ CACHE MISS: Пользователь не найден в кэше, загружаем из базы...");
-        User userFromDatabase = database.get(id);
+        User userFromDatabase = loadUser(id);
 
         if (userFromDatabase == null) {
             log.warn("⚠️  Пользователь не найден в базе данных! ID: {}", id);
@@ -69,28 +320,58 @@ public class UserService {
         return userFromDatabase;
     }
 
+    /**
+     * Фоновая перезагрузка устаревшей записи - под той же read-блокировкой ключа, что и загрузка промаха
+     */
+    private void refreshEntry(Long id) {
+        keyLocks.withReadLock(id, () -> {
+            // Пока ждали блокировку, запись могли изменить: dirty данные новее БД
+            if (dirtyBuffer.containsKey(id)) {
+                return cache.peek(id);
+            }
+            User fresh = loadUser(id);
+            if (fresh == null) {
+                invalidate(id, "refresh");
+            } else {
+                cache.put(id, fresh);
+            }
+            log.debug("🔄 Устаревшая запись пользователя {} перезагружена", id);
+            return fresh;
+        });
+    }
+
     /**
      * WRITE-BACK PATTERN - данные записываются сначала в кэш, потом асинхронно в БД
      */
     public User createUser(User user) {
         log.info("➕ Создаем нового пользователя через Write-Back: {}", user.getName());
 
+        // Backpressure: если БД не успевает, замедляем или отклоняем запись
+        admitWrite();
+
         // WRITE-BACK: записываем сначала в кэш
         if (user.getId() == null) {
-            long maxId = database.keySet().stream().mapToLong(Long::longValue).max().orElse(0L);
-            user.setId(maxId + 1);
+            user.setId(database.nextId());
         }
+        hotKeyTracker.record(user.getId());
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, user.getId());
 
-        user.setDirty(true); // Помечаем как "грязные" данные
+        // Изменение кэша и постановка в очередь сброса - под блокировкой ключа
+        return keyLocks.withWriteLock(user.getId(), () -> {
+            user.setDirty(true); // Помечаем как "грязные" данные
 
-        log.info("キャッシング: Сохраняем пользователя в кэш (помечен как dirty)");
-        cache.put(user.getId(), user);
+            // Сначала в буфер: запись кэша без изменения в буфере CDC принял бы за чистую и заменил строкой БД
+            markDirty(user.getId(), user);
+            log.info("キャッシング: Сохраняем пользователя в кэш (помечен как dirty)");
+            cache.put(user.getId(), user);
+            indexEmail(user.getEmail(), user.getId());
 
-        // Асинхронная запись в БД будет выполнена позже фоновым процессом
-        log.info("⏭️  Асинхронная запись в БД запланирована");
+            // Асинхронная запись в БД будет выполнена позже фоновым процессом
+            log.info("⏭️  Асинхронная запись в БД запланирована");
 
-        log.info("✅ Пользователь создан в кэше (ожидает записи в БД): {} ({})", user.getName(), user.getId());
-        return user;
+            log.info("✅ Пользователь создан в кэше (ожидает записи в БД): {} ({})", user.getName(), user.getId());
+            return user;
+        });
     }
 
     /**
@@ -98,32 +379,46 @@ public class UserService {
      */
     public User updateUser(Long id, String name, String email) {
         log.info("✏️ Обновляем пользователя {} через Write-Back", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, id);
+
+        // Backpressure: если БД не успевает, замедляем или отклоняем запись
+        admitWrite();
 
-        // Проверяем существование пользователя в кэше
-        User user = cache.get(id);
-        if (user == null) {
-            // Если нет в кэше, загружаем из БД
-            user = database.get(id);
+        // Изменение кэша и постановка в очередь сброса - под блокировкой ключа
+        return keyLocks.withWriteLock(id, () -> {
+            // Проверяем существование пользователя в кэше
+            User user = cache.peek(id);
             if (user == null) {
-                log.warn("⚠️  Пользователь не найден! ID: {}", id);
-                return null;
+                // Если нет в кэше - берем несброшенную версию из буфера, иначе загружаем из БД
+                PendingWrite pending = dirtyBuffer.get(id);
+                user = pending == null ? database.get(id) : pending.user() == null ? null : copyOf(pending.user(), true);
+                if (user == null) {
+                    log.warn("⚠️  Пользователь не найден! ID: {}", id);
+                    return null;
+                }
+                cache.put(id, user);
             }
-            cache.put(id, user);
-        }
 
-        // WRITE-BACK: обновляем только в кэше
-        log.info("WRITE-BACK: Обновляем пользователя в кэше");
-        user.setName(name);
-        user.setEmail(email);
-        user.setDirty(true); // Помечаем как "грязные" данные
+            // WRITE-BACK: обновляем только в кэше
+            log.info("WRITE-BACK: Обновляем пользователя в кэше");
+            User previous = copyOf(user, user.isDirty());
+            user.setName(name);
+            user.setEmail(email);
+            user.setDirty(true); // Помечаем как "грязные" данные
 
-        cache.put(id, user);
+            markDirty(id, user);
+            cache.put(id, user);
+            // Индекс БД узнает новый email только при сбросе - до него индекс в кэше единственный
+            evictEmail(previous, user);
+            indexEmail(email, id);
 
-        // Асинхронная запись в БД будет выполнена позже
-        log.info("⏭️  Асинхронное обновление БД запланировано");
+            // Асинхронная запись в БД будет выполнена позже
+            log.info("⏭️  Асинхронное обновление БД запланировано");
 
-        log.info("✅ Пользователь обновлен в кэше (ожидает записи в БД): {} ({})", user.getName(), user.getId());
-        return user;
+            log.info("✅ Пользователь обновлен в кэше (ожидает записи в БД): {} ({})", user.getName(), user.getId());
+            return user;
+        });
     }
 
     /**
@@ -131,75 +426,398 @@ public class UserService {
      */
     public void deleteUser(Long id) {
         log.info("🗑️ Удаляем пользователя {} через Write-Back", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.DELETE, id);
+
+        // Backpressure: удаление тоже занимает место в буфере несброшенных изменений
+        admitWrite();
+
+        // Изменение кэша и постановка в очередь сброса - под блокировкой ключа
+        keyLocks.withWriteLock(id, () -> {
+            // WRITE-BACK: удаляем из кэша, удаление из БД ждет в буфере как запись без пользователя
+            evictEmail(invalidate(id, "delete"), null);
+            markDirty(id, null);
+
+            // Асинхронное удаление из БД будет выполнено позже
+            log.info("⏭️  Асинхронное удаление из БД запланировано");
 
-        // WRITE-BACK: удаляем из кэша
-        User user = cache.get(id);
-        if (user != null) {
-            user.setDirty(true); // Помечаем для удаления
-            cache.put(id, user); // Пока храним в кэше как "грязные" данные для удаления
+            log.info("✅ Пользователь помечен для удаления из БД: {}", id);
+        });
+    }
+
+    /**
+     * WRITE-BACK PATTERN для пакета операций: пакет пишется в кэш и в буфер несброшенных изменений,
+     * в БД его отправит фоновый сброс. Backpressure учитывает все изменения пакета, а не одно:
+     * пакет, который перешел бы верхнюю отметку, отклоняется целиком, до применения.
+     * firstIndex - номер первой операции пакета в потоке запроса.
+     */
+    public List<BatchResult> applyBatch(List<BatchOperation> batch, long firstIndex) {
+        log.info("📦 WRITE-BACK: Применяем пакет из {} операций", batch.size());
+        List<Long> keys = BatchPlan.keys(batch, database::nextId);
+        // Изменений в буфере прибавится не больше, чем разных ключей в пакете
+        admitWrite((int) keys.stream().distinct().count());
+        recordBatch(batch);
+
+        return keyLocks.withWriteLocks(keys, () -> {
+            BatchPlan plan = BatchPlan.resolve(batch, firstIndex, this::currentUser);
+            // Пока ждали блокировки, буфер мог заполниться: итог пакета проверяется до изменений
+            rejectIfFull(plan.changes().size());
+
+            // WRITE-BACK: сначала в буфер изменений, затем пакетом в кэш
+            Map<Long, User> cached = new LinkedHashMap<>();
+            Map<String, Long> emails = new LinkedHashMap<>();
+            plan.changes().forEach((id, user) -> {
+                if (user != null) {
+                    user.setDirty(true); // Помечаем как "грязные" данные: CDC и сброс не трогают версию кэша
+                }
+                markDirty(id, user);
+                User previous = user == null ? invalidate(id, "delete") : cache.peek(id);
+                evictEmail(previous, user);
+                if (user != null) {
+                    cached.put(id, user);
+                    emails.put(UserStore.normalizeEmail(user.getEmail()), id);
+                }
+            });
+            cache.putAll(cached);
+            emailCache.putAll(emails);
+
+            log.info("✅ Пакет в кэше (ожидает записи в БД): {} изменений", plan.changes().size());
+            return plan.results();
+        });
+    }
+
+    // Текущая версия пользователя с учетом несброшенных изменений (null - нет или удален)
+    private User currentUser(Long id) {
+        User cached = cache.peek(id);
+        if (cached != null) {
+            return cached;
         }
+        PendingWrite pending = dirtyBuffer.get(id);
+        return pending != null ? pending.user() : database.get(id);
+    }
 
-        // Асинхронное удаление из БД будет выполнено позже
-        log.info("⏭️  Асинхронное удаление из БД запланировано");
+    // Пакетные операции учитываются в горячих ключах и трассе так же, как одиночные
+    private void recordBatch(List<BatchOperation> batch) {
+        for (BatchOperation operation : batch) {
+            if (operation.getId() == null) {
+                continue;
+            }
+            hotKeyTracker.record(operation.getId());
+            traceRecorder.record(operation.getOp() == BatchOperation.Type.DELETE
+                    ? AccessTraceRecorder.Op.DELETE : AccessTraceRecorder.Op.WRITE, operation.getId());
+        }
+    }
 
-        log.info("✅ Пользователь помечен для удаления из БД: {}", id);
+    /**
+     * Регистрация изменения в буфере (user == null - удаление), вызывается под write-блокировкой ключа.
+     * Первый ключ партиции будит ее поток сброса.
+     */
+    private void markDirty(Long id, User user) {
+        // В буфер кладется снимок: объект в кэше меняется на месте и может быть вытеснен
+        User snapshot = user == null ? null : copyOf(user, true);
+        PendingWrite previous = dirtyBuffer.get(id);
+        dirtyBuffer.put(id, new PendingWrite(snapshot, previous == null ? System.nanoTime() : previous.since()));
+        dirtyBytes.addAndGet(weightOf(id, snapshot) - (previous == null ? 0 : weightOf(id, previous.user())));
+        if (previous != null) {
+            return; // Ключ уже ждет сброса - в БД уйдет последняя версия
+        }
+        dirtyQueue.add(id);
+        dirtyCount.incrementAndGet();
+    }
+
+    private void admitWrite() {
+        admitWrite(1);
     }
 
     /**
-     * Фоновый процесс Write-Back - периодически записывает "грязные" данные в БД
+     * Backpressure для записей: между нижней и верхней отметками запрос притормаживается
+     * пропорционально заполнению, а запись, после которой буфер превысил бы верхнюю отметку, отклоняется
+     * с повторяемой ошибкой. writes - сколько изменений запись может добавить в буфер.
      */
-    private void startWriteBackProcess() {
-        writeBackExecutor.scheduleAtFixedRate(() -> {
-            try {
-                processDirtyData();
-            } catch (Exception e) {
-                log.error("Ошибка в процессе Write-Back: ", e);
+    private void admitWrite(int writes) {
+        int dirty = dirtyCount.get();
+        int low = properties.getLowWatermark();
+        int high = properties.getHighWatermark();
+        if (dirty > low) {
+            // Выше нижней отметки партиции сбрасывают без пауз - будим спящие
+            dirtyQueue.wakeUp();
+        }
+        rejectIfFull(writes);
+        if (dirty <= low) {
+            return;
+        }
+
+        double pressure = Math.min(1.0, (double) (dirty - low) / (high - low));
+        long pauseNanos = (long) (properties.getMaxThrottleDelay().toNanos() * pressure);
+        throttledWrites.increment();
+        log.debug("🐢 BACKPRESSURE: {} dirty записей, запись замедлена на {} мкс", dirty, pauseNanos / 1000);
+        LockSupport.parkNanos(pauseNanos);
+    }
+
+    // Отказ, если writes новых изменений не помещаются под верхнюю отметку
+    private void rejectIfFull(int writes) {
+        int dirty = dirtyCount.get();
+        int high = properties.getHighWatermark();
+        if (writes > 0 && dirty + writes > high) {
+            rejectedWrites.increment();
+            Duration retryAfter = estimateDrainTime(dirty + writes - properties.getLowWatermark());
+            log.warn("⛔ BACKPRESSURE: {} dirty записей + {} новых (верхняя отметка {}), запись отклонена", dirty, writes, high);
+            throw new WriteBackOverloadedException(dirty, retryAfter);
+        }
+    }
+
+    /**
+     * Запись одного изменения из буфера в БД (под блокировкой пачки партиции ключа).
+     * Изменение покидает буфер только после успешной записи.
+     */
+    private boolean flushOne(Long userId) {
+        PendingWrite pending = dirtyBuffer.get(userId);
+        if (pending == null) {
+            return false;
+        }
+
+        try {
+            if (pending.user() == null) {
+                log.info("💾 WRITE-BACK: Удаляем пользователя {} из БД", userId);
+                database.remove(userId);
+            } else {
+                log.info("💾 WRITE-BACK: Записываем пользователя {} в БД", userId);
+                database.put(userId, copyOf(pending.user(), false));
             }
-        }, 5, 5, TimeUnit.SECONDS); // Каждые 5 секунд
+        } catch (Exception e) {
+            log.error("❌ Ошибка записи пользователя {} в БД: ", userId, e);
+            dirtyQueue.add(userId); // Изменение остается в буфере до следующего сброса
+            return false;
+        }
+
+        keyLocks.withWriteLock(userId, () -> {
+            // Если пока писали пришло новое изменение - ключ снова в очереди и остается dirty
+            if (!dirtyBuffer.remove(userId, pending)) {
+                dirtyQueue.add(userId);
+                return;
+            }
+            dirtyCount.decrementAndGet();
+            dirtyBytes.addAndGet(-weightOf(userId, pending.user()));
+            User cached = cache.peek(userId);
+            if (cached != null) {
+                cached.setDirty(false);
+                // Флаг dirty виден в JSON - пересчет записи сбрасывает ее готовый ответ
+                cache.computeIfPresent(userId, (key, value) -> value);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Синхронный сброс всего буфера. Каждый ключ пробуется не больше одного раза: при недоступной БД
+     * метод не зацикливается, а неудачные изменения остаются в буфере. Возвращает число оставшихся.
+     */
+    private int drainDirty() {
+        dirtyQueue.drainNow();
+        return dirtyCount.get();
+    }
 
-        log.info("🚀 Запущен фоновый процесс Write-Back (каждые 5 секунд)");
+    /**
+     * Задержка до следующего сброса партиции: интервал сокращается с ростом ее очереди (доля партиции
+     * в нижней отметке) и не дает голове очереди пережить maxDirtyAge. Выше нижней отметки - без пауз.
+     */
+    private long flushDelayNanos(int queued, long headAgeNanos, long sinceLastFlushNanos) {
+        if (queued == 0) {
+            return -1;
+        }
+        int low = properties.getLowWatermark();
+        if (dirtyCount.get() > low) {
+            return 0;
+        }
+
+        long min = properties.getMinFlushInterval().toNanos();
+        long max = properties.getMaxFlushInterval().toNanos();
+        double fill = Math.min(1.0, (double) queued * dirtyQueue.partitions() / low);
+        long byCount = max - (long) ((max - min) * fill);
+        long byAge = properties.getMaxDirtyAge().toNanos() - headAgeNanos;
+
+        long interval = Math.max(min, Math.min(byCount, byAge));
+        return Math.max(0, interval - sinceLastFlushNanos);
     }
 
     /**
-     * Обработка "грязных" данных - запись в БД
+     * Размер пачки партиции: сколько записей она успевает сделать за targetFlushDuration,
+     * а при давлении выше нижней отметки - максимальная пачка
      */
-    private void processDirtyData() {
-        log.debug("🔁 Write-Back процесс: проверка наличия dirty данных...");
+    private int flushBatchSize(double perWrite) {
+        int min = properties.getMinBatchSize();
+        int max = properties.getMaxBatchSize();
+        if (dirtyCount.get() > properties.getLowWatermark()) {
+            return max;
+        }
 
-        cache.entrySet().stream()
-                .filter(entry -> entry.getValue().isDirty())
-                .forEach(entry -> {
-                    Long userId = entry.getKey();
-                    User user = entry.getValue();
+        long byLatency = perWrite > 0 ? (long) (properties.getTargetFlushDuration().toNanos() / perWrite) : max;
+        return (int) Math.max(min, Math.min(max, byLatency));
+    }
 
-                    try {
-                        // Асинхронная запись в БД
-                        CompletableFuture.runAsync(() -> {
-                            log.info("💾 WRITE-BACK: Асинхронно записываем пользователя {} в БД", userId);
-                            database.put(userId, new User(user.getId(), user.getName(), user.getEmail(), false));
-                            user.setDirty(false); // Сбрасываем флаг dirty
-                            log.info("✅ WRITE-BACK: Пользователь {} успешно записан в БД", userId);
-                        });
-                    } catch (Exception e) {
-                        log.error("❌ Ошибка записи пользователя {} в БД: ", userId, e);
-                    }
-                });
+    private long oldestDirtyAgeNanos() {
+        return dirtyQueue.oldestAgeNanos();
     }
 
+    private long dirtyAgeNanos(Long id) {
+        PendingWrite pending = dirtyBuffer.get(id);
+        return pending == null ? 0 : System.nanoTime() - pending.since();
+    }
+
+    // Оценка времени, за которое партиции параллельно разберут excess записей при текущей скорости
+    private Duration estimateDrainTime(int excess) {
+        long nanos = (long) (excess * Math.max(dirtyQueue.writeNanosEwma(), 1) / dirtyQueue.partitions());
+        return Duration.ofNanos(Math.max(nanos, properties.getMinFlushInterval().toNanos()));
+    }
+
+    /**
+     * При остановке приложения сбрасываем в БД все, что не успели
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        changeFeed.close();
+        dirtyQueue.close();
+
+        log.info("🛑 Остановка: сбрасываем в БД оставшиеся {} dirty записей", dirtyCount.get());
+        int left = drainDirty();
+        if (left > 0) {
+            log.error("❌ Остановка: {} изменений не удалось записать в БД", left);
+        }
+    }
+
+    // Копия пользователя: снимок для буфера, версия для кэша или чистая версия для БД
+    private static User copyOf(User user, boolean dirty) {
+        return new User(user.getId(), user.getName(), user.getEmail(), dirty);
+    }
+
+    private long weightOf(Long id, User user) {
+        return user == null ? 0 : weigher.weigh(id, user);
+    }
+
+    public Map<String, Object> getWriteBackStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dirtyCount", dirtyCount.get());
+        stats.put("dirtyBufferBytes", dirtyBytes.get());
+        stats.put("bufferReads", bufferReads.sum());
+        stats.put("oldestDirtyAgeMs", TimeUnit.NANOSECONDS.toMillis(oldestDirtyAgeNanos()));
+        stats.put("storeWriteMicros", dirtyQueue.writeNanosEwma() / 1000);
+        stats.put("nextBatchSize", flushBatchSize(dirtyQueue.writeNanosEwma()));
+        stats.put("nextFlushDelayMs", TimeUnit.NANOSECONDS.toMillis(Math.max(dirtyQueue.nextFlushDelayNanos(), 0)));
+        stats.put("lowWatermark", properties.getLowWatermark());
+        stats.put("highWatermark", properties.getHighWatermark());
+        stats.put("throttledWrites", throttledWrites.sum());
+        stats.put("rejectedWrites", rejectedWrites.sum());
+        stats.put("partitions", dirtyQueue.stats());
+        return stats;
+    }
+
+    /**
+     * Обработка пачки событий журнала изменений БД: чистые записи кэша обновляются на месте
+     * текущей версией из БД. Dirty записи не трогаем - в кэше более новая версия, чем в БД.
+     */
+    private void applyChanges(List<ChangeEvent> batch) {
+        batch.stream()
+                .map(ChangeEvent::id)
+                .distinct()
+                .forEach(this::applyChange);
+        log.debug("🔄 CDC: обработано {} событий, последний offset {}", batch.size(), batch.get(batch.size() - 1).offset());
+    }
+
+    /**
+     * Строка читается вне compute: чтение БД (с задержкой app.database.read-latency) не держит блокировку
+     * корзины ConcurrentHashMap. Прочитанная версия применяется, только если запись кэша не сменилась
+     * за время чтения - иначе ее уже заменили запись или загрузка, видевшие строку не старше нашей.
+     * Под read-блокировкой ключа: запись пользователя меняет объект в кэше на месте, и CDC не должен
+     * увидеть его между изменением и постановкой в буфер.
+     */
+    private void applyChange(Long id) {
+        keyLocks.withReadLock(id, () -> {
+            User cached = cache.peek(id);
+            if (cached == null || dirtyBuffer.containsKey(id)) {
+                return null;
+            }
+            User current = currentVersion(id);
+            return cache.computeIfPresent(id, (key, value) -> {
+                if (value != cached || dirtyBuffer.containsKey(key)) {
+                    return value;
+                }
+                evictEmail(cached, current);
+                if (current == null) {
+                    CacheEvents.invalidation("users", key, "cdc");
+                }
+                return current;
+            });
+        });
+    }
+
+    // Текущая версия строки через автомат защиты. Если БД не отвечает или автомат разомкнут, измененную
+    // запись убираем из кэша: отдавать известную устаревшей версию нельзя, следующее чтение загрузит новую
+    private User currentVersion(Long id) {
+        try {
+            return loadUser(id);
+        } catch (StoreUnavailableException e) {
+            log.warn("⚠️  CDC: БД недоступна, пользователь {} удален из кэша вместо обновления", id);
+            return null;
+        }
+    }
+
+    public Map<String, Object> getChangeFeedStats() {
+        log.info("📡 Возвращаем состояние подписки кэша на журнал изменений");
+        return changeFeed.stats();
+    }
+
+    public List<HotKeyTracker.HotKey> getHotKeys(int limit) {
+        log.info("🔥 Возвращаем top-{} горячих ключей", limit);
+        return hotKeyTracker.hotKeys(limit);
+    }
+
+    /**
+     * Очистка кэша не теряет записи: сначала буфер сбрасывается в БД, а то, что записать не удалось,
+     * остается в буфере и читается оттуда после очистки
+     */
     public void clearCache() {
-        log.info("🧹 Очищаем весь кэш! Было записей: {}", cache.size());
+        log.info("🧹 Очищаем весь кэш! Было записей: {}, несброшенных изменений: {}", cache.size(), dirtyCount.get());
+        int left = drainDirty();
+        CacheEvents.invalidation("users", "*", "clear");
         cache.clear();
-        log.info("✅ Кэш успешно очищен");
+        emailCache.clear();
+        log.info("✅ Кэш успешно очищен, несброшенных изменений в буфере: {}", left);
     }
 
     public Map<Long, User> getCache() {
         log.info("📤 Возвращаем содержимое кэша клиенту. Размер кэша: {}", cache.size());
-        return new HashMap<>(cache);
+        return cache.snapshot();
+    }
+
+    /**
+     * Слабый ETag содержимого кэша: меняется при любой вставке, замене, удалении или вытеснении
+     */
+    public String getCacheEtag() {
+        return EntityTags.weak("cache", cache.modificationCount());
+    }
+
+    public Map<String, Object> getCacheStats() {
+        log.info("📊 Возвращаем статистику кэша: {} записей, {} байт", cache.size(), cache.weightedSize());
+        Map<String, Object> stats = cache.stats();
+        stats.put("memoryBudget", cacheRegistry.stats());
+        stats.put("stale", staleness.stats());
+        stats.put("trace", traceRecorder.stats());
+        stats.put("emailIndex", emailCache.stats());
+        return stats;
     }
 
     // Метод для демонстрации состояния БД
     public Map<Long, User> getDatabase() {
         log.info("🗄️ Возвращаем содержимое базы данных. Размер БД: {}", database.size());
-        return new HashMap<>(database);
+        return database.snapshot();
+    }
+
+    /**
+     * Имитация медленной или недоступной БД: задержка и отказ чтения по id
+     */
+    public Map<String, Object> setDatabaseFaults(Duration readLatency, boolean readFailing) {
+        log.warn("🧪 Имитация проблем БД: задержка чтения {} мс, отказ чтения: {}", readLatency.toMillis(), readFailing);
+        database.setReadFaults(readLatency, readFailing);
+        return database.readFaults();
     }
-}
\ No newline at end of file
+}
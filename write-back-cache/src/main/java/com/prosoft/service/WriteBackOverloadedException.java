@@ -0,0 +1,21 @@
+package com.prosoft.service;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Запись отклонена: dirty-данных больше верхней отметки, БД не успевает за потоком записей.
+ * Ошибка повторяемая - клиенту стоит повторить запрос через retryAfter.
+ */
+@Getter
+public class WriteBackOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public WriteBackOverloadedException(int dirtyCount, Duration retryAfter) {
+        super("Write-Back перегружен: " + dirtyCount + " записей ожидают сброса в БД, повторите через "
+                + retryAfter.toMillis() + " мс");
+        this.retryAfter = retryAfter;
+    }
+}
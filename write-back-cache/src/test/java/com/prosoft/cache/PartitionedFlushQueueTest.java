@@ -0,0 +1,161 @@
+package com.prosoft.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedFlushQueueTest {
+
+    private static final int PARTITIONS = 4;
+
+    // Сброс сразу, пока в партиции есть ключи
+    private static final PartitionedFlushQueue.Pacing EAGER = pacing(0, 8);
+    // Потоки партиций не сбрасывают сами - только drainNow()
+    private static final PartitionedFlushQueue.Pacing NEVER = pacing(-1, 8);
+
+    private final PartitionedFlushQueue queue = new PartitionedFlushQueue("test-flush", PARTITIONS);
+    private final Queue<Flushed> flushed = new ConcurrentLinkedQueue<>();
+
+    private record Flushed(String thread, Long key) {
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Ключ всегда сбрасывает один поток, и записи ключа идут в порядке добавления")
+    void keysKeepPartitionAndOrder() throws InterruptedException {
+        queue.start(record(key -> true), key -> 0, EAGER);
+        List<Long> added = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (long key = 1; key <= 500; key++) {
+                queue.add(key);
+                added.add(key);
+            }
+        }
+        awaitFlushed(added.size());
+
+        Map<Long, String> owner = new ConcurrentHashMap<>();
+        Map<String, List<Long>> byThread = new ConcurrentHashMap<>();
+        for (Flushed entry : flushed) {
+            String previous = owner.putIfAbsent(entry.key(), entry.thread());
+            assertEquals(previous == null ? entry.thread() : previous, entry.thread(), "ключ " + entry.key() + " сменил партицию");
+            byThread.computeIfAbsent(entry.thread(), thread -> new ArrayList<>()).add(entry.key());
+        }
+        assertEquals(PARTITIONS, byThread.size(), "ключи должны разойтись по всем партициям");
+        // Поток партиции сбрасывает ровно подпоследовательность добавленных ключей, принадлежащих ей
+        byThread.forEach((thread, keys) ->
+                assertEquals(added.stream().filter(key -> thread.equals(owner.get(key))).toList(), keys, thread));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    @DisplayName("Зависшая партиция не задерживает сброс остальных")
+    void stuckPartitionDoesNotBlockOthers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        long stuckKey = 1;
+        queue.start(record(key -> {
+            if (key == stuckKey) {
+                await(release);
+            }
+            return true;
+        }), key -> 0, EAGER);
+
+        queue.add(stuckKey);
+        awaitCondition(() -> queue.size() == 0, "поток партиции не забрал ключ");
+        for (long key = 2; key <= 200; key++) {
+            queue.add(key);
+        }
+
+        // Ключи зависшей партиции ждут, очереди остальных разобраны и ни один ключ не пишется
+        awaitCondition(() -> nonEmptyPartitions() == 1 && flushed.size() + queue.size() == 199,
+                "остальные партиции не сбросились");
+        assertTrue(flushed.size() >= 100, "сброшено только " + flushed.size());
+        assertTrue(flushed.stream().noneMatch(entry -> entry.key() == stuckKey));
+
+        release.countDown();
+        awaitFlushed(200);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    @DisplayName("drainNow сбрасывает все ключи в вызывающем потоке, даже когда партиции ждут")
+    void drainNowFlushesEverything() {
+        queue.start(record(key -> key % 10 != 0), key -> 0, NEVER);
+        for (long key = 1; key <= 100; key++) {
+            queue.add(key);
+        }
+        assertEquals(100, queue.size());
+
+        assertEquals(100, queue.drainNow());
+
+        assertEquals(0, queue.size());
+        assertEquals(100, flushed.size());
+        assertTrue(flushed.stream().allMatch(entry -> entry.thread().equals(Thread.currentThread().getName())));
+        // Неудачные записи очередь не повторяет сама - ключ заново ставит тот, кто хранит изменение
+        long written = queue.stats().stream().mapToLong(stats -> (Long) stats.get("flushed")).sum();
+        assertEquals(90, written);
+    }
+
+    private long nonEmptyPartitions() {
+        return queue.stats().stream().filter(stats -> (Integer) stats.get("queued") > 0).count();
+    }
+
+    private Predicate<Long> record(Predicate<Long> flush) {
+        return key -> {
+            boolean written = flush.test(key);
+            flushed.add(new Flushed(Thread.currentThread().getName(), key));
+            return written;
+        };
+    }
+
+    private void awaitFlushed(int count) throws InterruptedException {
+        awaitCondition(() -> flushed.size() >= count, "сброшено " + flushed.size() + " из " + count);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static PartitionedFlushQueue.Pacing pacing(long delayNanos, int batchSize) {
+        return new PartitionedFlushQueue.Pacing() {
+            @Override
+            public long delayNanos(int queued, long headAgeNanos, long sinceLastFlushNanos) {
+                return queued == 0 ? -1 : delayNanos;
+            }
+
+            @Override
+            public int batchSize(int queued, double writeNanosEwma) {
+                return batchSize;
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package com.prosoft.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.service.WriteBackOverloadedException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserControllerTest {
+
+    private final UserController controller = new UserController(null, new ObjectMapper());
+
+    @Test
+    @DisplayName("Перегрузка Write-Back - 503 с Retry-After в целых секундах, округленных вверх")
+    void overloadIsServiceUnavailableWithRetryAfter() {
+        ResponseEntity<String> response = controller.handleOverload(new WriteBackOverloadedException(10_000, Duration.ofMillis(1500)));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    @DisplayName("Retry-After не меньше секунды")
+    void retryAfterIsAtLeastOneSecond() {
+        ResponseEntity<String> response = controller.handleOverload(new WriteBackOverloadedException(10_000, Duration.ofMillis(20)));
+
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+}
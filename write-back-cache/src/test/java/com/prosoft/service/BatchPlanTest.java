@@ -0,0 +1,133 @@
+package com.prosoft.service;
+
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
+import com.prosoft.model.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchPlanTest {
+
+    private final Map<Long, User> rows = new HashMap<>(Map.of(1L, new User(1L, "Alice", "alice@example.com", false)));
+
+    @Test
+    @DisplayName("CREATE с id существующей строки - CONFLICT, строка не меняется")
+    void createOfExistingIdConflicts() {
+        BatchPlan plan = resolve(List.of(create(1L, "Bob", "bob@example.com")));
+
+        assertStatuses(plan, BatchResult.Status.CONFLICT);
+        assertTrue(plan.changes().isEmpty());
+    }
+
+    @Test
+    @DisplayName("UPDATE и DELETE отсутствующей строки - NOT_FOUND")
+    void updateAndDeleteOfMissingIdAreNotFound() {
+        BatchPlan plan = resolve(List.of(update(7L, "Bob", "bob@example.com"), delete(8L)));
+
+        assertStatuses(plan, BatchResult.Status.NOT_FOUND, BatchResult.Status.NOT_FOUND);
+        assertTrue(plan.changes().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Операции над одним id применяются по порядку, в изменения попадает последняя версия")
+    void operationsOnOneIdApplyInOrder() {
+        BatchPlan plan = resolve(List.of(
+                create(5L, "Eve", "eve@example.com"),
+                update(5L, "Eve Adams", "eve.adams@example.com"),
+                create(5L, "Mallory", "mallory@example.com"),
+                delete(1L),
+                update(1L, "Alice", "alice@example.com"),
+                create(1L, "Alice Again", "alice.again@example.com")));
+
+        assertStatuses(plan, BatchResult.Status.OK, BatchResult.Status.OK, BatchResult.Status.CONFLICT,
+                BatchResult.Status.OK, BatchResult.Status.NOT_FOUND, BatchResult.Status.OK);
+        assertEquals(List.of(5L, 1L), List.copyOf(plan.changes().keySet()));
+        assertEquals("Eve Adams", plan.changes().get(5L).getName());
+        assertEquals("Alice Again", plan.changes().get(1L).getName());
+        plan.changes().values().forEach(user -> assertTrue(user.isDirty()));
+    }
+
+    @Test
+    @DisplayName("Удаление после создания в том же пакете оставляет удаление")
+    void deleteAfterCreateLeavesDeletion() {
+        BatchPlan plan = resolve(List.of(create(5L, "Eve", "eve@example.com"), delete(5L)));
+
+        assertStatuses(plan, BatchResult.Status.OK, BatchResult.Status.OK);
+        assertTrue(plan.changes().containsKey(5L));
+        assertNull(plan.changes().get(5L));
+    }
+
+    @Test
+    @DisplayName("Неверные операции получают INVALID со своим номером и не мешают остальным")
+    void invalidOperationsAreReportedWithIndex() {
+        BatchPlan plan = BatchPlan.resolve(List.of(
+                BatchOperation.unreadable("Строка 1: неверный JSON"),
+                new BatchOperation(null, 1L, "Alice", "alice@example.com", null),
+                update(null, "Bob", "bob@example.com"),
+                delete(null),
+                create(null, "Bob", null),
+                update(1L, null, "alice@example.com"),
+                update(1L, "Alice Smith", "alice.smith@example.com")), 100, rows::get);
+
+        assertStatuses(plan, BatchResult.Status.INVALID, BatchResult.Status.INVALID, BatchResult.Status.INVALID,
+                BatchResult.Status.INVALID, BatchResult.Status.INVALID, BatchResult.Status.INVALID, BatchResult.Status.OK);
+        for (int i = 0; i < plan.results().size(); i++) {
+            BatchResult result = plan.results().get(i);
+            assertEquals(100 + i, result.index());
+            assertEquals(result.status() == BatchResult.Status.INVALID, result.error() != null, String.valueOf(result));
+        }
+        assertEquals("Строка 1: неверный JSON", plan.results().get(0).error());
+        assertEquals(1, plan.changes().size());
+        assertEquals("Alice Smith", plan.changes().get(1L).getName());
+    }
+
+    @Test
+    @DisplayName("Ключи пакета: id назначается только корректным CREATE без id")
+    void keysAssignIdsOnlyToValidCreates() {
+        AtomicLong nextId = new AtomicLong(10);
+        BatchOperation valid = create(null, "Bob", "bob@example.com");
+        BatchOperation invalid = create(null, "Bob", null);
+        List<BatchOperation> batch = List.of(valid, invalid, update(1L, "Alice", "alice@example.com"), delete(3L));
+
+        List<Long> keys = BatchPlan.keys(batch, nextId::incrementAndGet);
+
+        assertEquals(List.of(11L, 1L, 3L), keys);
+        assertEquals(11L, valid.getId());
+        assertNull(invalid.getId());
+
+        BatchPlan plan = BatchPlan.resolve(batch, 0, rows::get);
+        assertStatuses(plan, BatchResult.Status.OK, BatchResult.Status.INVALID, BatchResult.Status.OK,
+                BatchResult.Status.NOT_FOUND);
+        assertNotNull(plan.changes().get(11L));
+    }
+
+    private BatchPlan resolve(List<BatchOperation> batch) {
+        return BatchPlan.resolve(batch, 0, rows::get);
+    }
+
+    private static void assertStatuses(BatchPlan plan, BatchResult.Status... expected) {
+        assertEquals(List.of(expected), plan.results().stream().map(BatchResult::status).toList());
+    }
+
+    private static BatchOperation create(Long id, String name, String email) {
+        return new BatchOperation(BatchOperation.Type.CREATE, id, name, email, null);
+    }
+
+    private static BatchOperation update(Long id, String name, String email) {
+        return new BatchOperation(BatchOperation.Type.UPDATE, id, name, email, null);
+    }
+
+    private static BatchOperation delete(Long id) {
+        return new BatchOperation(BatchOperation.Type.DELETE, id, null, null, null);
+    }
+}
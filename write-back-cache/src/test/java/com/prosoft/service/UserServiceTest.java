@@ -0,0 +1,290 @@
+package com.prosoft.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.MemoryBudget;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.config.CacheProperties;
+import com.prosoft.config.WriteBackProperties;
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
+import com.prosoft.model.User;
+import com.prosoft.store.ChangeLog;
+import com.prosoft.store.CircuitBreaker;
+import com.prosoft.store.UserStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserServiceTest {
+
+    private final WriteBackProperties properties = new WriteBackProperties();
+    // Записи сброса в БД по порядку: "id=name"
+    private final List<String> storeWrites = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch storeReleased = new CountDownLatch(1);
+    private volatile boolean storeFailing;
+    private volatile boolean storeStuck;
+    private final UserStore database = new UserStore(new ChangeLog(1024)) {
+        @Override
+        public long put(Long id, User user) {
+            if (storeStuck) {
+                await(storeReleased); // БД не успевает: сброс висит на записи
+            }
+            if (storeFailing) {
+                throw new IllegalStateException("БД недоступна для записи");
+            }
+            storeWrites.add(id + "=" + user.getName());
+            return super.put(id, user);
+        }
+    };
+    private UserService service;
+
+    UserServiceTest() {
+        // Потоки партиций сами не сбрасывают: в БД пишет только явный сброс (очистка кэша, остановка)
+        properties.setMinFlushInterval(Duration.ofHours(1));
+        properties.setMaxFlushInterval(Duration.ofHours(1));
+        properties.setMaxDirtyAge(Duration.ofHours(1));
+        properties.setFlushPartitions(4);
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        storeReleased.countDown();
+        storeFailing = false;
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Пакет кладет в кэш dirty-копии, сброс в БД снимает флаг")
+    void batchCachesDirtyUsers() {
+        start();
+
+        List<BatchResult> results = service.applyBatch(List.of(
+                new BatchOperation(BatchOperation.Type.CREATE, null, "Dave", "dave@example.com", null),
+                new BatchOperation(BatchOperation.Type.UPDATE, 1L, "Alice Smith", "alice.smith@example.com", null)), 0);
+
+        results.forEach(result -> assertEquals(BatchResult.Status.OK, result.status(), String.valueOf(result)));
+        Map<Long, User> cached = service.getCache();
+        assertEquals(2, cached.size());
+        cached.values().forEach(user -> assertTrue(user.isDirty(), "в кэше не dirty: " + user));
+        assertEquals("Alice", database.get(1L).getName());
+
+        service.clearCache();
+
+        assertEquals("Alice Smith", database.get(1L).getName());
+        User reloaded = service.getUserById(1L);
+        assertEquals("Alice Smith", reloaded.getName());
+        assertFalse(reloaded.isDirty());
+    }
+
+    @Test
+    @DisplayName("Очистка кэша сначала сбрасывает буфер изменений в БД")
+    void clearCacheFlushesBufferFirst() {
+        start();
+        service.updateUser(1L, "Alice Smith", "alice.smith@example.com");
+        User dave = service.createUser(new User(null, "Dave", "dave@example.com", false));
+        service.deleteUser(2L);
+        assertEquals("Alice", database.get(1L).getName());
+        assertEquals(3, dirtyCount());
+
+        service.clearCache();
+
+        assertTrue(service.getCache().isEmpty());
+        assertEquals(0, dirtyCount());
+        assertEquals("Alice Smith", database.get(1L).getName());
+        assertEquals("Dave", database.get(dave.getId()).getName());
+        assertNull(database.get(2L));
+    }
+
+    @Test
+    @DisplayName("Неудачный сброс оставляет изменение в буфере и в очереди, чтение берет его из буфера")
+    void failedFlushKeepsChange() {
+        start();
+        service.updateUser(1L, "Alice Smith", "alice.smith@example.com");
+        storeFailing = true;
+
+        service.clearCache();
+
+        assertTrue(service.getCache().isEmpty());
+        assertEquals(1, dirtyCount());
+        assertEquals("Alice", database.get(1L).getName());
+        assertEquals("Alice Smith", service.getUserById(1L).getName());
+        assertEquals(1L, service.getWriteBackStats().get("bufferReads"));
+
+        // Ключ остался в очереди сброса: следующий сброс его запишет
+        storeFailing = false;
+        service.clearCache();
+
+        assertEquals(0, dirtyCount());
+        assertEquals("Alice Smith", database.get(1L).getName());
+    }
+
+    @Test
+    @DisplayName("Вытесненная dirty-запись читается из буфера, а не из БД")
+    void evictedDirtyEntryIsReadFromBuffer() {
+        for (long id = 10; id < 60; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com", false));
+        }
+        start(new CacheRegistry(new MemoryBudget(4_000), Map.of()));
+        service.updateUser(1L, "Alice Smith", "alice.smith@example.com");
+
+        for (long id = 10; id < 60; id++) {
+            service.getUserById(id);
+        }
+
+        assertFalse(service.getCache().containsKey(1L), "запись должна быть вытеснена");
+        assertEquals("Alice", database.get(1L).getName());
+        User user = service.getUserById(1L);
+        assertEquals("Alice Smith", user.getName());
+        assertTrue(user.isDirty());
+        assertEquals(1L, service.getWriteBackStats().get("bufferReads"));
+        // Индекс email несброшенного пользователя закреплен и пережил вытеснение
+        assertEquals(1L, service.getUserByEmail("alice.smith@example.com").getId());
+    }
+
+    @Test
+    @DisplayName("Записи одного ключа попадают в БД в порядке изменений при параллельном сбросе партиций")
+    void flushKeepsPerKeyOrder() {
+        properties.setMinFlushInterval(Duration.ofMillis(1));
+        properties.setMaxFlushInterval(Duration.ofMillis(5));
+        properties.setMaxDirtyAge(Duration.ofMillis(10));
+        for (long id = 4; id <= 20; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com", false));
+        }
+        start();
+        storeWrites.clear();
+
+        int rounds = 50;
+        for (int round = 1; round <= rounds; round++) {
+            for (long id = 1; id <= 20; id++) {
+                service.updateUser(id, "v" + round, "user" + id + "@example.com");
+            }
+            if (round % 10 == 0) {
+                sleep(Duration.ofMillis(5));
+            }
+        }
+        service.clearCache();
+
+        assertEquals(0, dirtyCount());
+        List<String> writes;
+        synchronized (storeWrites) {
+            writes = List.copyOf(storeWrites);
+        }
+        assertTrue(writes.size() > 20, "потоки партиций должны сбрасывать и до очистки: " + writes.size());
+        for (long id = 1; id <= 20; id++) {
+            String prefix = id + "=v";
+            List<Integer> versions = writes.stream()
+                    .filter(write -> write.startsWith(prefix))
+                    .map(write -> Integer.parseInt(write.substring(prefix.length())))
+                    .toList();
+            for (int i = 1; i < versions.size(); i++) {
+                assertTrue(versions.get(i) > versions.get(i - 1), "ключ " + id + ": " + versions);
+            }
+            assertEquals(rounds, versions.get(versions.size() - 1));
+            assertEquals("v" + rounds, database.get(id).getName());
+        }
+    }
+
+    @Test
+    @DisplayName("На верхней отметке запись отклоняется с Retry-After")
+    void highWatermarkRejectsWrites() {
+        properties.setLowWatermark(1);
+        properties.setHighWatermark(3);
+        properties.setMaxThrottleDelay(Duration.ofMillis(1));
+        start();
+        storeStuck = true;
+
+        for (int i = 0; i < 3; i++) {
+            service.createUser(new User(null, "User " + i, "user" + i + "@example.com", false));
+        }
+        WriteBackOverloadedException rejected = assertThrows(WriteBackOverloadedException.class,
+                () -> service.createUser(new User(null, "Eve", "eve@example.com", false)));
+
+        assertTrue(rejected.getRetryAfter().toNanos() > 0);
+        assertEquals(3, dirtyCount());
+        assertEquals(1L, service.getWriteBackStats().get("rejectedWrites"));
+    }
+
+    @Test
+    @DisplayName("Пакет проверяется по числу своих изменений и отклоняется целиком")
+    void batchAdmissionCountsWholeBatch() {
+        properties.setLowWatermark(1);
+        properties.setHighWatermark(4);
+        properties.setMaxThrottleDelay(Duration.ofMillis(1));
+        start();
+        storeStuck = true;
+
+        assertThrows(WriteBackOverloadedException.class, () -> service.applyBatch(creates(5), 0));
+        assertTrue(service.getCache().isEmpty());
+        assertEquals(0, dirtyCount());
+
+        service.applyBatch(creates(4), 0);
+        assertEquals(4, dirtyCount());
+        assertThrows(WriteBackOverloadedException.class, () -> service.applyBatch(creates(1), 4));
+        assertEquals(4, service.getCache().size());
+    }
+
+    private UserService start() {
+        return start(new CacheRegistry(new MemoryBudget(0), Map.of()));
+    }
+
+    private UserService start(CacheRegistry registry) {
+        CacheProperties cacheProperties = new CacheProperties();
+        // topK = 0: горячих ключей нет, вытеснение по бюджету не закрепляет записи
+        service = new UserService(properties, new HotKeyTracker(16, 0, 1, 60_000), new StripedKeyLocks(64),
+                database, cacheProperties, registry, new UserResponseEncoder(new ObjectMapper(), false, false, 0),
+                AccessTraceRecorder.disabled(),
+                new StaleWhileRevalidate(Duration.ZERO, Duration.ZERO, new CircuitBreaker("test", 5, Duration.ofSeconds(5), Duration.ZERO)));
+        service.init();
+        return service;
+    }
+
+    private int dirtyCount() {
+        return (Integer) service.getWriteBackStats().get("dirtyCount");
+    }
+
+    private static List<BatchOperation> creates(int count) {
+        List<BatchOperation> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(new BatchOperation(BatchOperation.Type.CREATE, null, "Batch " + i, "batch" + i + "@example.com", null));
+        }
+        return batch;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
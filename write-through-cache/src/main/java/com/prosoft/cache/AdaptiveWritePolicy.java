@@ -0,0 +1,152 @@
+package com.prosoft.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Выбор политики записи по ключу: write-through для ключей, которые читают после записи,
+ * и write-around для ключей, которые часто пишут и редко читают.
+ *
+ * Ключи хешируются на корзины (buckets), в каждой - счетчики чтений и записей, которые периодически
+ * делятся пополам, как в HotKeyTracker. Режим корзины переключается с гистерезисом: в write-around -
+ * когда чтений на запись меньше aroundBelowRatio, обратно в write-through - когда больше throughAboveRatio.
+ * Между порогами режим не меняется, поэтому ключ на границе не "дребезжит" между политиками.
+ */
+public class AdaptiveWritePolicy {
+
+    public enum Mode {
+        WRITE_THROUGH, WRITE_AROUND
+    }
+
+    private static final int THROUGH = 0;
+    private static final int AROUND = 1;
+
+    private final boolean enabled;
+    private final int mask;
+    private final int minWrites;
+    private final double aroundBelowRatio;
+    private final double throughAboveRatio;
+    private final long decayIntervalNanos;
+
+    private final AtomicLongArray reads;
+    private final AtomicLongArray writes;
+    private final AtomicIntegerArray modes;
+    private final AtomicLong nextDecayAt;
+
+    private final LongAdder writesThrough = new LongAdder();
+    private final LongAdder writesAround = new LongAdder();
+    private final LongAdder switchesToAround = new LongAdder();
+    private final LongAdder switchesToThrough = new LongAdder();
+
+    /**
+     * @param enabled           false - всегда write-through, счетчики не ведутся
+     * @param buckets           число корзин (округляется вверх до степени двойки)
+     * @param minWrites         меньше записей в корзине - режим не меняется (мало данных для решения)
+     * @param aroundBelowRatio  чтений на запись меньше - корзина переходит в write-around
+     * @param throughAboveRatio чтений на запись больше - корзина возвращается в write-through
+     * @param decayIntervalMs   период "старения" - счетчики делятся пополам
+     */
+    public AdaptiveWritePolicy(boolean enabled, int buckets, int minWrites,
+                               double aroundBelowRatio, double throughAboveRatio, long decayIntervalMs) {
+        int size = Math.max(16, Integer.highestOneBit(Math.max(buckets, 2) - 1) << 1);
+        this.enabled = enabled;
+        this.mask = size - 1;
+        this.minWrites = Math.max(1, minWrites);
+        this.aroundBelowRatio = aroundBelowRatio;
+        this.throughAboveRatio = Math.max(throughAboveRatio, aroundBelowRatio);
+        this.decayIntervalNanos = decayIntervalMs * 1_000_000;
+        this.reads = new AtomicLongArray(enabled ? size : 0);
+        this.writes = new AtomicLongArray(enabled ? size : 0);
+        this.modes = new AtomicIntegerArray(enabled ? size : 0);
+        this.nextDecayAt = new AtomicLong(System.nanoTime() + decayIntervalNanos);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void recordRead(Long key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        decayIfDue();
+        reads.incrementAndGet(bucket(key));
+    }
+
+    /**
+     * Учитывает запись ключа и возвращает политику для нее
+     */
+    public Mode onWrite(Long key) {
+        if (!enabled || key == null) {
+            writesThrough.increment();
+            return Mode.WRITE_THROUGH;
+        }
+        decayIfDue();
+        int bucket = bucket(key);
+        long w = writes.incrementAndGet(bucket);
+        long r = reads.get(bucket);
+
+        int mode = modes.get(bucket);
+        if (w >= minWrites) {
+            if (mode == THROUGH && r < w * aroundBelowRatio && modes.compareAndSet(bucket, THROUGH, AROUND)) {
+                switchesToAround.increment();
+                mode = AROUND;
+            } else if (mode == AROUND && r > w * throughAboveRatio && modes.compareAndSet(bucket, AROUND, THROUGH)) {
+                switchesToThrough.increment();
+                mode = THROUGH;
+            }
+        }
+
+        if (mode == AROUND) {
+            writesAround.increment();
+            return Mode.WRITE_AROUND;
+        }
+        writesThrough.increment();
+        return Mode.WRITE_THROUGH;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("writesThrough", writesThrough.sum());
+        stats.put("writesAround", writesAround.sum());
+        if (enabled) {
+            int around = 0;
+            for (int i = 0; i < modes.length(); i++) {
+                around += modes.get(i);
+            }
+            stats.put("buckets", modes.length());
+            stats.put("writeAroundBuckets", around);
+            stats.put("switchesToAround", switchesToAround.sum());
+            stats.put("switchesToThrough", switchesToThrough.sum());
+        }
+        return stats;
+    }
+
+    // Старение: раз в decayInterval ровно один поток делит все счетчики пополам, режимы корзин сохраняются
+    private void decayIfDue() {
+        long deadline = nextDecayAt.get();
+        long now = System.nanoTime();
+        if (now < deadline || !nextDecayAt.compareAndSet(deadline, now + decayIntervalNanos)) {
+            return;
+        }
+        for (int i = 0; i < reads.length(); i++) {
+            reads.getAndUpdate(i, value -> value >> 1);
+            writes.getAndUpdate(i, value -> value >> 1);
+        }
+    }
+
+    // Финализатор MurmurHash3 - перемешивает последовательные id
+    private int bucket(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
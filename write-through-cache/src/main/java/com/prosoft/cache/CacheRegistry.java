@@ -0,0 +1,60 @@
+package com.prosoft.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Реестр именованных кэшей одной JVM: каждый кэш - пространство имен общего бюджета памяти
+ * со своими квотой, заимствованием и сроком жизни из app.cache.memory.namespaces.
+ *
+ * Сумма квот не может превышать бюджет - иначе квота не была бы гарантией. Пространства имен
+ * без настроек делят свободный остаток бюджета, как кэши без квот.
+ */
+@Slf4j
+public class CacheRegistry {
+
+    private final MemoryBudget budget;
+    private final Map<String, CacheNamespace> namespaces;
+    private final Map<String, WeightedCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    public CacheRegistry(MemoryBudget budget, Map<String, CacheNamespace> namespaces) {
+        long quotas = namespaces.values().stream().mapToLong(CacheNamespace::quotaBytes).sum();
+        if (quotas > budget.limitBytes()) {
+            throw new IllegalStateException("Сумма квот пространств имен кэша (" + quotas
+                    + " байт) превышает общий бюджет памяти (" + budget.limitBytes() + " байт)");
+        }
+        this.budget = budget;
+        this.namespaces = Map.copyOf(namespaces);
+    }
+
+    /**
+     * Новый кэш пространства имен name с его настройками (или без квоты, если настроек нет)
+     */
+    public <K, V> WeightedCache<K, V> create(String name, Weigher<K, V> weigher, BiPredicate<K, V> pinned) {
+        CacheNamespace namespace = namespaces.getOrDefault(name, CacheNamespace.SHARED);
+        WeightedCache<K, V> cache = new WeightedCache<>(name, budget, namespace, weigher, pinned);
+        caches.put(name, cache);
+        log.info("🗂️  Кэш {}: квота {} байт, заимствование {}, ttl {}", name, namespace.quotaBytes(), namespace.borrow(), namespace.ttl());
+        return cache;
+    }
+
+    public MemoryBudget budget() {
+        return budget;
+    }
+
+    /**
+     * Бюджет и полная статистика каждого пространства имен: занято, квота, заимствовано сверх квоты,
+     * hit rate, вытеснения, истечения
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = budget.stats();
+        Map<String, Object> perNamespace = new TreeMap<>();
+        caches.forEach((name, cache) -> perNamespace.put(name, cache.stats()));
+        stats.put("namespaces", perNamespace);
+        return stats;
+    }
+}
@@ -0,0 +1,30 @@
+package com.prosoft.cache;
+
+/**
+ * Метаданные и готовое тело ответа для версии записи кэша: ETag содержимого, JSON в UTF-8
+ * и, если он достаточно велик, gzip-вариант. Тела хранятся только в режиме encoded-responses,
+ * иначе json и gzip - null, а запись нужна лишь для ETag.
+ */
+public record EncodedResponse(String etag, String gzipEtag, byte[] json, byte[] gzip) {
+
+    public String etag(boolean gzipped) {
+        return gzipped ? gzipEtag : etag;
+    }
+
+    // Оценка удерживаемой памяти: сама запись, строки ETag и массивы байт (64-битная JVM, compressed oops)
+    public long weight() {
+        return 32 + stringBytes(etag) + stringBytes(gzipEtag) + arrayBytes(json) + arrayBytes(gzip);
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + arrayBytes(value.length());
+    }
+
+    private static long arrayBytes(byte[] array) {
+        return array == null ? 0 : arrayBytes(array.length);
+    }
+
+    private static long arrayBytes(int length) {
+        return (16 + length + 7) & ~7L;
+    }
+}
@@ -0,0 +1,77 @@
+package com.prosoft.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.AdaptiveWritePolicy;
+import com.prosoft.cache.CacheNamespace;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.MemoryBudget;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.store.CircuitBreaker;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public HotKeyTracker hotKeyTracker(CacheProperties properties) {
+        CacheProperties.HotKeys hotKeys = properties.getHotKeys();
+        return new HotKeyTracker(hotKeys.getSketchWidth(), hotKeys.getTopK(), hotKeys.getSampleRate(),
+                hotKeys.getDecayInterval().toMillis());
+    }
+
+    @Bean
+    public StripedKeyLocks keyLocks(CacheProperties properties) {
+        return new StripedKeyLocks(properties.getLocks().getStripes());
+    }
+
+    @Bean
+    public MemoryBudget memoryBudget(CacheProperties properties) {
+        return new MemoryBudget(properties.getMemory().getBudget().toBytes());
+    }
+
+    @Bean
+    public CacheRegistry cacheRegistry(MemoryBudget memoryBudget, CacheProperties properties) {
+        Map<String, CacheNamespace> namespaces = new LinkedHashMap<>();
+        properties.getMemory().getNamespaces().forEach((name, namespace) -> namespaces.put(name,
+                new CacheNamespace(namespace.getQuota().toBytes(), namespace.isBorrow(), namespace.getTtl())));
+        return new CacheRegistry(memoryBudget, namespaces);
+    }
+
+    @Bean
+    public UserResponseEncoder userResponseEncoder(ObjectMapper objectMapper, CacheProperties properties) {
+        CacheProperties.EncodedResponses encoded = properties.getEncodedResponses();
+        return new UserResponseEncoder(objectMapper, encoded.isEnabled(), encoded.isGzip(), encoded.getGzipMinSize().toBytes());
+    }
+
+    @Bean
+    public AccessTraceRecorder accessTraceRecorder(CacheProperties properties) {
+        CacheProperties.Trace trace = properties.getTrace();
+        return trace.isEnabled()
+                ? AccessTraceRecorder.toFile(Path.of(trace.getPath()), trace.getQueueCapacity())
+                : AccessTraceRecorder.disabled();
+    }
+
+    @Bean
+    public StaleWhileRevalidate staleWhileRevalidate(CacheProperties properties) {
+        CacheProperties.Stale stale = properties.getStale();
+        CircuitBreaker breaker = new CircuitBreaker("user-store", stale.getFailureThreshold(),
+                stale.getOpenDuration(), stale.getSlowCallThreshold());
+        return new StaleWhileRevalidate(stale.getSoftTtl(), stale.getHardTtl(), breaker);
+    }
+
+    @Bean
+    public AdaptiveWritePolicy adaptiveWritePolicy(CacheProperties properties) {
+        CacheProperties.AdaptiveWrite adaptive = properties.getAdaptiveWrite();
+        return new AdaptiveWritePolicy(adaptive.isEnabled(), adaptive.getBuckets(), adaptive.getMinWrites(),
+                adaptive.getAroundBelowRatio(), adaptive.getThroughAboveRatio(), adaptive.getDecayInterval().toMillis());
+    }
+}
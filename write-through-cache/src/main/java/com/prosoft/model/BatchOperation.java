@@ -0,0 +1,53 @@
+package com.prosoft.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Одна операция пакета POST /api/users/batch: {"op":"CREATE|UPDATE|DELETE","id":..,"name":..,"email":..}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchOperation {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private Type op;
+    private Long id;
+    private String name;
+    private String email;
+
+    // Ошибка разбора элемента потока - операция не применяется, но получает свою строку результата
+    @JsonIgnore
+    private String parseError;
+
+    public static BatchOperation unreadable(String error) {
+        BatchOperation operation = new BatchOperation();
+        operation.setParseError(error);
+        return operation;
+    }
+
+    /**
+     * Причина, по которой операцию нельзя применить, или null
+     */
+    public String problem() {
+        if (parseError != null) {
+            return parseError;
+        }
+        if (op == null) {
+            return "Не указана операция op (CREATE, UPDATE или DELETE)";
+        }
+        if (op != Type.CREATE && id == null) {
+            return "Для " + op + " нужен id";
+        }
+        if (op != Type.DELETE && (name == null || email == null)) {
+            return "Для " + op + " нужны name и email";
+        }
+        return null;
+    }
+}
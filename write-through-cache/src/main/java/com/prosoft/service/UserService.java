@@ -1,23 +1,97 @@
 package com.prosoft.service;
 
+import com.prosoft.cache.AccessTraceRecorder;
+import com.prosoft.cache.AdaptiveWritePolicy;
+import com.prosoft.cache.CacheEvents;
+import com.prosoft.cache.CacheRegistry;
+import com.prosoft.cache.EmailKeyWeigher;
+import com.prosoft.cache.EncodedResponse;
+import com.prosoft.cache.EntityTags;
+import com.prosoft.cache.HotKeyTracker;
+import com.prosoft.cache.StaleWhileRevalidate;
+import com.prosoft.cache.StripedKeyLocks;
+import com.prosoft.cache.UserResponseEncoder;
+import com.prosoft.cache.UserWeigher;
+import com.prosoft.cache.WeightedCache;
+import com.prosoft.config.CacheProperties;
+import com.prosoft.model.BatchOperation;
+import com.prosoft.model.BatchResult;
 import com.prosoft.model.User;
+import com.prosoft.store.ChangeEvent;
+import com.prosoft.store.ChangeFeedSubscriber;
+import com.prosoft.store.StoreUnavailableException;
+import com.prosoft.store.UserStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class UserService {
 
-    // Имитация базы данных
-    private final Map<Long, User> database = new HashMap<>();
+    // Имитация базы данных с журналом изменений (CDC)
+    private final UserStore database;
 
-    // Write-Through Cache
-    private final Map<Long, User> cache = new ConcurrentHashMap<>();
+    // Write-Through Cache, емкость в байтах (общий бюджет памяти JVM)
+    private final WeightedCache<Long, User> cache;
+
+    // Вторичный индекс email -> id: поиск по email идет дальше по обычному пути чтения по id
+    private final WeightedCache<String, Long> emailCache;
+
+    // Частота обращений по ключам - для поиска "горячих" пользователей
+    private final HotKeyTracker hotKeyTracker;
+
+    // Блокировки по ключу: двухфазная запись в БД и кэш атомарна для одного id, разные id пишутся параллельно
+    private final StripedKeyLocks keyLocks;
+
+    // Общий для кэшей JVM бюджет памяти (показывается в /cache/stats)
+    private final CacheRegistry cacheRegistry;
+
+    // Готовые JSON-ответы хранятся рядом с записями кэша (app.cache.encoded-responses)
+    private final UserResponseEncoder responseEncoder;
+
+    // Трасса обращений для офлайн-моделирования политик вытеснения (app.cache.trace)
+    private final AccessTraceRecorder traceRecorder;
+
+    // Устаревшие записи отдаются сразу с фоновой перезагрузкой, чтения БД - через автомат защиты (app.cache.stale)
+    private final StaleWhileRevalidate staleness;
+
+    // Политика записи по ключу: write-through или write-around по соотношению чтений и записей (app.cache.adaptive-write)
+    private final AdaptiveWritePolicy writePolicy;
+
+    // Подписка кэша на журнал изменений БД
+    private final CacheProperties cacheProperties;
+    private ChangeFeedSubscriber changeFeed;
+
+    // Дополнительные тестовые пользователи (нужны нагрузочному стенду loadtest)
+    @Value("${app.database.seed-users:0}")
+    private int seedUsers;
+
+    public UserService(HotKeyTracker hotKeyTracker, StripedKeyLocks keyLocks,
+                       UserStore database, CacheProperties cacheProperties,
+                       CacheRegistry cacheRegistry, UserResponseEncoder responseEncoder,
+                       AccessTraceRecorder traceRecorder, StaleWhileRevalidate staleness,
+                       AdaptiveWritePolicy writePolicy) {
+        this.hotKeyTracker = hotKeyTracker;
+        this.keyLocks = keyLocks;
+        this.database = database;
+        this.cacheProperties = cacheProperties;
+        this.cacheRegistry = cacheRegistry;
+        this.responseEncoder = responseEncoder;
+        this.traceRecorder = traceRecorder;
+        this.staleness = staleness;
+        this.writePolicy = writePolicy;
+        // Вытеснение по весу не трогает "горячие" ключи
+        this.cache = cacheRegistry.create("users", new UserWeigher(), (id, user) -> hotKeyTracker.isHot(id));
+        this.emailCache = cacheRegistry.create("users-by-email", new EmailKeyWeigher(), (email, id) -> false);
+    }
 
     @PostConstruct
     public void init() {
@@ -25,8 +99,16 @@ public class UserService {
         database.put(1L, new User(1L, "Alice", "alice@example.com"));
         database.put(2L, new User(2L, "Bob", "bob@example.com"));
         database.put(3L, new User(3L, "Charlie", "charlie@example.com"));
+        for (long id = 4; id <= seedUsers; id++) {
+            database.put(id, new User(id, "User " + id, "user" + id + "@example.com"));
+        }
 
         log.info("🔧 База данных инициализирована с {} пользователями", database.size());
+
+        // Кэш пока пуст - подписываемся с текущего конца журнала
+        changeFeed = new ChangeFeedSubscriber("user-cache", database.changeLog(), database.changeLog().tail(),
+                cacheProperties.getCdc().getBatchSize(), this::applyChanges, cache::clear);
+        changeFeed.start(cacheProperties.getCdc().getPollInterval());
     }
 
     /**
@@ -34,17 +116,142 @@ public class UserService {
      */
     public User getUserById(Long id) {
         log.info("🔍 Запрос пользователя с ID: {}", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+        writePolicy.recordRead(id);
 
-        // Проверяем кэш
-        User cachedUser = cache.get(id);
-        if (cachedUser != null) {
+        // Проверяем кэш. Устаревшая запись отдается сразу, а обновляется в фоне;
+        // запись старше жесткого срока не отдается - загружаем заново
+        WeightedCache.Timed<User> cached = cache.getTimed(id);
+        if (cached != null && staleness.serve(id, cached.ageNanos(), () -> refreshEntry(id))) {
             log.info("🎯 CACHE HIT: Пользователь найден в кэше!");
-            return cachedUser;
+            return cached.value();
         }
 
+        // Загрузка промаха под read-блокировкой ключа: конкурентная запись того же id
+        // не может вклиниться между чтением из БД и сохранением в кэш
+        return keyLocks.withReadLock(id, () -> loadIntoCache(id));
+    }
+
+    /**
+     * Поиск по email: индекс email -> id в кэше, дальше - обычный путь чтения по id с его кэшем,
+     * поэтому попадание стоит столько же, сколько попадание по id. Запись индекса - только подсказка:
+     * найденный пользователь сверяется с email, а несовпавшая запись удаляется и ищется по индексу БД.
+     */
+    public User getUserByEmail(String email) {
+        log.info("🔍 Запрос пользователя с email: {}", email);
+        String key = UserStore.normalizeEmail(email);
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+
+        Long cachedId = emailCache.get(key);
+        if (cachedId != null) {
+            User user = getUserById(cachedId);
+            if (user != null && key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+                log.info("🎯 CACHE HIT: email найден в индексе кэша (ID {})", cachedId);
+                return user;
+            }
+            emailCache.remove(key);
+        }
+
+        log.info("❌ CACHE MISS: email не найден в индексе кэша, ищем по индексу БД...");
+        Long id = staleness.load(() -> database.findIdByEmail(key));
+        User user = id == null ? null : getUserById(id);
+        if (user == null || !key.equals(UserStore.normalizeEmail(user.getEmail()))) {
+            log.warn("⚠️  Пользователь с email {} не найден", email);
+            return null;
+        }
+        emailCache.put(key, id);
+        return user;
+    }
+
+    // Запись индекса email -> id; пользователь без email в индексе не участвует (как и в индексе UserStore)
+    private void indexEmail(String email, Long id) {
+        String key = UserStore.normalizeEmail(email);
+        if (key != null) {
+            emailCache.put(key, id);
+        }
+    }
+
+    // Запись индекса email -> id уходит вместе с прежней версией пользователя, если email сменился
+    private void evictEmail(User previous, User current) {
+        String email = previous == null ? null : UserStore.normalizeEmail(previous.getEmail());
+        if (email != null && (current == null || !email.equals(UserStore.normalizeEmail(current.getEmail())))) {
+            emailCache.remove(email);
+        }
+    }
+
+    public boolean isEncodedResponsesEnabled() {
+        return cacheProperties.getEncodedResponses().isEnabled();
+    }
+
+    /**
+     * Ответ GET /api/users/{id} готовыми байтами: JSON строится один раз на версию записи кэша
+     * и сбрасывается вместе с ней (обновление, инвалидация, вытеснение)
+     */
+    public EncodedResponse getEncodedUserById(Long id) {
+        User user = getUserById(id);
+        return user == null ? null : responseFor(id, user);
+    }
+
+    /**
+     * ETag ответа с пользователем - считается один раз на версию записи кэша
+     */
+    public String getEtag(Long id, User user) {
+        return responseFor(id, user).etag();
+    }
+
+    /**
+     * Условный GET только по метаданным кэша, без обращения к БД и без сериализации.
+     * Возвращает ETag, если копия клиента актуальна, и null, если нужен обычный путь
+     * (пользователя нет в кэше, ETag для его версии еще не построен или версия клиента устарела).
+     */
+    public String getUnchangedEtag(Long id, String ifNoneMatch, boolean acceptsGzip) {
+        // Устаревшую запись проверяет обычный путь - он же запустит ее перезагрузку
+        long age = cache.ageNanos(id);
+        if (age < 0 || staleness.freshness(age) != StaleWhileRevalidate.Freshness.FRESH) {
+            return null;
+        }
+        EncodedResponse cached = cache.cachedAttachment(id);
+        if (cached == null) {
+            return null;
+        }
+        String etag = cached.etag(acceptsGzip && cached.gzip() != null);
+        if (!EntityTags.matches(ifNoneMatch, etag)) {
+            return null;
+        }
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.READ, id);
+        writePolicy.recordRead(id);
+        log.info("📭 Версия пользователя {} у клиента актуальна (ETag {}), БД не читаем", id, etag);
+        return etag;
+    }
+
+    // Готовый ответ из кэша; если запись успели заменить, вытеснить или инвалидировать - кодируем user без сохранения
+    private EncodedResponse responseFor(Long id, User user) {
+        EncodedResponse encoded = cache.attachment(id, user, responseEncoder::encode, EncodedResponse::weight);
+        return encoded != null ? encoded : responseEncoder.encode(user);
+    }
+
+    // Чтение пользователя из БД через автомат защиты; длительность видна в JFR (событие Cache Load)
+    private User loadUser(Long id) {
+        CacheEvents.LoadEvent event = CacheEvents.beginLoad("users", id);
+        User user = staleness.load(() -> database.get(id));
+        CacheEvents.endLoad(event, user != null);
+        return user;
+    }
+
+    // Удаление записи из кэша с причиной reason (событие Cache Invalidation в JFR)
+    private User invalidate(Long id, String reason) {
+        CacheEvents.invalidation("users", id, reason);
+        return cache.remove(id);
+    }
+
+    private User loadIntoCache(Long id) {
         // Если нет в кэше, загружаем из БД
         log.info("❌ CACHE MISS: Пользователь не найден в кэше, загружаем из базы...");
-        User userFromDatabase = database.get(id);
+        User userFromDatabase = loadUser(id);
 
         if (userFromDatabase == null) {
             log.warn("⚠️  Пользователь не найден в базе данных! ID: {}", id);
@@ -59,6 +266,22 @@ public class UserService {
         return userFromDatabase;
     }
 
+    /**
+     * Фоновая перезагрузка устаревшей записи - под той же read-блокировкой ключа, что и загрузка промаха
+     */
+    private void refreshEntry(Long id) {
+        keyLocks.withReadLock(id, () -> {
+            User fresh = loadUser(id);
+            if (fresh == null) {
+                invalidate(id, "refresh");
+            } else {
+                cache.put(id, fresh);
+            }
+            log.debug("🔄 Устаревшая запись пользователя {} перезагружена", id);
+            return fresh;
+        });
+    }
+
     /**
      * WRITE-THROUGH PATTERN - данные записываются одновременно и в кэш, и в БД
      */
@@ -67,19 +290,22 @@ public class UserService {
 
         // WRITE-THROUGH: записываем сначала в БД
         if (user.getId() == null) {
-            long maxId = database.keySet().stream().mapToLong(Long::longValue).max().orElse(0L);
-            user.setId(maxId + 1);
+            user.setId(database.nextId());
         }
+        hotKeyTracker.record(user.getId());
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, user.getId());
 
-        log.info("💾 WRITE-THROUGH: Сохраняем пользователя в базу данных");
-        database.put(user.getId(), user);
+        // Обе фазы записи - под блокировкой ключа
+        return keyLocks.withWriteLock(user.getId(), () -> {
+            log.info("💾 WRITE-THROUGH: Сохраняем пользователя в базу данных");
+            database.put(user.getId(), user);
 
-        // WRITE-THROUGH: затем в кэш (гарантируем согласованность)
-        log.info("キャッシング: Сохраняем пользователя в кэш");
-        cache.put(user.getId(), user);
+            // WRITE-THROUGH: затем в кэш (гарантируем согласованность)
+            writeToCache(user.getId(), user);
 
-        log.info("✅ Пользователь создан и закэширован: {} ({})", user.getName(), user.getId());
-        return user;
+            log.info("✅ Пользователь создан и закэширован: {} ({})", user.getName(), user.getId());
+            return user;
+        });
     }
 
     /**
@@ -87,50 +313,220 @@ public class UserService {
      */
     public User updateUser(Long id, String name, String email) {
         log.info("✏️ Обновляем пользователя {} через Write-Through", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.WRITE, id);
 
-        // Проверяем существование пользователя
-        User existingUser = database.get(id);
-        if (existingUser == null) {
-            log.warn("⚠️  Попытка обновления несуществующего пользователя ID: {}", id);
-            return null;
-        }
+        // Обе фазы записи - под блокировкой ключа
+        return keyLocks.withWriteLock(id, () -> {
+            // Проверяем существование пользователя
+            User existingUser = database.get(id);
+            if (existingUser == null) {
+                log.warn("⚠️  Попытка обновления несуществующего пользователя ID: {}", id);
+                return null;
+            }
 
-        // WRITE-THROUGH: обновляем сначала в БД
-        log.info("💾 WRITE-THROUGH: Обновляем пользователя в базе данных");
-        existingUser.setName(name);
-        existingUser.setEmail(email);
-        database.put(id, existingUser);
+            // WRITE-THROUGH: обновляем сначала в БД
+            log.info("💾 WRITE-THROUGH: Обновляем пользователя в базе данных");
+            existingUser.setName(name);
+            existingUser.setEmail(email);
+            database.put(id, existingUser);
 
-        // WRITE-THROUGH: затем в кэше (гарантируем согласованность)
-        log.info("WRITE-THROUGH: Обновляем пользователя в кэше");
-        cache.put(id, existingUser);
+            // WRITE-THROUGH: затем в кэше (гарантируем согласованность)
+            writeToCache(id, existingUser);
 
-        log.info("✅ Пользователь обновлен в БД и кэше: {} ({})", existingUser.getName(), existingUser.getId());
-        return existingUser;
+            log.info("✅ Пользователь обновлен в БД и кэше: {} ({})", existingUser.getName(), existingUser.getId());
+            return existingUser;
+        });
+    }
+
+    /**
+     * Вторая фаза записи: ключи, которые читают после записи, обновляются в кэше (write-through),
+     * а часто изменяемые и редко читаемые - только удаляются из него (write-around),
+     * чтобы не тратить память и вытеснения на значения, которые никто не прочитает
+     */
+    private void writeToCache(Long id, User user) {
+        // Индекс email -> id меняется вместе с основной записью: прежний email больше не ведет к этому id
+        evictEmail(cache.peek(id), user);
+        if (writePolicy.onWrite(id) == AdaptiveWritePolicy.Mode.WRITE_AROUND) {
+            log.info("WRITE-AROUND: Пользователь {} чаще пишется, чем читается - удаляем его из кэша", id);
+            invalidate(id, "write");
+            return;
+        }
+        log.info("WRITE-THROUGH: Сохраняем пользователя в кэш");
+        cache.put(id, user);
+        indexEmail(user.getEmail(), id);
     }
 
     public void deleteUser(Long id) {
         log.info("🗑️ Удаляем пользователя {} через Write-Through", id);
+        hotKeyTracker.record(id);
+        traceRecorder.record(AccessTraceRecorder.Op.DELETE, id);
+
+        // Обе фазы удаления - под блокировкой ключа
+        keyLocks.withWriteLock(id, () -> {
+            // WRITE-THROUGH: удаляем сначала из БД
+            log.info("💾 WRITE-THROUGH: Удаляем пользователя из базы данных");
+            database.remove(id);
+
+            // WRITE-THROUGH: затем из кэша
+            log.info("WRITE-THROUGH: Удаляем пользователя из кэша");
+            evictEmail(invalidate(id, "delete"), null);
+
+            log.info("✅ Пользователь удален из БД и кэша: {}", id);
+        });
+    }
+
+    /**
+     * WRITE-THROUGH PATTERN для пакета операций: одна пакетная запись в БД, затем пакетное обновление кэша.
+     * Пакет выполняется под блокировками всех своих ключей - чтение этих ключей не увидит БД и кэш
+     * в разных состояниях. firstIndex - номер первой операции пакета в потоке запроса.
+     */
+    public List<BatchResult> applyBatch(List<BatchOperation> batch, long firstIndex) {
+        log.info("📦 WRITE-THROUGH: Применяем пакет из {} операций", batch.size());
+        List<Long> keys = BatchPlan.keys(batch, database::nextId);
+        recordBatch(batch);
+
+        return keyLocks.withWriteLocks(keys, () -> {
+            BatchPlan plan = BatchPlan.resolve(batch, firstIndex, database::get);
+
+            // WRITE-THROUGH: сначала пакет в БД
+            database.writeAll(plan.changes());
+
+            // WRITE-THROUGH: затем пакет в кэш (с учетом политики записи каждого ключа)
+            Map<Long, User> cached = new LinkedHashMap<>();
+            Map<String, Long> emails = new LinkedHashMap<>();
+            plan.changes().forEach((id, user) -> {
+                User previous = user == null ? invalidate(id, "delete") : cache.peek(id);
+                evictEmail(previous, user);
+                if (user == null) {
+                    return;
+                }
+                if (writePolicy.onWrite(id) == AdaptiveWritePolicy.Mode.WRITE_AROUND) {
+                    invalidate(id, "write");
+                    return;
+                }
+                cached.put(id, user);
+                emails.put(UserStore.normalizeEmail(user.getEmail()), id);
+            });
+            cache.putAll(cached);
+            emailCache.putAll(emails);
+
+            log.info("✅ Пакет применен: {} строк в БД, {} записей в кэше", plan.changes().size(), cached.size());
+            return plan.results();
+        });
+    }
 
-        // WRITE-THROUGH: удаляем сначала из БД
-        log.info("💾 WRITE-THROUGH: Удаляем пользователя из базы данных");
-        database.remove(id);
+    // Пакетные операции учитываются в горячих ключах и трассе так же, как одиночные
+    private void recordBatch(List<BatchOperation> batch) {
+        for (BatchOperation operation : batch) {
+            if (operation.getId() == null) {
+                continue;
+            }
+            hotKeyTracker.record(operation.getId());
+            traceRecorder.record(operation.getOp() == BatchOperation.Type.DELETE
+                    ? AccessTraceRecorder.Op.DELETE : AccessTraceRecorder.Op.WRITE, operation.getId());
+        }
+    }
+
+    /**
+     * Обработка пачки событий журнала изменений БД: закэшированные пользователи обновляются
+     * на месте текущей версией из БД (удаленные - исчезают из кэша). Так кэш видит и записи,
+     * сделанные в БД в обход сервиса.
+     */
+    private void applyChanges(List<ChangeEvent> batch) {
+        batch.stream()
+                .map(ChangeEvent::id)
+                .distinct()
+                .forEach(this::applyChange);
+        log.debug("🔄 CDC: обработано {} событий, последний offset {}", batch.size(), batch.get(batch.size() - 1).offset());
+    }
+
+    /**
+     * Строка читается вне compute: чтение БД (с задержкой app.database.read-latency) не держит блокировку
+     * корзины ConcurrentHashMap. Прочитанная версия применяется, только если запись кэша не сменилась
+     * за время чтения - иначе ее уже заменили запись или загрузка, видевшие строку не старше нашей.
+     */
+    private void applyChange(Long id) {
+        User cached = cache.peek(id);
+        if (cached == null) {
+            return;
+        }
+        User current = currentVersion(id);
+        cache.computeIfPresent(id, (key, value) -> {
+            if (value != cached) {
+                return value;
+            }
+            evictEmail(cached, current);
+            if (current == null) {
+                CacheEvents.invalidation("users", key, "cdc");
+            }
+            return current;
+        });
+    }
+
+    // Текущая версия строки через автомат защиты. Если БД не отвечает или автомат разомкнут, измененную
+    // запись убираем из кэша: отдавать известную устаревшей версию нельзя, следующее чтение загрузит новую
+    private User currentVersion(Long id) {
+        try {
+            return loadUser(id);
+        } catch (StoreUnavailableException e) {
+            log.warn("⚠️  CDC: БД недоступна, пользователь {} удален из кэша вместо обновления", id);
+            return null;
+        }
+    }
+
+    public Map<String, Object> getChangeFeedStats() {
+        log.info("📡 Возвращаем состояние подписки кэша на журнал изменений");
+        return changeFeed.stats();
+    }
 
-        // WRITE-THROUGH: затем из кэша
-        log.info("WRITE-THROUGH: Удаляем пользователя из кэша");
-        cache.remove(id);
+    public List<HotKeyTracker.HotKey> getHotKeys(int limit) {
+        log.info("🔥 Возвращаем top-{} горячих ключей", limit);
+        return hotKeyTracker.hotKeys(limit);
+    }
 
-        log.info("✅ Пользователь удален из БД и кэша: {}", id);
+    @PreDestroy
+    public void shutdown() {
+        changeFeed.close();
     }
 
     public void clearCache() {
         log.info("🧹 Очищаем весь кэш! Было записей: {}", cache.size());
+        CacheEvents.invalidation("users", "*", "clear");
         cache.clear();
+        emailCache.clear();
         log.info("✅ Кэш успешно очищен");
     }
 
     public Map<Long, User> getCache() {
         log.info("📤 Возвращаем содержимое кэша клиенту. Размер кэша: {}", cache.size());
-        return new HashMap<>(cache);
+        return cache.snapshot();
+    }
+
+    /**
+     * Слабый ETag содержимого кэша: меняется при любой вставке, замене, удалении или вытеснении
+     */
+    public String getCacheEtag() {
+        return EntityTags.weak("cache", cache.modificationCount());
+    }
+
+    public Map<String, Object> getCacheStats() {
+        log.info("📊 Возвращаем статистику кэша: {} записей, {} байт", cache.size(), cache.weightedSize());
+        Map<String, Object> stats = cache.stats();
+        stats.put("memoryBudget", cacheRegistry.stats());
+        stats.put("stale", staleness.stats());
+        stats.put("trace", traceRecorder.stats());
+        stats.put("emailIndex", emailCache.stats());
+        stats.put("writePolicy", writePolicy.stats());
+        return stats;
+    }
+
+    /**
+     * Имитация медленной или недоступной БД: задержка и отказ чтения по id
+     */
+    public Map<String, Object> setDatabaseFaults(Duration readLatency, boolean readFailing) {
+        log.warn("🧪 Имитация проблем БД: задержка чтения {} мс, отказ чтения: {}", readLatency.toMillis(), readFailing);
+        database.setReadFaults(readLatency, readFailing);
+        return database.readFaults();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package com.prosoft.store;
+
+import com.prosoft.model.User;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Имитация базы данных с версиями строк и журналом изменений.
+ * Любая запись - через сервис или напрямую - попадает в ChangeLog в том же порядке,
+ * в котором применялась к строке. Наружу отдаются копии: изменить строку можно только через put.
+ *
+ * Вторичный индекс email -> id меняется внутри той же операции над строкой, что и сама строка,
+ * поэтому поиск по email не сканирует таблицу и не расходится с ней.
+ *
+ * Чтение по id можно замедлить или сломать (app.database.read-latency, POST /api/users/database/faults) -
+ * для демонстрации поведения кэша при медленной или недоступной БД.
+ */
+public class UserStore {
+
+    private record Row(User user, long version) {
+    }
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    // Email в демо не уникален: на один email может ссылаться несколько id
+    private final Map<String, NavigableSet<Long>> emailIndex = new ConcurrentHashMap<>();
+    private final ChangeLog changeLog;
+    private final AtomicLong maxId = new AtomicLong();
+
+    // Имитация проблем БД при чтении
+    private volatile Duration readLatency = Duration.ZERO;
+    private volatile boolean readFailing;
+
+    public UserStore(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    public User get(Long id) {
+        simulateReadFaults();
+        Row row = rows.get(id);
+        return row == null ? null : copyOf(row.user());
+    }
+
+    /**
+     * Вставка или обновление строки. Возвращает новую версию
+     */
+    public long put(Long id, User user) {
+        User stored = copyOf(user);
+        maxId.accumulateAndGet(id, Math::max);
+        // Событие пишется внутри compute - для одного ключа порядок журнала совпадает с порядком записей
+        Row row = rows.compute(id, (key, old) -> {
+            long version = old == null ? 1 : old.version() + 1;
+            changeLog.append(old == null ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE, key, version);
+            reindex(key, old == null ? null : old.user(), stored);
+            return new Row(stored, version);
+        });
+        return row.version();
+    }
+
+    public void remove(Long id) {
+        rows.computeIfPresent(id, (key, old) -> {
+            changeLog.append(ChangeEvent.Type.DELETE, key, old.version() + 1);
+            reindex(key, old.user(), null);
+            return null;
+        });
+    }
+
+    /**
+     * Пакетная запись (null в значении - удаление строки). Каждая строка меняется так же, как
+     * через put/remove, с событием в журнале, но пакет - один вызов вместо обращения на каждую строку
+     */
+    public void writeAll(Map<Long, User> changes) {
+        changes.forEach((id, user) -> {
+            if (user == null) {
+                remove(id);
+            } else {
+                put(id, user);
+            }
+        });
+    }
+
+    /**
+     * Поиск по вторичному индексу email (без учета регистра и пробелов по краям).
+     * Если email есть у нескольких пользователей - возвращается наименьший id
+     */
+    public Long findIdByEmail(String email) {
+        simulateReadFaults();
+        NavigableSet<Long> ids = emailIndex.get(normalizeEmail(email));
+        return ids == null || ids.isEmpty() ? null : ids.first();
+    }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Вызывается внутри compute строки id: изменения одного id в индексе упорядочены так же, как в таблице
+    private void reindex(Long id, User previous, User current) {
+        String before = previous == null ? null : normalizeEmail(previous.getEmail());
+        String after = current == null ? null : normalizeEmail(current.getEmail());
+        if (before != null && before.equals(after)) {
+            return;
+        }
+        if (before != null) {
+            emailIndex.computeIfPresent(before, (email, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        if (after != null) {
+            emailIndex.compute(after, (email, ids) -> {
+                NavigableSet<Long> updated = ids == null ? new ConcurrentSkipListSet<>() : ids;
+                updated.add(id);
+                return updated;
+            });
+        }
+    }
+
+    public long nextId() {
+        return maxId.incrementAndGet();
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public Map<Long, User> snapshot() {
+        Map<Long, User> snapshot = new HashMap<>();
+        rows.forEach((id, row) -> snapshot.put(id, copyOf(row.user())));
+        return snapshot;
+    }
+
+    public void setReadFaults(Duration latency, boolean failing) {
+        this.readLatency = latency;
+        this.readFailing = failing;
+    }
+
+    public Map<String, Object> readFaults() {
+        Map<String, Object> faults = new LinkedHashMap<>();
+        faults.put("readLatencyMs", readLatency.toMillis());
+        faults.put("readFailing", readFailing);
+        return faults;
+    }
+
+    private void simulateReadFaults() {
+        Duration latency = readLatency;
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (readFailing) {
+            throw new StoreUnavailableException("БД недоступна: чтение завершилось ошибкой (имитация отказа)");
+        }
+    }
+
+    public ChangeLog changeLog() {
+        return changeLog;
+    }
+
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail());
+    }
+}